@@ -0,0 +1,22 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+
+/**
+ * Supplies the length of each CPU and I/O burst of a process, in place of
+ * drawing them from the random number file.
+ */
+public interface BurstSource {
+  /**
+   * @param i Index of process in the Scheduler's ProcessTable.
+   * @return Length of the next CPU burst of the given process.
+   */
+  int nextCpuBurst(int i);
+
+  /**
+   * @param i Index of process in the Scheduler's ProcessTable.
+   * @return Length of the next I/O burst of the given process.
+   */
+  int nextIoBurst(int i);
+}
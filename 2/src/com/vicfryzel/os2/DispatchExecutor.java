@@ -0,0 +1,156 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Executor that runs tasks on a fixed pool of threads, but lets only one
+ * CPU burst run at a time, in exactly the order a Scheduler dispatched them.
+ * Other tasks, such as I/O waits, run as soon as a thread is free.
+ */
+public class DispatchExecutor implements Executor {
+  /**
+   * A CPU burst of one process.  Bursts are held until it is their process's
+   * turn on the CPU.
+   */
+  public static abstract class CpuBurst implements Runnable {
+    protected int process;
+
+    public CpuBurst(int process) {
+      this.process = process;
+    }
+
+    public int getProcess() {
+      return process;
+    }
+  }
+
+  protected ExecutorService pool;
+  protected int[] order;
+  protected int position;
+  protected boolean cpuBusy;
+  protected Map<Integer, CpuBurst> pending;
+  protected Map<Integer, Long> pendingSince;
+  protected long releasedAt;
+
+  protected int[] executed;
+  protected int switches;
+  protected long switchNanos;
+
+  /**
+   * Create a new DispatchExecutor.
+   *
+   * @param threads Number of threads to run tasks on.
+   * @param order Process that each CPU burst belongs to, in dispatch order.
+   */
+  public DispatchExecutor(int threads, int[] order) {
+    pool = Executors.newFixedThreadPool(threads);
+    this.order = order;
+    position = 0;
+    cpuBusy = false;
+    pending = new HashMap<Integer, CpuBurst>();
+    pendingSince = new HashMap<Integer, Long>();
+    executed = new int[order.length];
+  }
+
+  public void execute(Runnable task) {
+    if (!(task instanceof CpuBurst)) {
+      pool.execute(task);
+      return;
+    }
+    CpuBurst burst = (CpuBurst) task;
+    synchronized (this) {
+      if (pending.containsKey(burst.getProcess())) {
+        throw new IllegalStateException("Process " + burst.getProcess()
+            + " already has a CPU burst waiting");
+      }
+      pending.put(burst.getProcess(), burst);
+      pendingSince.put(burst.getProcess(), System.nanoTime());
+      dispatchNext();
+    }
+  }
+
+  /**
+   * Hand the CPU to the next burst in dispatch order, if it has been
+   * submitted and the CPU is free.  Must hold the lock on this.
+   */
+  protected void dispatchNext() {
+    if (cpuBusy || position >= order.length) {
+      return;
+    }
+    final int process = order[position];
+    final CpuBurst burst = pending.remove(process);
+    if (burst == null) {
+      return;
+    }
+    final long waitingSince = pendingSince.remove(process);
+    final boolean wasWaiting = position > 0 && waitingSince <= releasedAt;
+    cpuBusy = true;
+    executed[position] = process;
+    position++;
+    pool.execute(new Runnable() {
+      public void run() {
+        if (wasWaiting) {
+          // The burst was ready when the CPU was released, so all of the
+          // time since then was spent switching to it
+          recordSwitch(System.nanoTime());
+        }
+        try {
+          burst.run();
+        } finally {
+          synchronized (DispatchExecutor.this) {
+            cpuBusy = false;
+            releasedAt = System.nanoTime();
+            dispatchNext();
+          }
+        }
+      }
+    });
+  }
+
+  protected synchronized void recordSwitch(long now) {
+    switches++;
+    switchNanos += now - releasedAt;
+  }
+
+  /**
+   * @return Number of CPU bursts that were handed to a waiting burst as soon
+   *         as the previous one finished.
+   */
+  public synchronized int getSwitches() {
+    return switches;
+  }
+
+  /**
+   * @return Total time between one burst finishing and a waiting burst
+   *         starting, in nanoseconds.
+   */
+  public synchronized long getSwitchNanos() {
+    return switchNanos;
+  }
+
+  /**
+   * @return Process of each CPU burst run so far, in the order they ran.
+   */
+  public synchronized int[] getExecutedOrder() {
+    int[] retval = new int[position];
+    System.arraycopy(executed, 0, retval, 0, position);
+    return retval;
+  }
+
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return pool.awaitTermination(timeout, unit);
+  }
+}
@@ -3,9 +3,6 @@
 package com.vicfryzel.os2;
 
 import java.io.Reader;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 
 public class FCFSScheduler extends Scheduler {
@@ -14,56 +11,71 @@ public class FCFSScheduler extends Scheduler {
     super(inputReader, randomNumberReader, verbose, showRandom);
   }
 
+  public FCFSScheduler(WorkloadSource workload, Reader randomNumberReader,
+                       boolean verbose, boolean showRandom) {
+    super(workload, randomNumberReader, verbose, showRandom);
+  }
+
+  public FCFSScheduler(Scheduler prefix) {
+    super(prefix);
+  }
+
   public void handleBlocked() {
-    for (Process p : getBlocked()) {
-      if (p.getIoBurstRemaining() > 0) {
-        p.addTotalIoTime(1);
-        p.setIoBurstRemaining(p.getIoBurstRemaining() - 1);
+    ProcessTable t = table;
+    for (int i = 0; i < t.size(); i++) {
+      if (t.isBlocked(i)) {
+        if (t.getIoBurstRemaining(i) > 0) {
+          t.addTotalIoTime(i, 1);
+          t.setIoBurstRemaining(i, t.getIoBurstRemaining(i) - 1);
+        }
+        if (t.getIoBurstRemaining(i) == 0) {
+          t.ready(i, cycle);
+        }
       }
-      if (p.getIoBurstRemaining() == 0) {
-        p.ready(cycle);
-      }
-      processes.set(p.getId(), p);
     }
   }
 
   public void handleReady() {
-    for (Process p : getReady()) {
-      if (getRunning().size() == 0) {
-        p.run();
-        p.setCpuBurstRemaining(getBurst(p.getBurst(), p.getCpu()));
+    ProcessTable t = table;
+    IntList ready = getReady();
+    for (int k = 0; k < ready.size(); k++) {
+      int i = ready.get(k);
+      if (t.count(ProcessTable.RUNNING) == 0) {
+        t.run(i);
+        recordDispatch(i);
+        t.setCpuBurstRemaining(i, nextCpuBurst(i));
         appendShowRandomCpuString();
       } else {
-        p.processWait();
+        t.processWait(i);
       }
-      processes.set(p.getId(), p);
     }
   }
 
   public void handleArrivals() {
-    for (Process p : getArrivals()) {
-      if (p.getArrival() == cycle) {
-        p.ready(cycle);
-        processes.set(p.getId(), p);
-      }
+    int i;
+    while ((i = nextArrival()) != -1) {
+      table.ready(i, cycle);
     }
   }
 
   public void handleRunning() {
-    for (Process p : getRunning()) {
-      if (p.getCpuBurstRemaining() > 0) {
-        p.addTotalCpuTime(1);
-        p.setCpuBurstRemaining(p.getCpuBurstRemaining() - 1);
-      }
-      if (p.getCpuBurstRemaining() == 0 && p.getCpu() > p.getTotalCpuTime()) {
-        p.block();
-        p.setIoBurstRemaining(randomOS(p.getIo()));
-        appendShowRandomIoString();
-      }
-      if (p.getCpu() == p.getTotalCpuTime()) {
-        p.terminate(cycle);
+    ProcessTable t = table;
+    for (int i = 0; i < t.size(); i++) {
+      if (t.isRunning(i)) {
+        if (t.getCpuBurstRemaining(i) > 0) {
+          t.addTotalCpuTime(i, 1);
+          t.setCpuBurstRemaining(i, t.getCpuBurstRemaining(i) - 1);
+        }
+        if (t.getCpuBurstRemaining(i) == 0
+            && t.getCpu(i) > t.getTotalCpuTime(i)) {
+          t.block(i);
+          t.setIoBurstRemaining(i, nextIoBurst(i));
+          appendShowRandomIoString();
+        }
+        if (t.getCpu(i) == t.getTotalCpuTime(i)) {
+          t.terminate(i, cycle);
+        }
       }
-      processes.set(p.getId(), p);
     }
   }
 }
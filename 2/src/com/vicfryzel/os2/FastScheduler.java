@@ -0,0 +1,254 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.Reader;
+
+
+/**
+ * Non-verbose FCFS or uni-programmed scheduler that produces the same results
+ * as FCFSScheduler or UniScheduler without allocating anything per cycle.
+ *
+ * Instead of scanning and sorting the whole process table every cycle, it
+ * keeps the running process, the blocked processes in index order, and the
+ * ready processes in a ring buffer in the order FCFS would sort them.
+ * Processes are indexed in arrival order, so processes that become ready in
+ * the same cycle are ordered by index, and those from earlier cycles are
+ * always ahead of them.
+ */
+public class FastScheduler extends Scheduler {
+  protected boolean uniprogrammed;
+
+  // Table that the structures below describe; rebuilt if the table changes,
+  // e.g. after restore()
+  protected ProcessTable indexedTable;
+  protected int running;
+  protected IntList blocked;
+  protected IntList unblocked;
+  protected int[] ready;
+  protected int readyHead;
+  protected int readySize;
+
+  /**
+   * @param inputReader Reader wrapping input stream.
+   * @param randomNumberReader Reader wrapping random int stream.
+   * @param uniprogrammed True to schedule as UniScheduler, false as
+   *        FCFSScheduler.
+   */
+  public FastScheduler(Reader inputReader, Reader randomNumberReader,
+                       boolean uniprogrammed) {
+    super(inputReader, randomNumberReader, false, false);
+    this.uniprogrammed = uniprogrammed;
+  }
+
+  /**
+   * @param workload Source of processes, in arrival order.
+   * @param randomNumberReader Reader wrapping random int stream.
+   * @param uniprogrammed True to schedule as UniScheduler, false as
+   *        FCFSScheduler.
+   */
+  public FastScheduler(WorkloadSource workload, Reader randomNumberReader,
+                       boolean uniprogrammed) {
+    super(workload, randomNumberReader, false, false);
+    this.uniprogrammed = uniprogrammed;
+  }
+
+  public boolean isUniprogrammed() {
+    return uniprogrammed;
+  }
+
+  /**
+   * Build the running, blocked and ready structures from the table.
+   */
+  protected void index() {
+    int capacity = Math.max(table.size(), 16);
+    running = -1;
+    blocked = new IntList(capacity);
+    unblocked = new IntList(capacity);
+    ready = new int[capacity];
+    readyHead = 0;
+    readySize = 0;
+    for (int i = 0; i < table.size(); i++) {
+      if (table.isRunning(i)) {
+        running = i;
+      } else if (table.isBlocked(i)) {
+        blocked.add(i);
+      }
+    }
+    IntList r = getReady();
+    for (int k = 0; k < r.size(); k++) {
+      pushReady(r.get(k));
+    }
+    indexedTable = table;
+  }
+
+  /**
+   * Add a process to the blocked list, keeping it in index order.
+   */
+  protected final void addBlocked(int i) {
+    blocked.add(i);
+    int k = blocked.size() - 1;
+    while (k > 0 && blocked.get(k - 1) > i) {
+      blocked.set(k, blocked.get(k - 1));
+      k--;
+    }
+    blocked.set(k, i);
+  }
+
+  protected final void pushReady(int i) {
+    if (readySize == ready.length) {
+      int[] grown = new int[ready.length * 2];
+      for (int k = 0; k < readySize; k++) {
+        grown[k] = ready[(readyHead + k) % ready.length];
+      }
+      ready = grown;
+      readyHead = 0;
+    }
+    ready[(readyHead + readySize) % ready.length] = i;
+    readySize++;
+  }
+
+  protected final void pushReadyFirst(int i) {
+    pushReady(i);
+    // Rotate the new element from the tail to the head
+    readySize--;
+    readyHead = (readyHead + ready.length - 1) % ready.length;
+    ready[readyHead] = i;
+    readySize++;
+  }
+
+  protected final int popReady() {
+    int i = ready[readyHead];
+    readyHead = (readyHead + 1) % ready.length;
+    readySize--;
+    return i;
+  }
+
+  public boolean step() {
+    if (indexedTable != table) {
+      index();
+    }
+    ProcessTable t = table;
+
+    admitArrivals();
+
+    handleBlocked();
+    handleRunning();
+    handleArrivals();
+    handleReady();
+
+    if (metrics != null) {
+      metrics.recordCycle(t);
+    }
+    for (int k = 0; k < listeners.size(); k++) {
+      listeners.get(k).cycleCompleted(cycle, t);
+    }
+
+    if (t.count(ProcessTable.TERMINATED) < t.size()
+        || (workload != null && workload.hasNext())) {
+      if (!blocked.isEmpty()) {
+        blockedCycles++;
+      }
+      cycle++;
+      return true;
+    }
+    finished = true;
+    return false;
+  }
+
+  /**
+   * Advance I/O, collecting processes whose I/O finished into unblocked in
+   * index order.
+   */
+  public final void handleBlocked() {
+    ProcessTable t = table;
+    unblocked.clear();
+    int kept = 0;
+    for (int k = 0; k < blocked.size(); k++) {
+      int i = blocked.get(k);
+      int remaining = t.getIoBurstRemaining(i);
+      if (remaining > 0) {
+        t.addTotalIoTime(i, 1);
+        remaining--;
+        t.setIoBurstRemaining(i, remaining);
+      }
+      if (remaining == 0) {
+        unblocked.add(i);
+      } else {
+        blocked.set(kept++, i);
+      }
+    }
+    blocked.truncate(kept);
+    for (int k = 0; k < unblocked.size(); k++) {
+      int i = unblocked.get(k);
+      if (uniprogrammed) {
+        // -1 is NOT a valid cycle; it puts this process ahead of all others
+        t.ready(i, -1);
+        pushReadyFirst(i);
+      } else {
+        t.ready(i, cycle);
+      }
+    }
+  }
+
+  public final void handleRunning() {
+    int i = running;
+    if (i == -1) {
+      return;
+    }
+    ProcessTable t = table;
+    if (t.getCpuBurstRemaining(i) > 0) {
+      t.addTotalCpuTime(i, 1);
+      t.setCpuBurstRemaining(i, t.getCpuBurstRemaining(i) - 1);
+    }
+    if (t.getCpuBurstRemaining(i) == 0 && t.getCpu(i) > t.getTotalCpuTime(i)) {
+      t.block(i);
+      t.setIoBurstRemaining(i, nextIoBurst(i));
+      addBlocked(i);
+      running = -1;
+    }
+    if (t.getCpu(i) == t.getTotalCpuTime(i)) {
+      t.terminate(i, cycle);
+      running = -1;
+    }
+  }
+
+  /**
+   * Make arrivals ready, merging them by index with processes whose I/O
+   * finished this cycle, which FCFS orders the same way.
+   */
+  public final void handleArrivals() {
+    ProcessTable t = table;
+    int k = 0;
+    int i;
+    while ((i = nextArrival()) != -1) {
+      t.ready(i, cycle);
+      if (!uniprogrammed) {
+        while (k < unblocked.size() && unblocked.get(k) < i) {
+          pushReady(unblocked.get(k++));
+        }
+      }
+      pushReady(i);
+    }
+    if (!uniprogrammed) {
+      while (k < unblocked.size()) {
+        pushReady(unblocked.get(k++));
+      }
+    }
+  }
+
+  public final void handleReady() {
+    ProcessTable t = table;
+    if (running == -1 && readySize > 0
+        && (!uniprogrammed || blocked.isEmpty())) {
+      int i = popReady();
+      t.run(i);
+      recordDispatch(i);
+      t.setCpuBurstRemaining(i, nextCpuBurst(i));
+      running = i;
+    }
+    for (int k = 0; k < readySize; k++) {
+      t.processWait(ready[(readyHead + k) % ready.length]);
+    }
+  }
+}
@@ -3,9 +3,6 @@
 package com.vicfryzel.os2;
 
 import java.io.Reader;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 
 public class HPRNScheduler extends FCFSScheduler {
@@ -14,10 +11,19 @@ public class HPRNScheduler extends FCFSScheduler {
     super(inputReader, randomNumberReader, verbose, showRandom);
   }
 
-  public double getPenalty(Process p) {
+  public HPRNScheduler(WorkloadSource workload, Reader randomNumberReader,
+                       boolean verbose, boolean showRandom) {
+    super(workload, randomNumberReader, verbose, showRandom);
+  }
+
+  public HPRNScheduler(Scheduler prefix) {
+    super(prefix);
+  }
+
+  public double getPenalty(int i) {
     double penalty = 1.0;
-    double T = (double) p.getTotalCpuTime();
-    double t = (double) p.getTurnaroundTime();
+    double T = (double) table.getTotalCpuTime(i);
+    double t = (double) table.getTurnaroundTime(i);
     if (t > 0.0) {
       // We flip this because our sort is ascending, not descending
       penalty = T / t;
@@ -25,19 +31,20 @@ public class HPRNScheduler extends FCFSScheduler {
     return penalty;
   }
 
-  private class ProcessHPRNReadyComparator implements Comparator<Process> {
-    public int compare(Process p1, Process p2) {
-      if (getPenalty(p1) > getPenalty(p2)) {
+  private class ProcessHPRNReadyComparator implements IntList.IndexComparator {
+    public int compare(int i, int j) {
+      double pi = getPenalty(i), pj = getPenalty(j);
+      if (pi > pj) {
         return 1;
-      } else if (getPenalty(p1) == getPenalty(p2)) {
-        return (new ProcessArrivalComparator()).compare(p1, p2);
+      } else if (pi == pj) {
+        return compareArrival(i, j);
       } else {
         return -1;
       }
     }
   }
 
-  protected Comparator<Process> getProcessReadyComparator() {
+  protected IntList.IndexComparator getProcessReadyComparator() {
     return new ProcessHPRNReadyComparator();
   }
 
@@ -0,0 +1,143 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.util.Arrays;
+
+
+/**
+ * Growable list of primitive ints, used to hold process indices without
+ * boxing.
+ */
+public class IntList {
+  /**
+   * Orders two ints, typically indices into a ProcessTable.
+   */
+  public interface IndexComparator {
+    int compare(int i, int j);
+  }
+
+  protected static final int INSERTION_SORT_THRESHOLD = 16;
+
+  protected int[] values;
+  protected int size;
+  protected int[] scratch;
+
+  public IntList() {
+    this(16);
+  }
+
+  /**
+   * @param capacity Initial capacity.
+   */
+  public IntList(int capacity) {
+    values = new int[Math.max(capacity, 1)];
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException(i + " >= " + size);
+    }
+    return values[i];
+  }
+
+  public void set(int i, int value) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException(i + " >= " + size);
+    }
+    values[i] = value;
+  }
+
+  public void add(int value) {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, values.length * 2);
+    }
+    values[size++] = value;
+  }
+
+  /**
+   * @return Copy of the values in this list.
+   */
+  public int[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * @param newSize Number of values to keep from the start of this list.
+   */
+  public void truncate(int newSize) {
+    if (newSize > size) {
+      throw new IndexOutOfBoundsException(newSize + " > " + size);
+    }
+    size = newSize;
+  }
+
+  /**
+   * Stable sort of this list with the given comparator.  Equal elements keep
+   * their relative order, as with Collections.sort().
+   *
+   * @param c Comparator to sort with.
+   */
+  public void sort(IndexComparator c) {
+    if (size < 2) {
+      return;
+    }
+    if (scratch == null || scratch.length < size) {
+      scratch = new int[values.length];
+    }
+    mergeSort(c, 0, size);
+  }
+
+  protected void mergeSort(IndexComparator c, int from, int to) {
+    if (to - from <= INSERTION_SORT_THRESHOLD) {
+      for (int i = from + 1; i < to; i++) {
+        int v = values[i];
+        int j = i - 1;
+        while (j >= from && c.compare(values[j], v) > 0) {
+          values[j + 1] = values[j];
+          j--;
+        }
+        values[j + 1] = v;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(c, from, mid);
+    mergeSort(c, mid, to);
+    if (c.compare(values[mid - 1], values[mid]) <= 0) {
+      return;
+    }
+    System.arraycopy(values, from, scratch, from, to - from);
+    int i = from, j = mid, k = from;
+    while (i < mid && j < to) {
+      if (c.compare(scratch[j], scratch[i]) < 0) {
+        values[k++] = scratch[j++];
+      } else {
+        values[k++] = scratch[i++];
+      }
+    }
+    while (i < mid) {
+      values[k++] = scratch[i++];
+    }
+    while (j < to) {
+      values[k++] = scratch[j++];
+    }
+  }
+
+  public String toString() {
+    return Arrays.toString(Arrays.copyOf(values, size));
+  }
+}
@@ -0,0 +1,371 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Fixed-memory histogram of non-negative int latencies (in cycles), in the
+ * style of HdrHistogram.  Values below 2^precisionBits are counted exactly;
+ * larger values fall into log-linear buckets with a relative error of at most
+ * 2^-(precisionBits - 1).  Histograms with the same precision can be merged,
+ * and serialized to a compact binary form so that results from separate runs
+ * can be combined later.
+ */
+public class LatencyHistogram {
+  public static final int DEFAULT_PRECISION_BITS = 7;
+
+  protected static final int MAGIC = 0x48495354;
+  protected static final int VERSION = 1;
+
+  protected int precisionBits;
+  protected int subBucketCount;
+  protected int halfSubBucketCount;
+  protected long[] counts;
+  protected long totalCount;
+  protected long min;
+  protected long max;
+
+  /**
+   * Create a new LatencyHistogram with the default precision.
+   */
+  public LatencyHistogram() {
+    this(DEFAULT_PRECISION_BITS);
+  }
+
+  /**
+   * Create a new LatencyHistogram.
+   *
+   * @param precisionBits Number of significant bits kept for each value.
+   */
+  public LatencyHistogram(int precisionBits) {
+    if (precisionBits < 1 || precisionBits > 16) {
+      throw new IllegalArgumentException(
+          "precisionBits must be between 1 and 16, got " + precisionBits);
+    }
+    this.precisionBits = precisionBits;
+    subBucketCount = 1 << precisionBits;
+    halfSubBucketCount = subBucketCount >> 1;
+    counts = new long[subBucketCount + (31 - precisionBits) * halfSubBucketCount];
+    reset();
+  }
+
+  /**
+   * Clone the given LatencyHistogram.
+   *
+   * @param other LatencyHistogram to clone.
+   */
+  public LatencyHistogram(LatencyHistogram other) {
+    this(other.precisionBits);
+    add(other);
+  }
+
+  /**
+   * Forget all recorded values.
+   */
+  public void reset() {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = 0;
+    }
+    totalCount = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  public int getPrecisionBits() {
+    return precisionBits;
+  }
+
+  /**
+   * @param value Latency to record.  Must be between 0 and Integer.MAX_VALUE.
+   */
+  public void record(int value) {
+    record(value, 1);
+  }
+
+  /**
+   * @param value Latency to record.  Must be between 0 and Integer.MAX_VALUE.
+   * @param count Number of times to record value.
+   */
+  public void record(int value, long count) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Cannot record negative value " + value);
+    }
+    counts[indexOf(value)] += count;
+    totalCount += count;
+    if (value < min) {
+      min = value;
+    }
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  protected int indexOf(int value) {
+    if (value < subBucketCount) {
+      return value;
+    }
+    int shift = (31 - Integer.numberOfLeadingZeros(value)) - precisionBits + 1;
+    int subBucket = value >>> shift;
+    return subBucketCount + (shift - 1) * halfSubBucketCount
+        + (subBucket - halfSubBucketCount);
+  }
+
+  protected long lowestValueAt(int index) {
+    if (index < subBucketCount) {
+      return index;
+    }
+    int shift = (index - subBucketCount) / halfSubBucketCount + 1;
+    long subBucket = (index - subBucketCount) % halfSubBucketCount
+        + halfSubBucketCount;
+    return subBucket << shift;
+  }
+
+  protected long highestValueAt(int index) {
+    if (index < subBucketCount) {
+      return index;
+    }
+    int shift = (index - subBucketCount) / halfSubBucketCount + 1;
+    return lowestValueAt(index) + (1L << shift) - 1;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return Smallest recorded value, or 0 if nothing has been recorded.
+   */
+  public long getMin() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  /**
+   * @return Largest recorded value, or 0 if nothing has been recorded.
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * @return Mean of recorded values, using each bucket's midpoint.
+   */
+  public double getMean() {
+    if (totalCount == 0) {
+      return 0.0;
+    }
+    double sum = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        sum += counts[i] * ((lowestValueAt(i) + highestValueAt(i)) / 2.0);
+      }
+    }
+    return sum / totalCount;
+  }
+
+  /**
+   * @param percentile Percentile to find, between 0 and 100.
+   * @return Highest value equivalent to the given percentile, never more than
+   *         the largest recorded value.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    if (percentile > 100.0) {
+      percentile = 100.0;
+    }
+    long countAtPercentile = (long) Math.ceil((percentile / 100.0) * totalCount);
+    if (countAtPercentile < 1) {
+      countAtPercentile = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= countAtPercentile) {
+        return Math.min(highestValueAt(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Add all values recorded in the given LatencyHistogram to this one.
+   *
+   * @param other LatencyHistogram with the same precision as this one.
+   */
+  public void add(LatencyHistogram other) {
+    if (other.precisionBits != precisionBits) {
+      throw new IllegalArgumentException("Cannot merge histogram with "
+          + other.precisionBits + " precision bits into one with "
+          + precisionBits);
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    if (other.totalCount > 0) {
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+    }
+  }
+
+  /**
+   * @return "p50/p90/p99/max" summary of this histogram.
+   */
+  public String toPercentileString() {
+    return getValueAtPercentile(50.0) + "/"
+        + getValueAtPercentile(90.0) + "/"
+        + getValueAtPercentile(99.0) + "/"
+        + getMax();
+  }
+
+  /**
+   * Write this histogram in its binary form.  Only non-empty buckets are
+   * written, so the encoding is small for typical latency distributions.
+   *
+   * @param out Stream to write to.
+   */
+  public void write(DataOutputStream out) throws IOException {
+    int nonEmpty = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] != 0) {
+        nonEmpty++;
+      }
+    }
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeByte(precisionBits);
+    out.writeLong(totalCount);
+    out.writeLong(getMin());
+    out.writeLong(max);
+    out.writeInt(nonEmpty);
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] != 0) {
+        out.writeInt(i);
+        out.writeLong(counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Read a histogram previously written with write().
+   *
+   * @param in Stream to read from.
+   * @return LatencyHistogram that was read.
+   */
+  public static LatencyHistogram read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a latency histogram");
+    }
+    int version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported histogram version " + version);
+    }
+    LatencyHistogram h = new LatencyHistogram(in.readByte());
+    h.totalCount = in.readLong();
+    long min = in.readLong();
+    h.min = h.totalCount == 0 ? Long.MAX_VALUE : min;
+    h.max = in.readLong();
+    int nonEmpty = in.readInt();
+    for (int i = 0; i < nonEmpty; i++) {
+      int index = in.readInt();
+      if (index < 0 || index >= h.counts.length) {
+        throw new IOException("Histogram bucket " + index + " out of range");
+      }
+      h.counts[index] = in.readLong();
+    }
+    return h;
+  }
+
+  /**
+   * Write a set of named histograms, as produced by one Scheduler run.
+   *
+   * @param histograms Histograms keyed on name, in output order.
+   * @param out Stream to write to.
+   */
+  public static void writeAll(Map<String, LatencyHistogram> histograms,
+                              OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+      data.writeUTF(entry.getKey());
+      entry.getValue().write(data);
+    }
+    data.flush();
+  }
+
+  /**
+   * Read a set of named histograms written with writeAll(), merging them into
+   * the given map.  Histograms with a name already in the map are added to the
+   * existing histogram.
+   *
+   * @param in Stream to read from.
+   * @param into Map to merge into.
+   */
+  public static void mergeAll(InputStream in,
+                              Map<String, LatencyHistogram> into)
+      throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    while (true) {
+      String name;
+      try {
+        name = data.readUTF();
+      } catch (EOFException e) {
+        break;
+      }
+      LatencyHistogram h = read(data);
+      LatencyHistogram existing = into.get(name);
+      if (existing == null) {
+        into.put(name, h);
+      } else {
+        existing.add(h);
+      }
+    }
+  }
+
+  /**
+   * Merge the histogram files given on the command line and print their
+   * combined percentiles to stdout.
+   *
+   * @param args Paths to histogram files.
+   */
+  public static void main(String[] args) {
+    if (args.length == 0) {
+      System.out.println("Usage: java LatencyHistogram histogram-file...");
+      System.exit(1);
+    }
+    Map<String, LatencyHistogram> merged =
+        new LinkedHashMap<String, LatencyHistogram>();
+    for (String path : args) {
+      InputStream in = null;
+      try {
+        in = new FileInputStream(path);
+        mergeAll(in, merged);
+      } catch (IOException e) {
+        System.err.println("Could not read " + path + ": " + e);
+        System.exit(1);
+      } finally {
+        if (in != null) {
+          try {
+            in.close();
+          } catch (IOException ignored) {
+          }
+        }
+      }
+    }
+    for (Map.Entry<String, LatencyHistogram> entry : merged.entrySet()) {
+      LatencyHistogram h = entry.getValue();
+      System.out.println(entry.getKey() + " (p50/p90/p99/max, n="
+          + h.getTotalCount() + "): " + h.toPercentileString());
+    }
+  }
+}
@@ -6,10 +6,7 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
-import java.io.IOException;
 import java.io.Reader;
-import java.io.StreamTokenizer;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,6 +26,7 @@ public class Process {
   protected int totalCpuTime;
   protected int totalIoTime;
   protected int totalWaitTime;
+  protected int currentWaitTime;
 
   protected int cpuBurstRemaining;
   protected int ioBurstRemaining;
@@ -66,7 +64,7 @@ public class Process {
     this.cpu = cpu;
     this.io = io;
     readyTime = terminatedTime = turnaroundTime = totalCpuTime =
-        totalIoTime = totalWaitTime = cpuBurstRemaining =
+        totalIoTime = totalWaitTime = currentWaitTime = cpuBurstRemaining =
         ioBurstRemaining = timer = 0;
   }
 
@@ -92,6 +90,7 @@ public class Process {
 
   public void ready(int cycle) {
     this.readyTime = cycle;
+    this.currentWaitTime = 0;
     setState(State.READY);
   }
 
@@ -121,6 +120,7 @@ public class Process {
 
   public void processWait() {
     totalWaitTime += 1;
+    currentWaitTime += 1;
   }
 
   public void terminate(int cycle) {
@@ -196,6 +196,13 @@ public class Process {
     totalWaitTime += time;
   }
 
+  /**
+   * @return Cycles waited since this process last became ready.
+   */
+  public int getCurrentWaitTime() {
+    return currentWaitTime;
+  }
+
   public int getIoBurstRemaining() {
     return ioBurstRemaining;
   }
@@ -246,44 +253,8 @@ public class Process {
    * @param reader Reader to read from.
    * @return List of processes.
    */
-   public static List<Process> read(Reader reader) {
-    StreamTokenizer tokenizer = new StreamTokenizer(reader);
-    tokenizer.eolIsSignificant(false);
-    tokenizer.parseNumbers();
-    List<Process> processes = new ArrayList<Process>();
-    try {
-      int next;
-      int i = -1;
-      int id = 0;
-      int arrival = 0, burst = 0, cpu = 0, io = 0;
-      int n;
-      while ((next = tokenizer.nextToken()) != StreamTokenizer.TT_EOF) {
-        if (next == tokenizer.TT_NUMBER) {
-          n = (int) tokenizer.nval;
-          // Skip the first one, as it's just the number of processes
-          if (i == -1) {
-            i = 0;
-            continue;
-          } else if (i == 3) {
-            io = n;
-            processes.add(new Process(id, arrival, burst, cpu, io));
-            id++;
-            i = 0;
-            continue;
-          } else if (i == 2) {
-            cpu = n;
-          } else if (i == 1) {
-            burst = n;
-          } else {
-            arrival = n;
-          }
-          i++;
-        }
-      }
-    } catch (IOException e) {
-      logger.severe("There was an error reading the input: " + e);
-    }
-    return processes;
+  public static List<Process> read(Reader reader) {
+    return WorkloadReader.readAll(reader).getProcesses();
   }
 
   /**
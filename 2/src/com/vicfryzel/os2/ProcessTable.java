@@ -0,0 +1,585 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Columnar table of processes.  Each process is an index into parallel
+ * primitive arrays, one per field of Process, so that the per-cycle loops of
+ * a Scheduler walk flat arrays instead of chasing Process references.
+ */
+public class ProcessTable {
+  public static final byte UNSTARTED = 0;
+  public static final byte READY = 1;
+  public static final byte RUNNING = 2;
+  public static final byte BLOCKED = 3;
+  public static final byte TERMINATED = 4;
+  protected static final int NUM_STATES = 5;
+
+  protected int size;
+
+  protected int[] arrival;
+  protected int[] burst;
+  protected int[] cpu;
+  protected int[] io;
+
+  protected int[] readyTime;
+  protected int[] terminatedTime;
+  protected int[] totalCpuTime;
+  protected int[] totalIoTime;
+  protected int[] totalWaitTime;
+  protected int[] currentWaitTime;
+  protected int[] cpuBurstRemaining;
+  protected int[] ioBurstRemaining;
+  protected int[] timer;
+  protected byte[] state;
+
+  protected int[] stateCounts;
+
+  /**
+   * True if the state columns are shared with a fork of this table, and must
+   * be copied before they are written.
+   */
+  protected boolean shared;
+  /**
+   * True if the input columns (arrival, burst, cpu and io) are shared with a
+   * fork of this table.
+   */
+  protected boolean inputShared;
+
+  /**
+   * Create a new, empty ProcessTable.
+   *
+   * @param capacity Number of processes to allocate room for.
+   */
+  public ProcessTable(int capacity) {
+    capacity = Math.max(capacity, 1);
+    arrival = new int[capacity];
+    burst = new int[capacity];
+    cpu = new int[capacity];
+    io = new int[capacity];
+    readyTime = new int[capacity];
+    terminatedTime = new int[capacity];
+    totalCpuTime = new int[capacity];
+    totalIoTime = new int[capacity];
+    totalWaitTime = new int[capacity];
+    currentWaitTime = new int[capacity];
+    cpuBurstRemaining = new int[capacity];
+    ioBurstRemaining = new int[capacity];
+    timer = new int[capacity];
+    state = new byte[capacity];
+    stateCounts = new int[NUM_STATES];
+    size = 0;
+  }
+
+  /**
+   * Create a copy of the given table that shares its columns.
+   *
+   * @param other ProcessTable to copy.
+   */
+  protected ProcessTable(ProcessTable other) {
+    size = other.size;
+    arrival = other.arrival;
+    burst = other.burst;
+    cpu = other.cpu;
+    io = other.io;
+    readyTime = other.readyTime;
+    terminatedTime = other.terminatedTime;
+    totalCpuTime = other.totalCpuTime;
+    totalIoTime = other.totalIoTime;
+    totalWaitTime = other.totalWaitTime;
+    currentWaitTime = other.currentWaitTime;
+    cpuBurstRemaining = other.cpuBurstRemaining;
+    ioBurstRemaining = other.ioBurstRemaining;
+    timer = other.timer;
+    state = other.state;
+    stateCounts = other.stateCounts;
+    shared = inputShared = true;
+  }
+
+  /**
+   * Cheaply copy this table.  Columns are shared between this table and the
+   * copy until either of them writes to them (copy-on-write), so the copy
+   * costs O(1) until one of them changes state.
+   *
+   * @return Independent copy of this table.
+   */
+  public ProcessTable fork() {
+    shared = inputShared = true;
+    return new ProcessTable(this);
+  }
+
+  /**
+   * Take private copies of the state columns before writing to them.
+   */
+  protected void unshare() {
+    int n = arrival.length;
+    readyTime = Arrays.copyOf(readyTime, n);
+    terminatedTime = Arrays.copyOf(terminatedTime, n);
+    totalCpuTime = Arrays.copyOf(totalCpuTime, n);
+    totalIoTime = Arrays.copyOf(totalIoTime, n);
+    totalWaitTime = Arrays.copyOf(totalWaitTime, n);
+    currentWaitTime = Arrays.copyOf(currentWaitTime, n);
+    cpuBurstRemaining = Arrays.copyOf(cpuBurstRemaining, n);
+    ioBurstRemaining = Arrays.copyOf(ioBurstRemaining, n);
+    timer = Arrays.copyOf(timer, n);
+    state = Arrays.copyOf(state, n);
+    stateCounts = Arrays.copyOf(stateCounts, NUM_STATES);
+    shared = false;
+  }
+
+  /**
+   * Take private copies of the input columns before writing to them.
+   */
+  protected void unshareInput() {
+    int n = arrival.length;
+    arrival = Arrays.copyOf(arrival, n);
+    burst = Arrays.copyOf(burst, n);
+    cpu = Arrays.copyOf(cpu, n);
+    io = Arrays.copyOf(io, n);
+    inputShared = false;
+  }
+
+  /**
+   * Create a new ProcessTable holding the given processes, in order.
+   *
+   * @param processes Processes to add.
+   * @return New ProcessTable.
+   */
+  public static ProcessTable from(List<Process> processes) {
+    ProcessTable table = new ProcessTable(processes.size());
+    for (Process p : processes) {
+      table.add(p.getArrival(), p.getBurst(), p.getCpu(), p.getIo());
+    }
+    return table;
+  }
+
+  protected void ensureCapacity(int capacity) {
+    if (capacity <= arrival.length) {
+      return;
+    }
+    int n = Math.max(capacity, arrival.length * 2);
+    arrival = Arrays.copyOf(arrival, n);
+    burst = Arrays.copyOf(burst, n);
+    cpu = Arrays.copyOf(cpu, n);
+    io = Arrays.copyOf(io, n);
+    readyTime = Arrays.copyOf(readyTime, n);
+    terminatedTime = Arrays.copyOf(terminatedTime, n);
+    totalCpuTime = Arrays.copyOf(totalCpuTime, n);
+    totalIoTime = Arrays.copyOf(totalIoTime, n);
+    totalWaitTime = Arrays.copyOf(totalWaitTime, n);
+    currentWaitTime = Arrays.copyOf(currentWaitTime, n);
+    cpuBurstRemaining = Arrays.copyOf(cpuBurstRemaining, n);
+    ioBurstRemaining = Arrays.copyOf(ioBurstRemaining, n);
+    timer = Arrays.copyOf(timer, n);
+    state = Arrays.copyOf(state, n);
+  }
+
+  /**
+   * Add a new, unstarted process to the end of this table.
+   *
+   * @param arrival Arrival time.
+   * @param burst CPU bursts.
+   * @param cpu Required CPU time.
+   * @param io IO bursts.
+   * @return Index of the new process.
+   */
+  public int add(int arrival, int burst, int cpu, int io) {
+    if (shared) {
+      unshare();
+    }
+    if (inputShared) {
+      unshareInput();
+    }
+    ensureCapacity(size + 1);
+    int i = size++;
+    this.arrival[i] = arrival;
+    this.burst[i] = burst;
+    this.cpu[i] = cpu;
+    this.io[i] = io;
+    state[i] = UNSTARTED;
+    stateCounts[UNSTARTED]++;
+    return i;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove all processes, keeping the allocated capacity.
+   */
+  public void clear() {
+    if (shared) {
+      unshare();
+    }
+    for (int i = 0; i < size; i++) {
+      readyTime[i] = terminatedTime[i] = totalCpuTime[i] = totalIoTime[i] =
+          totalWaitTime[i] = currentWaitTime[i] = cpuBurstRemaining[i] =
+          ioBurstRemaining[i] = timer[i] = 0;
+    }
+    for (int s = 0; s < NUM_STATES; s++) {
+      stateCounts[s] = 0;
+    }
+    size = 0;
+  }
+
+  /**
+   * @return New table with the same processes as this one, none of them
+   *         started.
+   */
+  public ProcessTable copyInput() {
+    ProcessTable retval = new ProcessTable(size);
+    for (int i = 0; i < size; i++) {
+      retval.add(arrival[i], burst[i], cpu[i], io[i]);
+    }
+    return retval;
+  }
+
+  /**
+   * Stable sort of all processes by arrival time.  Processes keep their index
+   * as their ID, so this must only be done before scheduling starts.
+   */
+  public void sortByArrival() {
+    // The permuted columns are always new arrays
+    IntList order = new IntList(size);
+    boolean sorted = true;
+    for (int i = 0; i < size; i++) {
+      order.add(i);
+      if (i > 0 && arrival[i - 1] > arrival[i]) {
+        sorted = false;
+      }
+    }
+    if (sorted) {
+      return;
+    }
+    order.sort(new IntList.IndexComparator() {
+      public int compare(int i, int j) {
+        return arrival[i] < arrival[j] ? -1 : (arrival[i] == arrival[j] ? 0 : 1);
+      }
+    });
+    int[] permutation = Arrays.copyOf(order.values, size);
+    arrival = permute(arrival, permutation);
+    burst = permute(burst, permutation);
+    cpu = permute(cpu, permutation);
+    io = permute(io, permutation);
+    readyTime = permute(readyTime, permutation);
+    terminatedTime = permute(terminatedTime, permutation);
+    totalCpuTime = permute(totalCpuTime, permutation);
+    totalIoTime = permute(totalIoTime, permutation);
+    totalWaitTime = permute(totalWaitTime, permutation);
+    currentWaitTime = permute(currentWaitTime, permutation);
+    cpuBurstRemaining = permute(cpuBurstRemaining, permutation);
+    ioBurstRemaining = permute(ioBurstRemaining, permutation);
+    timer = permute(timer, permutation);
+    byte[] newState = new byte[state.length];
+    for (int i = 0; i < size; i++) {
+      newState[i] = state[permutation[i]];
+    }
+    state = newState;
+    stateCounts = Arrays.copyOf(stateCounts, NUM_STATES);
+    shared = inputShared = false;
+  }
+
+  protected int[] permute(int[] column, int[] permutation) {
+    int[] retval = new int[column.length];
+    for (int i = 0; i < permutation.length; i++) {
+      retval[i] = column[permutation[i]];
+    }
+    return retval;
+  }
+
+  /**
+   * @param state One of UNSTARTED, READY, RUNNING, BLOCKED or TERMINATED.
+   * @return Number of processes currently in the given state.
+   */
+  public int count(byte state) {
+    return stateCounts[state];
+  }
+
+  public byte getState(int i) {
+    return state[i];
+  }
+
+  protected void setState(int i, byte newState) {
+    if (shared) {
+      unshare();
+    }
+    stateCounts[state[i]]--;
+    stateCounts[newState]++;
+    state[i] = newState;
+  }
+
+  public boolean isStarted(int i) {
+    return state[i] != UNSTARTED;
+  }
+
+  public void ready(int i, int cycle) {
+    if (shared) {
+      unshare();
+    }
+    readyTime[i] = cycle;
+    currentWaitTime[i] = 0;
+    setState(i, READY);
+  }
+
+  public boolean isReady(int i) {
+    return state[i] == READY;
+  }
+
+  public void run(int i) {
+    setState(i, RUNNING);
+  }
+
+  public boolean isRunning(int i) {
+    return state[i] == RUNNING;
+  }
+
+  public void block(int i) {
+    setState(i, BLOCKED);
+  }
+
+  public boolean isBlocked(int i) {
+    return state[i] == BLOCKED;
+  }
+
+  public void processWait(int i) {
+    if (shared) {
+      unshare();
+    }
+    totalWaitTime[i]++;
+    currentWaitTime[i]++;
+  }
+
+  public void terminate(int i, int cycle) {
+    if (shared) {
+      unshare();
+    }
+    terminatedTime[i] = cycle;
+    setState(i, TERMINATED);
+  }
+
+  public boolean isTerminated(int i) {
+    return state[i] == TERMINATED;
+  }
+
+  public int getArrival(int i) {
+    return arrival[i];
+  }
+
+  public int getBurst(int i) {
+    return burst[i];
+  }
+
+  public int getCpu(int i) {
+    return cpu[i];
+  }
+
+  public int getIo(int i) {
+    return io[i];
+  }
+
+  public int getReadyTime(int i) {
+    return readyTime[i];
+  }
+
+  public int getTerminatedTime(int i) {
+    return terminatedTime[i];
+  }
+
+  public int getTurnaroundTime(int i) {
+    return totalCpuTime[i] + totalIoTime[i] + totalWaitTime[i];
+  }
+
+  public int getTotalCpuTime(int i) {
+    return totalCpuTime[i];
+  }
+
+  public void addTotalCpuTime(int i, int time) {
+    if (shared) {
+      unshare();
+    }
+    totalCpuTime[i] += time;
+  }
+
+  public int getTotalIoTime(int i) {
+    return totalIoTime[i];
+  }
+
+  public void addTotalIoTime(int i, int time) {
+    if (shared) {
+      unshare();
+    }
+    totalIoTime[i] += time;
+  }
+
+  public int getTotalWaitTime(int i) {
+    return totalWaitTime[i];
+  }
+
+  /**
+   * @return Cycles process i has waited since it last became ready.
+   */
+  public int getCurrentWaitTime(int i) {
+    return currentWaitTime[i];
+  }
+
+  public int getCpuBurstRemaining(int i) {
+    return cpuBurstRemaining[i];
+  }
+
+  public void setCpuBurstRemaining(int i, int time) {
+    if (shared) {
+      unshare();
+    }
+    cpuBurstRemaining[i] = time;
+  }
+
+  public int getIoBurstRemaining(int i) {
+    return ioBurstRemaining[i];
+  }
+
+  public void setIoBurstRemaining(int i, int time) {
+    if (shared) {
+      unshare();
+    }
+    ioBurstRemaining[i] = time;
+  }
+
+  public int getTimer(int i) {
+    return timer[i];
+  }
+
+  public void setTimer(int i, int time) {
+    if (shared) {
+      unshare();
+    }
+    timer[i] = time;
+  }
+
+  /**
+   * @return Sum of CPU time used by all processes.
+   */
+  public long getTotalCpuTime() {
+    long retval = 0;
+    for (int i = 0; i < size; i++) {
+      retval += totalCpuTime[i];
+    }
+    return retval;
+  }
+
+  /**
+   * @return "( A B C IO )" representation of process i.
+   */
+  public String toString(int i) {
+    return "( " + arrival[i] + " " + burst[i] + " " + cpu[i] + " " + io[i]
+        + " )";
+  }
+
+  /**
+   * @return "(A,B,C,IO)" representation of process i.
+   */
+  public String toAltString(int i) {
+    return "(" + arrival[i] + "," + burst[i] + "," + cpu[i] + "," + io[i]
+        + ")";
+  }
+
+  /**
+   * @return Process object holding the input parameters of process i.
+   */
+  public Process getProcess(int i) {
+    return new Process(i, arrival[i], burst[i], cpu[i], io[i]);
+  }
+
+  /**
+   * @return Process objects holding the input parameters of all processes.
+   */
+  public List<Process> getProcesses() {
+    List<Process> retval = new ArrayList<Process>(size);
+    for (int i = 0; i < size; i++) {
+      retval.add(getProcess(i));
+    }
+    return retval;
+  }
+
+  /**
+   * Write every process and its full state.
+   *
+   * @param out Stream to write to.
+   */
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(size);
+    writeColumn(out, arrival);
+    writeColumn(out, burst);
+    writeColumn(out, cpu);
+    writeColumn(out, io);
+    writeColumn(out, readyTime);
+    writeColumn(out, terminatedTime);
+    writeColumn(out, totalCpuTime);
+    writeColumn(out, totalIoTime);
+    writeColumn(out, totalWaitTime);
+    writeColumn(out, currentWaitTime);
+    writeColumn(out, cpuBurstRemaining);
+    writeColumn(out, ioBurstRemaining);
+    writeColumn(out, timer);
+    out.write(state, 0, size);
+  }
+
+  protected void writeColumn(DataOutputStream out, int[] column)
+      throws IOException {
+    for (int i = 0; i < size; i++) {
+      out.writeInt(column[i]);
+    }
+  }
+
+  /**
+   * Read a table previously written with write().
+   *
+   * @param in Stream to read from.
+   * @return ProcessTable that was read.
+   */
+  public static ProcessTable read(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0) {
+      throw new IOException("Invalid process table size " + size);
+    }
+    ProcessTable table = new ProcessTable(size);
+    table.size = size;
+    table.readColumn(in, table.arrival);
+    table.readColumn(in, table.burst);
+    table.readColumn(in, table.cpu);
+    table.readColumn(in, table.io);
+    table.readColumn(in, table.readyTime);
+    table.readColumn(in, table.terminatedTime);
+    table.readColumn(in, table.totalCpuTime);
+    table.readColumn(in, table.totalIoTime);
+    table.readColumn(in, table.totalWaitTime);
+    table.readColumn(in, table.currentWaitTime);
+    table.readColumn(in, table.cpuBurstRemaining);
+    table.readColumn(in, table.ioBurstRemaining);
+    table.readColumn(in, table.timer);
+    in.readFully(table.state, 0, size);
+    for (int i = 0; i < size; i++) {
+      if (table.state[i] < 0 || table.state[i] >= NUM_STATES) {
+        throw new IOException("Invalid state " + table.state[i]
+            + " for process " + i);
+      }
+      table.stateCounts[table.state[i]]++;
+    }
+    return table;
+  }
+
+  protected void readColumn(DataInputStream in, int[] column)
+      throws IOException {
+    for (int i = 0; i < size; i++) {
+      column[i] = in.readInt();
+    }
+  }
+}
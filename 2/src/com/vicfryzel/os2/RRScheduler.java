@@ -3,17 +3,50 @@
 package com.vicfryzel.os2;
 
 import java.io.Reader;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 
 public class RRScheduler extends FCFSScheduler {
   public static final int QUANTUM = 2;
 
+  protected int quantum;
+
   public RRScheduler(Reader inputReader, Reader randomNumberReader,
                      boolean verbose, boolean showRandom) {
+    this(inputReader, randomNumberReader, verbose, showRandom, QUANTUM);
+  }
+
+  public RRScheduler(Reader inputReader, Reader randomNumberReader,
+                     boolean verbose, boolean showRandom, int quantum) {
     super(inputReader, randomNumberReader, verbose, showRandom);
+    setQuantum(quantum);
+  }
+
+  public RRScheduler(WorkloadSource workload, Reader randomNumberReader,
+                     boolean verbose, boolean showRandom) {
+    this(workload, randomNumberReader, verbose, showRandom, QUANTUM);
+  }
+
+  public RRScheduler(WorkloadSource workload, Reader randomNumberReader,
+                     boolean verbose, boolean showRandom, int quantum) {
+    super(workload, randomNumberReader, verbose, showRandom);
+    setQuantum(quantum);
+  }
+
+  public RRScheduler(Scheduler prefix, int quantum) {
+    super(prefix);
+    setQuantum(quantum);
+  }
+
+  protected void setQuantum(int quantum) {
+    if (quantum < 1) {
+      throw new IllegalArgumentException(
+          "Quantum must be positive, got " + quantum);
+    }
+    this.quantum = quantum;
+  }
+
+  public int getQuantum() {
+    return quantum;
   }
 
   protected boolean isTimerBased() {
@@ -21,32 +54,60 @@ public class RRScheduler extends FCFSScheduler {
   }
 
   public void handleReady() {
-    for (Process p : getReady()) {
-      if (getRunning().size() == 0) {
-        p.setTimer(QUANTUM);
-        if (p.getCpuBurstRemaining() == 0) {
-          p.setCpuBurstRemaining(getBurst(p.getBurst(), p.getCpu()));
+    ProcessTable t = table;
+    IntList ready = getReady();
+    for (int k = 0; k < ready.size(); k++) {
+      int i = ready.get(k);
+      if (t.count(ProcessTable.RUNNING) == 0) {
+        t.setTimer(i, quantum);
+        if (t.getCpuBurstRemaining(i) == 0) {
+          t.setCpuBurstRemaining(i, nextCpuBurst(i));
           appendShowRandomCpuString();
         }
-        p.run();
+        t.run(i);
+        recordDispatch(i);
       } else {
-        p.processWait();
+        t.processWait(i);
       }
-      processes.set(p.getId(), p);
     }
   }
 
   public void handleRunning() {
     super.handleRunning();
-    for (Process p : getRunning()) {
-      if (p.getTimer() > 0) {
-        p.setTimer(p.getTimer() - 1);
-      }
-      if (p.getTimer() == 0) {
-        p.ready(cycle);
+    ProcessTable t = table;
+    for (int i = 0; i < t.size(); i++) {
+      if (t.isRunning(i)) {
+        if (t.getTimer(i) > 0) {
+          t.setTimer(i, t.getTimer(i) - 1);
+        }
+        if (t.getTimer(i) == 0) {
+          t.ready(i, cycle);
+        }
       }
+    }
+  }
+
+  /**
+   * Without competition, a process is preempted when its quantum expires and
+   * immediately dispatched again.  Record those dispatches, and restart the
+   * quantum timer of the running process where it would have been.
+   */
+  protected void continueSoloPrefix(IntList completedRuns) {
+    for (int k = 0; k < completedRuns.size(); k++) {
+      recordRedispatches((completedRuns.get(k) - 1) / quantum);
+    }
+    ProcessTable t = table;
+    if (t.size() > 0 && t.isRunning(0)) {
+      // Dispatched at readyTime, and has run through the last cycle
+      int ran = (cycle - 1) - t.getReadyTime(0);
+      recordRedispatches(ran / quantum);
+      t.setTimer(0, quantum - ran % quantum);
+    }
+  }
 
-      processes.set(p.getId(), p);
+  protected void recordRedispatches(int count) {
+    if (count > 0) {
+      responseHistogram.record(0, count);
     }
   }
 }
@@ -0,0 +1,106 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * The uniformly distributed random integers (UDRIs) a Scheduler draws its
+ * bursts from.  They are read once, and handed out through a cursor that can
+ * be saved and restored, so a simulation can be resumed exactly.
+ */
+public class RandomNumbers {
+  protected int[] values;
+  protected int size;
+  protected int cursor;
+
+  protected static Logger logger;
+  static {
+    logger = Logger.getLogger("RandomNumbers");
+    logger.setLevel(Level.WARNING);
+  }
+
+  /**
+   * Read all random integers from the given Reader.
+   *
+   * @param reader Reader wrapping random int stream.
+   */
+  public RandomNumbers(Reader reader) {
+    values = new int[1024];
+    size = 0;
+    cursor = 0;
+    StreamTokenizer tokenizer = new StreamTokenizer(reader);
+    tokenizer.eolIsSignificant(false);
+    tokenizer.parseNumbers();
+    try {
+      int next;
+      while ((next = tokenizer.nextToken()) != StreamTokenizer.TT_EOF) {
+        if (next == StreamTokenizer.TT_NUMBER) {
+          if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+          }
+          values[size++] = (int) tokenizer.nval;
+        } else {
+          logger.severe("Non-numeric token found in random integer file.");
+        }
+      }
+    } catch (IOException e) {
+      logger.severe("Problem reading random numbers: " + e);
+    }
+  }
+
+  /**
+   * Create a copy of the given RandomNumbers with its own cursor.  The
+   * integers themselves are never modified, so they are shared.
+   *
+   * @param other RandomNumbers to copy.
+   */
+  public RandomNumbers(RandomNumbers other) {
+    values = other.values;
+    size = other.size;
+    cursor = other.cursor;
+  }
+
+  /**
+   * @return Next random integer.  Wraps around to the first one when all have
+   *         been used.
+   */
+  public int next() {
+    if (size == 0) {
+      throw new IllegalStateException("No random integers were read");
+    }
+    if (cursor == size) {
+      logger.warning("Ran out of random integers, resetting to start of file.");
+      cursor = 0;
+    }
+    return values[cursor++];
+  }
+
+  /**
+   * @return Number of random integers used so far, modulo the number read.
+   */
+  public int getCursor() {
+    return cursor;
+  }
+
+  /**
+   * @param cursor Position of the next random integer to use.
+   */
+  public void setCursor(int cursor) {
+    if (cursor < 0 || cursor > size) {
+      throw new IllegalArgumentException("Random cursor " + cursor
+          + " is outside of the " + size + " random integers read");
+    }
+    this.cursor = cursor;
+  }
+
+  public int size() {
+    return size;
+  }
+}
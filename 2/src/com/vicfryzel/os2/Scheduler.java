@@ -2,12 +2,20 @@
 
 package com.vicfryzel.os2;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StreamTokenizer;
@@ -19,6 +27,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -26,10 +35,14 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.logging.Logger;
+import javax.management.JMException;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.sun.net.httpserver.HttpServer;
 
 
 public abstract class Scheduler {
@@ -39,9 +52,14 @@ public abstract class Scheduler {
     public List<String> inputFile;
 
     @Parameter(names = { "-t", "--type" },
-               description = "Type of scheduler to use. {fcfs,hprn,rr2,uni}. Default: fcfs.")
+               description = "Type of scheduler to use. {fcfs,hprn,rr<quantum>,uni}. Default: fcfs.")
     public String type = "fcfs";
 
+    @Parameter(names = { "--sweep" },
+               description = "Comma-separated scheduler types to run from a "
+                   + "shared prefix, in parallel, instead of --type.")
+    public String sweep = null;
+
     @Parameter(names = { "-v", "--verbose" },
                description = "Show verbose output of each cycle.")
     public boolean verbose = false;
@@ -53,18 +71,77 @@ public abstract class Scheduler {
     @Parameter(names = { "--random-file" },
                description = "Path to input file of random numbers (UDRIs).")
     public String randomFile = "data/random-numbers";
+
+    @Parameter(names = { "-p", "--percentiles" },
+               description = "Show p50/p90/p99/max latencies in the summary.")
+    public boolean percentiles = false;
+
+    @Parameter(names = { "--histogram-file" },
+               description = "Path to write binary latency histograms to.")
+    public String histogramFile = null;
+
+    @Parameter(names = { "--stream" },
+               description = "Stream processes from the input file as they "
+                   + "arrive.  The input must be sorted by arrival time.")
+    public boolean stream = false;
+
+    @Parameter(names = { "--trace" },
+               description = "The input file is a binary trace of recorded "
+                   + "bursts, written by TraceWriter.  Implies --stream.")
+    public boolean trace = false;
+
+    @Parameter(names = { "--checkpoint-file" },
+               description = "Path to periodically save simulation state to.")
+    public String checkpointFile = null;
+
+    @Parameter(names = { "--checkpoint-interval" },
+               description = "Cycles between checkpoints. Default: 1000000.")
+    public int checkpointInterval = 1000000;
+
+    @Parameter(names = { "--resume" },
+               description = "Resume from the state saved in --checkpoint-file.")
+    public boolean resume = false;
+
+    @Parameter(names = { "--metrics-port" },
+               description = "Serve live metrics as text on "
+                   + "http://localhost:port/metrics.  0 picks a free port.")
+    public int metricsPort = -1;
+
+    @Parameter(names = { "--jmx" },
+               description = "Register live metrics as a JMX MBean.")
+    public boolean jmx = false;
   }
 
+  protected static final int CHECKPOINT_MAGIC = 0x4f533243;
+  protected static final int CHECKPOINT_VERSION = 1;
+
   protected Reader inputReader;
   protected Reader randomNumberReader;
-  protected StreamTokenizer randomNumberTokenizer;
-  protected List<Process> processes;
+  protected RandomNumbers randomNumbers;
+  protected ProcessTable input;
+  protected WorkloadSource workload;
+  protected ProcessTable table;
+  protected int arrivalCursor;
   protected Logger logger;
   protected boolean verbose;
   protected boolean showRandom;
   protected int cycle;
   protected int latestUDRI;
   protected int blockedCycles;
+  protected boolean showPercentiles;
+  protected boolean started;
+  protected boolean finished;
+  protected String checkpointPath;
+  protected SchedulerMetrics metrics;
+  protected BurstSource bursts;
+  protected List<SimulationListener> listeners =
+      new ArrayList<SimulationListener>();
+  protected boolean formatText = true;
+  protected int checkpointInterval;
+
+  protected LatencyHistogram turnaroundHistogram;
+  protected LatencyHistogram waitHistogram;
+  protected LatencyHistogram responseHistogram;
 
   protected ByteArrayOutputStream topOutData;
   protected PrintStream topOut;
@@ -88,25 +165,103 @@ public abstract class Scheduler {
     this.verbose = verbose;
     this.showRandom = showRandom;
 
+    // Parse once; reset() only has to copy the parsed input
+    input = WorkloadReader.readAll(inputReader);
+    randomNumbers = new RandomNumbers(randomNumberReader);
+
     reset();
 
     logger = Logger.getLogger("Scheduler");
     logger.setLevel(Level.WARNING);
   }
 
-  protected void reset() {
-    try {
-      inputReader.reset();
-    } catch (IOException e) {}
+  /**
+   * Create a new Scheduler that pulls processes from the given source as they
+   * arrive, rather than reading them all up front.  The source must supply
+   * processes in arrival order.  The input lists are not printed, since the
+   * full input is never held in memory.
+   *
+   * @param workload Source of processes, in arrival order.
+   * @param randomNumberReader Reader wrapping random int stream.
+   * @param verbose True if output should be verbose.
+   * @param showRandom True if verbose output should show random numbers used.
+   */
+  public Scheduler(WorkloadSource workload, Reader randomNumberReader,
+                   boolean verbose, boolean showRandom) {
+    this.workload = workload;
+    this.randomNumberReader = randomNumberReader;
+    this.verbose = verbose;
+    this.showRandom = showRandom;
+
+    randomNumbers = new RandomNumbers(randomNumberReader);
+
+    reset();
+
+    logger = Logger.getLogger("Scheduler");
+    logger.setLevel(Level.WARNING);
+  }
+
+  /**
+   * Create a new Scheduler that continues from the current state of the given
+   * Scheduler, typically one that has simulated a prefix shared by several
+   * policies.  The process table is copied on write, so forking is cheap.
+   *
+   * @param prefix Scheduler to continue from.  It must not be streaming.
+   */
+  protected Scheduler(Scheduler prefix) {
+    if (prefix.workload != null) {
+      throw new IllegalArgumentException(
+          "Cannot fork a Scheduler that is streaming its input");
+    }
+    inputReader = prefix.inputReader;
+    randomNumberReader = prefix.randomNumberReader;
+    verbose = prefix.verbose;
+    showRandom = prefix.showRandom;
+    showPercentiles = prefix.showPercentiles;
+    input = prefix.input;
+    randomNumbers = new RandomNumbers(prefix.randomNumbers);
+    table = prefix.table.fork();
+    arrivalCursor = prefix.arrivalCursor;
+    cycle = prefix.cycle;
+    blockedCycles = prefix.blockedCycles;
+    latestUDRI = prefix.latestUDRI;
+    started = prefix.started;
+    finished = prefix.finished;
+
+    topOutData = copyOf(prefix.topOutData);
+    topOut = new PrintStream(topOutData);
+    verboseOutData = copyOf(prefix.verboseOutData);
+    verboseOut = new PrintStream(verboseOutData);
+    bottomOutData = copyOf(prefix.bottomOutData);
+    bottomOut = new PrintStream(bottomOutData);
 
-    processes = Process.read(inputReader);
+    turnaroundHistogram = new LatencyHistogram(prefix.turnaroundHistogram);
+    waitHistogram = new LatencyHistogram(prefix.waitHistogram);
+    responseHistogram = new LatencyHistogram(prefix.responseHistogram);
+
+    logger = Logger.getLogger("Scheduler");
+    logger.setLevel(Level.WARNING);
+  }
 
+  protected static ByteArrayOutputStream copyOf(ByteArrayOutputStream data) {
+    ByteArrayOutputStream retval = new ByteArrayOutputStream(data.size() + 32);
     try {
-      randomNumberReader.reset();
-    } catch (IOException e) {}
-    randomNumberTokenizer = new StreamTokenizer(randomNumberReader);
-    randomNumberTokenizer.eolIsSignificant(false);
-    randomNumberTokenizer.parseNumbers();
+      data.writeTo(retval);
+    } catch (IOException e) {
+      // Writing to a ByteArrayOutputStream never fails
+    }
+    return retval;
+  }
+
+  protected void reset() {
+    if (workload == null) {
+      table = input.copyInput();
+    } else {
+      table = new ProcessTable(1024);
+    }
+    arrivalCursor = 0;
+
+    randomNumbers.setCursor(0);
 
     topOutData = new ByteArrayOutputStream();
     topOut = new PrintStream(topOutData);
@@ -118,27 +273,90 @@ public abstract class Scheduler {
     cycle = 0;
     blockedCycles = 0;
     latestUDRI = 0;
-  }
+    started = false;
+    finished = false;
 
-  protected void resetProcessIds() {
-    for (int i = 0; i < processes.size(); i++) {
-      Process p = processes.get(i);
-      p.setId(i);
-      processes.set(i, p);
-    }
+    turnaroundHistogram = new LatencyHistogram();
+    waitHistogram = new LatencyHistogram();
+    responseHistogram = new LatencyHistogram();
   }
 
+  /**
+   * Schedule until every process has terminated, and format the result as
+   * text.
+   *
+   * @return Input, verbose output if enabled, and summary, as printed by the
+   *         command-line tool.
+   */
   public String scheduleUntilComplete() {
-    printUnsortedProcessList(processes);
+    formatText = true;
+    SimulationResult result = simulate();
+
+    if (verbose) {
+      verboseOut.println();
+    }
 
-    Collections.sort(processes, new ProcessArrivalComparator());
-    resetProcessIds();
+    printProcessSummary(result);
+    printSummary(result);
 
-    printSortedProcessList(processes);
-    if (!verbose) {
-      topOut.println("\n");
+    if (verbose) {
+      return topOutData.toString() + verboseOutData.toString() + bottomOutData.toString();
     } else {
-      topOut.println();
+      return topOutData.toString() + bottomOutData.toString();
+    }
+  }
+ 
+  /**
+   * Schedule until every process has terminated, without formatting any
+   * text other than verbose output, if enabled.
+   *
+   * @return Result of the run.
+   */
+  public SimulationResult run() {
+    formatText = false;
+    return simulate();
+  }
+
+  protected SimulationResult simulate() {
+    // A Scheduler restored from a checkpoint has already started
+    if (!started) {
+      start();
+    }
+
+    // Schedule until all processes are terminated
+    while (!finished && step()) {
+      if (checkpointPath != null && cycle % checkpointInterval == 0) {
+        writeCheckpoint();
+      }
+    }
+
+    recordLatencies();
+    SimulationResult result = getResult();
+    for (int k = 0; k < listeners.size(); k++) {
+      listeners.get(k).simulationCompleted(result);
+    }
+    return result;
+  }
+
+  protected void start() {
+    if (workload == null) {
+      if (formatText) {
+        printUnsortedProcessList();
+      }
+
+      // Process IDs are indices into the table, so they follow arrival order
+      table.sortByArrival();
+
+      if (formatText) {
+        printSortedProcessList();
+      }
+    }
+    if (formatText) {
+      if (!verbose) {
+        topOut.println("\n");
+      } else {
+        topOut.println();
+      }
     }
 
     if (verbose) {
@@ -146,149 +364,358 @@ public abstract class Scheduler {
           "This detailed printout gives the state and remaining burst "
           + "for each process\n");
     }
+    started = true;
+  }
 
-    // Schedule until all processes are terminated
-    while (step()) {}
+  /**
+   * Step until just before the first cycle at which more than one process has
+   * arrived.  Up to that point every policy makes the same decisions, so the
+   * state reached can be shared by several policies.
+   */
+  protected void scheduleSoloPrefix() {
+    if (!started) {
+      start();
+    }
+    while (!finished && cycle < getDivergenceCycle()) {
+      step();
+    }
+  }
 
-    if (verbose) {
-      verboseOut.println();
+  /**
+   * @return First cycle at which a second process arrives, or
+   *         Integer.MAX_VALUE if there is no second process.
+   */
+  protected int getDivergenceCycle() {
+    if (table.size() >= 2) {
+      return table.getArrival(1);
+    } else if (table.size() == 1 && workload != null && workload.hasNext()) {
+      return workload.peekArrival();
     }
+    return Integer.MAX_VALUE;
+  }
 
-    printProcessSummary();
-    printSummary();
+  /**
+   * Adjust the state of a Scheduler forked from a solo prefix, i.e. one in
+   * which only process 0 had arrived and which was scheduled without
+   * preemption.  Policies that would have kept other state during that
+   * prefix (e.g. quantum timers) reconstruct it here.
+   *
+   * @param completedRuns Length of every CPU run of process 0 that ended in
+   *        the prefix, in order.
+   */
+  protected void continueSoloPrefix(IntList completedRuns) {
+  }
 
-    if (verbose) {
-      return topOutData.toString() + verboseOutData.toString() + bottomOutData.toString();
-    } else {
-      return topOutData.toString() + bottomOutData.toString();
+  /**
+   * Periodically save the state of this Scheduler while it runs, so that a
+   * long simulation can be resumed with restore() after a crash.
+   *
+   * @param path File to save state to.  It is replaced on each checkpoint.
+   * @param interval Number of cycles between checkpoints.
+   */
+  public void setCheckpoint(String path, int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException(
+          "Checkpoint interval must be positive, got " + interval);
     }
+    checkpointPath = path;
+    checkpointInterval = interval;
   }
- 
+
+  protected void writeCheckpoint() {
+    File target = new File(checkpointPath);
+    File temp = new File(checkpointPath + ".tmp");
+    try {
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        checkpoint(out);
+      } finally {
+        out.close();
+      }
+      if (!temp.renameTo(target)) {
+        target.delete();
+        if (!temp.renameTo(target)) {
+          throw new IOException("Could not rename " + temp + " to " + target);
+        }
+      }
+    } catch (IOException e) {
+      logger.severe("Could not write checkpoint at cycle " + cycle + ": " + e);
+    }
+  }
+
+  /**
+   * Save the full state of this Scheduler between two cycles.
+   *
+   * @param out Stream to write to.
+   */
+  public void checkpoint(OutputStream out) throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    DataOutputStream data = new DataOutputStream(
+        new BufferedOutputStream(gzip));
+    data.writeInt(CHECKPOINT_MAGIC);
+    data.writeInt(CHECKPOINT_VERSION);
+    data.writeUTF(getClass().getName());
+    data.writeBoolean(verbose);
+    data.writeBoolean(showRandom);
+    data.writeBoolean(workload != null);
+    data.writeInt(cycle);
+    data.writeInt(blockedCycles);
+    data.writeInt(latestUDRI);
+    data.writeInt(arrivalCursor);
+    data.writeInt(randomNumbers.getCursor());
+    table.write(data);
+    turnaroundHistogram.write(data);
+    waitHistogram.write(data);
+    responseHistogram.write(data);
+    writeBytes(data, topOutData);
+    writeBytes(data, verboseOutData);
+    data.flush();
+    gzip.finish();
+  }
+
+  protected void writeBytes(DataOutputStream out, ByteArrayOutputStream bytes)
+      throws IOException {
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  /**
+   * Restore state saved with checkpoint().  This Scheduler must be of the
+   * same type and built from the same input and random numbers as the one
+   * that was saved.  scheduleUntilComplete() then continues from the saved
+   * cycle, and produces the same output as an uninterrupted run.
+   *
+   * @param in Stream to read from.
+   */
+  public void restore(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(
+        new BufferedInputStream(new GZIPInputStream(in)));
+    if (data.readInt() != CHECKPOINT_MAGIC) {
+      throw new IOException("Not a scheduler checkpoint");
+    }
+    int version = data.readInt();
+    if (version != CHECKPOINT_VERSION) {
+      throw new IOException("Unsupported checkpoint version " + version);
+    }
+    String type = data.readUTF();
+    if (!type.equals(getClass().getName())) {
+      throw new IOException("Checkpoint is for a " + type + ", not a "
+          + getClass().getName());
+    }
+    if (data.readBoolean() != verbose || data.readBoolean() != showRandom) {
+      throw new IOException("Checkpoint was saved with different output flags");
+    }
+    if (data.readBoolean() != (workload != null)) {
+      throw new IOException("Checkpoint was saved with a different input mode");
+    }
+    cycle = data.readInt();
+    blockedCycles = data.readInt();
+    latestUDRI = data.readInt();
+    arrivalCursor = data.readInt();
+    randomNumbers.setCursor(data.readInt());
+    table = ProcessTable.read(data);
+    turnaroundHistogram = LatencyHistogram.read(data);
+    waitHistogram = LatencyHistogram.read(data);
+    responseHistogram = LatencyHistogram.read(data);
+    readBytes(data, topOutData);
+    readBytes(data, verboseOutData);
+
+    if (workload != null) {
+      // Skip the processes that had already been streamed in
+      ProcessTable skipped = new ProcessTable(1);
+      for (int i = 0; i < table.size(); i++) {
+        if (!workload.hasNext()) {
+          throw new IOException("Input has fewer processes than checkpoint");
+        }
+        skipped.clear();
+        workload.next(skipped);
+      }
+    } else if (table.size() != input.size()) {
+      throw new IOException("Checkpoint has " + table.size()
+          + " processes, but input has " + input.size());
+    }
+    started = true;
+  }
+
+  protected void readBytes(DataInputStream in, ByteArrayOutputStream bytes)
+      throws IOException {
+    byte[] buffer = new byte[in.readInt()];
+    in.readFully(buffer);
+    bytes.reset();
+    bytes.write(buffer);
+  }
+
   public boolean step() {
     boolean retval = true;
 
-    appendVerboseCycleString();
+    admitArrivals();
+    if (verbose) {
+      appendVerboseCycleString();
+    }
 
     handleBlocked();
     handleRunning();
     handleArrivals();
     handleReady();
 
-    if (getTerminated().size() < processes.size()) {
-      if (getBlocked().size() > 0) {
+    if (metrics != null) {
+      metrics.recordCycle(table);
+    }
+    for (int k = 0; k < listeners.size(); k++) {
+      listeners.get(k).cycleCompleted(cycle, table);
+    }
+
+    if (table.count(ProcessTable.TERMINATED) < table.size()
+        || (workload != null && workload.hasNext())) {
+      if (table.count(ProcessTable.BLOCKED) > 0) {
         blockedCycles++;
       }
       cycle++;
     } else {
       retval = false;
+      finished = true;
     }
     return retval;
   }
 
+  /**
+   * Pull every process arriving this cycle from the workload source, if this
+   * Scheduler is streaming.
+   */
+  protected void admitArrivals() {
+    if (workload == null) {
+      return;
+    }
+    while (workload.hasNext() && workload.peekArrival() <= cycle) {
+      if (workload.peekArrival() < cycle) {
+        throw new IllegalStateException("Process arriving at "
+            + workload.peekArrival() + " was streamed after cycle " + cycle
+            + "; streamed input must be sorted by arrival time");
+      }
+      workload.next(table);
+    }
+  }
+
   public abstract void handleBlocked();
   public abstract void handleRunning();
   public abstract void handleArrivals();
   public abstract void handleReady();
 
+  /**
+   * @return Snapshot of the input parameters of all processes, by ID.
+   */
   public List<Process> getProcesses() {
-    return processes;
+    return table.getProcesses();
+  }
+
+  /**
+   * @return Number of cycles simulated so far.
+   */
+  public int getCycle() {
+    return cycle;
   }
 
-  public List<Process> getUnstarted() {
-    List<Process> retval = new ArrayList<Process>();
-    for (Process p : getProcesses()) {
-      if (!p.isStarted()) {
-        retval.add(p);
+  public ProcessTable getProcessTable() {
+    return table;
+  }
+
+  /**
+   * @param state State to search for.
+   * @return Indices of all processes in the given state, in ID order.
+   */
+  protected IntList getByState(byte state) {
+    IntList retval = new IntList();
+    for (int i = 0; i < table.size(); i++) {
+      if (table.getState(i) == state) {
+        retval.add(i);
       }
     }
     return retval;
   }
 
-  protected class ProcessArrivalComparator implements Comparator<Process> {
-    public int compare(Process p1, Process p2) {
-      if (p1.getArrival() > p2.getArrival()) {
-        return 1;
-      } else if (p1.getArrival() == p2.getArrival()) {
-        return 0;
-      } else {
-        return -1;
-      }
-    }
+  public IntList getUnstarted() {
+    return getByState(ProcessTable.UNSTARTED);
   }
 
-  public List<Process> getArrivals() {
-    List<Process> retval = new ArrayList<Process>();
-    for (Process p : getProcesses()) {
-      if (p.getArrival() == cycle) {
-        retval.add(p);
-      }
+  /**
+   * @return Indices of all processes arriving this cycle, in ID (and
+   *         therefore arrival) order.
+   */
+  public IntList getArrivals() {
+    IntList retval = new IntList();
+    for (int i = arrivalCursor;
+         i < table.size() && table.getArrival(i) == cycle; i++) {
+      retval.add(i);
     }
-    Collections.sort(retval, new ProcessArrivalComparator());
     return retval;
   }
 
-  private class ProcessReadyComparator implements Comparator<Process> {
-    public int compare(Process p1, Process p2) {
-      if (p1.getReadyTime() > p2.getReadyTime()) {
+  /**
+   * Processes are sorted by arrival, so those arriving this cycle follow the
+   * last one to have arrived.
+   *
+   * @return Index of the next process to arrive this cycle, or -1 if there are
+   *         no more.
+   */
+  protected int nextArrival() {
+    if (arrivalCursor < table.size()
+        && table.getArrival(arrivalCursor) == cycle) {
+      return arrivalCursor++;
+    }
+    return -1;
+  }
+
+  protected class ProcessReadyComparator implements IntList.IndexComparator {
+    public int compare(int i, int j) {
+      int ri = table.getReadyTime(i), rj = table.getReadyTime(j);
+      if (ri > rj) {
         return 1;
-      } else if (p1.getReadyTime() == p2.getReadyTime()) {
-        return (new ProcessArrivalComparator()).compare(p1, p2);
+      } else if (ri == rj) {
+        return compareArrival(i, j);
       } else {
         return -1;
       }
     }
   }
 
-  protected Comparator<Process> getProcessReadyComparator() {
+  /**
+   * Compare two processes by arrival time.
+   */
+  protected int compareArrival(int i, int j) {
+    int ai = table.getArrival(i), aj = table.getArrival(j);
+    if (ai > aj) {
+      return 1;
+    } else if (ai == aj) {
+      return 0;
+    } else {
+      return -1;
+    }
+  }
+
+  protected IntList.IndexComparator getProcessReadyComparator() {
     return new ProcessReadyComparator();
   }
 
-  public List<Process> getReady() {
-    List<Process> retval = new ArrayList<Process>();
-    for (Process p : getProcesses()) {
-      if (p.isReady()) {
-        retval.add(p);
-      }
-    }
-    Collections.sort(retval, getProcessReadyComparator());
+  public IntList getReady() {
+    IntList retval = getByState(ProcessTable.READY);
+    retval.sort(getProcessReadyComparator());
     return retval;
   }
 
-  public List<Process> getBlocked() {
-    List<Process> retval = new ArrayList<Process>();
-    for (Process p : getProcesses()) {
-      if (p.isBlocked()) {
-        retval.add(p);
-      }
-    }
-    return retval;
+  public IntList getBlocked() {
+    return getByState(ProcessTable.BLOCKED);
   }
 
-  public List<Process> getRunning() {
-    List<Process> retval = new ArrayList<Process>();
-    for (Process p : getProcesses()) {
-      if (p.isRunning()) {
-        retval.add(p);
-      }
-    }
-    return retval;
+  public IntList getRunning() {
+    return getByState(ProcessTable.RUNNING);
   }
 
-  public List<Process> getTerminated() {
-    List<Process> retval = new ArrayList<Process>();
-    for (Process p : getProcesses()) {
-      if (p.isTerminated()) {
-        retval.add(p);
-      }
-    }
-    return retval;
+  public IntList getTerminated() {
+    return getByState(ProcessTable.TERMINATED);
   }
 
   protected float getCpuUtilization() {
-    float retval = 0;
-    for (Process p : getProcesses()) {
-      retval += (float) p.getTotalCpuTime();
-    }
+    float retval = (float) table.getTotalCpuTime();
     retval = retval / (float) cycle;
     return retval;
   }
@@ -298,70 +725,174 @@ public abstract class Scheduler {
   }
 
   protected double getThroughput() {
-    return getTerminated().size() / ((double) cycle / 100);
+    return table.count(ProcessTable.TERMINATED) / ((double) cycle / 100);
   }
 
   protected double getAverageTurnaroundTime() {
     double retval = 0;
-    List<Process> processes = getProcesses();
-    for (Process p : processes) {
-      retval += p.getTurnaroundTime();
+    for (int i = 0; i < table.size(); i++) {
+      retval += table.getTurnaroundTime(i);
     }
-    retval = retval / (double) processes.size();
+    retval = retval / (double) table.size();
     return retval;
   }
 
   protected double getAverageWaitTime() {
     double retval = 0;
-    List<Process> processes = getProcesses();
-    for (Process p : processes) {
-      retval += p.getTotalWaitTime();
+    for (int i = 0; i < table.size(); i++) {
+      retval += table.getTotalWaitTime(i);
     }
-    retval = retval / (double) processes.size();
+    retval = retval / (double) table.size();
     return retval;
   }
 
-  protected void printProcessSummary() {
-    for (Process p : getTerminated()) {
+  /**
+   * @param listener Listener to call back as this Scheduler runs.
+   */
+  public void addListener(SimulationListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(SimulationListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @return Result of the run so far, for every terminated process.
+   */
+  public SimulationResult getResult() {
+    IntList terminated = getTerminated();
+    List<SimulationResult.ProcessResult> processes =
+        new ArrayList<SimulationResult.ProcessResult>(terminated.size());
+    for (int k = 0; k < terminated.size(); k++) {
+      int i = terminated.get(k);
+      processes.add(new SimulationResult.ProcessResult(
+          i, table.getArrival(i), table.getBurst(i), table.getCpu(i),
+          table.getIo(i), table.getTerminatedTime(i),
+          table.getTurnaroundTime(i), table.getTotalIoTime(i),
+          table.getTotalWaitTime(i)));
+    }
+    Map<String, LatencyHistogram> histograms =
+        new LinkedHashMap<String, LatencyHistogram>();
+    for (Map.Entry<String, LatencyHistogram> entry
+         : getHistograms().entrySet()) {
+      histograms.put(entry.getKey(), new LatencyHistogram(entry.getValue()));
+    }
+    return new SimulationResult(cycle, getCpuUtilization(),
+                                getIoUtilization(), getThroughput(),
+                                getAverageTurnaroundTime(),
+                                getAverageWaitTime(), processes, histograms);
+  }
+
+  protected void printProcessSummary(SimulationResult result) {
+    for (SimulationResult.ProcessResult p : result.getProcesses()) {
       bottomOut.println("Process " + p.getId() + ":");
-      bottomOut.println("\t(A,B,C,IO) = " + p.toAltString());
-      bottomOut.println("\tFinishing time: " + p.getTerminatedTime());
+      bottomOut.println("\t(A,B,C,IO) = (" + p.getArrival() + ","
+          + p.getBurst() + "," + p.getCpu() + "," + p.getIo() + ")");
+      bottomOut.println("\tFinishing time: " + p.getFinishingTime());
       bottomOut.println("\tTurnaround time: " + p.getTurnaroundTime());
-      bottomOut.println("\tI/O time: " + p.getTotalIoTime());
-      bottomOut.println("\tWaiting time: " + p.getTotalWaitTime() + "\n");
+      bottomOut.println("\tI/O time: " + p.getIoTime());
+      bottomOut.println("\tWaiting time: " + p.getWaitingTime() + "\n");
+    }
+  }
+
+  /**
+   * Record the turnaround and waiting time of each terminated process.
+   * Response times are recorded as processes are dispatched.
+   */
+  protected void recordLatencies() {
+    for (int i = 0; i < table.size(); i++) {
+      if (table.isTerminated(i)) {
+        turnaroundHistogram.record(table.getTurnaroundTime(i));
+        waitHistogram.record(table.getTotalWaitTime(i));
+      }
     }
   }
 
-  protected void printSummary() {
+  /**
+   * Record the response time of a process that was just dispatched, i.e. the
+   * number of cycles it spent ready before running.
+   *
+   * @param i Index of process that was just set running.
+   */
+  protected void recordDispatch(int i) {
+    responseHistogram.record(table.getCurrentWaitTime(i));
+    if (metrics != null) {
+      metrics.recordDispatch();
+    }
+  }
+
+  /**
+   * @param metrics Live metrics to update every cycle, or null for none.
+   */
+  public void setMetrics(SchedulerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public SchedulerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @param showPercentiles True if the summary should include latency
+   *        percentiles.
+   */
+  public void setShowPercentiles(boolean showPercentiles) {
+    this.showPercentiles = showPercentiles;
+  }
+
+  /**
+   * @return Latency histograms of the last run, keyed on name.
+   */
+  public Map<String, LatencyHistogram> getHistograms() {
+    Map<String, LatencyHistogram> retval =
+        new LinkedHashMap<String, LatencyHistogram>();
+    retval.put("Turnaround time", turnaroundHistogram);
+    retval.put("Waiting time", waitHistogram);
+    retval.put("Response time", responseHistogram);
+    return retval;
+  }
+
+  protected void printSummary(SimulationResult result) {
     DecimalFormat df = new DecimalFormat("#.######");
     df.setRoundingMode(RoundingMode.HALF_UP);
     df.setMinimumFractionDigits(6);
     bottomOut.println("Summary Data:");
-    bottomOut.println("\tFinishing time: " + cycle);
-    bottomOut.println("\tCPU Utilization: " + df.format(getCpuUtilization()));
-    bottomOut.println("\tI/O Utilization: " + df.format(getIoUtilization()));
-    bottomOut.println("\tThroughput: " + df.format(getThroughput())
+    bottomOut.println("\tFinishing time: " + result.getFinishingTime());
+    bottomOut.println("\tCPU Utilization: "
+        + df.format(result.getCpuUtilization()));
+    bottomOut.println("\tI/O Utilization: "
+        + df.format(result.getIoUtilization()));
+    bottomOut.println("\tThroughput: " + df.format(result.getThroughput())
         + " processes per hundred cycles");
     bottomOut.println("\tAverage turnaround time: "
-        + df.format(getAverageTurnaroundTime()));
+        + df.format(result.getAverageTurnaroundTime()));
     bottomOut.println("\tAverage waiting time: "
-        + df.format(getAverageWaitTime()));
+        + df.format(result.getAverageWaitingTime()));
+    if (showPercentiles) {
+      for (Map.Entry<String, LatencyHistogram> entry
+           : result.getHistograms().entrySet()) {
+        bottomOut.println("\t" + entry.getKey() + " (p50/p90/p99/max): "
+            + entry.getValue().toPercentileString());
+      }
+    }
   }
 
-  protected void printUnsortedProcessList(List<Process> processes) {
-    String output = processes.size() + " ";
-    for (Process p : processes) {
-      output += p.toString() + " ";
-    }
-    topOut.println("The original input was: " + output);
+  protected void printUnsortedProcessList() {
+    topOut.println("The original input was: " + getProcessListString());
   }
 
-  protected void printSortedProcessList(List<Process> processes) {
-    String output = processes.size() + " ";
-    for (Process p : processes) {
-      output += p.toString() + " ";
+  protected void printSortedProcessList() {
+    topOut.println("The (sorted) input is:  " + getProcessListString());
+  }
+
+  protected String getProcessListString() {
+    StringBuilder output = new StringBuilder();
+    output.append(table.size()).append(' ');
+    for (int i = 0; i < table.size(); i++) {
+      output.append(table.toString(i)).append(' ');
     }
-    topOut.println("The (sorted) input is:  " + output);
+    return output.toString();
   }
 
   /**
@@ -369,25 +900,43 @@ public abstract class Scheduler {
    * @return 1 + next random integer of input file % u.
    */
   protected int randomOS(int u) {
-    int random = 1;
-    try {
-      int next = randomNumberTokenizer.nextToken();
-      if (next == StreamTokenizer.TT_EOF) {
-        logger.warning("Ran out of random integers, resetting to start of file.");
-        reset();
-        next = randomNumberTokenizer.nextToken();
-      }
-      if (next == randomNumberTokenizer.TT_NUMBER) {
-        int value = (int) randomNumberTokenizer.nval;
-        latestUDRI = value;
-        random = 1 + (value % u);
-      } else {
-        logger.severe("Non-numeric token found in random integer file.");
-      }
-    } catch (IOException e) {
-      logger.severe("Problem fetching next random number: " + e);
+    int value = randomNumbers.next();
+    latestUDRI = value;
+    return 1 + (value % u);
+  }
+
+  /**
+   * @param i Index of process being dispatched.
+   * @return Length of its next CPU burst, from the BurstSource if there is
+   *         one, or else drawn at random.
+   */
+  protected int nextCpuBurst(int i) {
+    if (bursts != null) {
+      return bursts.nextCpuBurst(i);
+    }
+    return getBurst(table.getBurst(i), table.getCpu(i));
+  }
+
+  /**
+   * @param i Index of process being blocked.
+   * @return Length of its next I/O burst, from the BurstSource if there is
+   *         one, or else drawn at random.
+   */
+  protected int nextIoBurst(int i) {
+    if (bursts != null) {
+      return bursts.nextIoBurst(i);
     }
-    return random;
+    return randomOS(table.getIo(i));
+  }
+
+  /**
+   * Take burst lengths from the given source instead of drawing them from
+   * the random numbers, e.g. to replay a recorded trace.
+   *
+   * @param bursts Source of bursts, or null to draw them at random.
+   */
+  public void setBurstSource(BurstSource bursts) {
+    this.bursts = bursts;
   }
 
   protected int getBurst(int u, int max) {
@@ -406,24 +955,24 @@ public abstract class Scheduler {
   }
 
   protected static String padLeft(String s, int n) {
-    return String.format("%1$#" + n + "s", s);  
+    return String.format("%1$" + n + "s", s);  
   }
 
   protected void appendVerboseCycleString() {
     verboseOut.print("Before cycle " + padLeft(cycle + ": ", 6));
     int columnWidth = 14;
-    for (Process p : processes) {
-      if (!p.isStarted()) {
+    for (int i = 0; i < table.size(); i++) {
+      if (!table.isStarted(i)) {
         verboseOut.print(padLeft("unstarted  0", columnWidth));
-      } else if (p.isReady()) {
+      } else if (table.isReady(i)) {
         verboseOut.print(padLeft("ready  0", columnWidth));
-      } else if (p.isBlocked()) {
-        int remaining = p.getIoBurstRemaining();
+      } else if (table.isBlocked(i)) {
+        int remaining = table.getIoBurstRemaining(i);
         verboseOut.print(padLeft("blocked  " + remaining, columnWidth));
-      } else if (p.isRunning()) {
-        String remaining = String.valueOf(p.getCpuBurstRemaining());
+      } else if (table.isRunning(i)) {
+        String remaining = String.valueOf(table.getCpuBurstRemaining(i));
         verboseOut.print(padLeft("running" + padLeft(remaining, 3), columnWidth));
-      } else if (p.isTerminated()) {
+      } else if (table.isTerminated(i)) {
         verboseOut.print(padLeft("terminated  0", columnWidth));
       }
     }
@@ -444,6 +993,85 @@ public abstract class Scheduler {
   }
 
 
+  /**
+   * Create a Scheduler of the given type.  Non-verbose fcfs and uni
+   * Schedulers are FastSchedulers, which give the same results.
+   *
+   * @param type One of fcfs, uni, hprn or rr followed by a quantum.
+   * @param inputReader Reader wrapping input stream.
+   * @param randomNumberReader Reader wrapping random number stream.
+   * @param verbose Whether to produce verbose output.
+   * @param showRandom Whether to show random numbers in verbose output.
+   * @return New Scheduler.
+   */
+  public static Scheduler create(String type, Reader inputReader,
+                                 Reader randomNumberReader, boolean verbose,
+                                 boolean showRandom) {
+    return create(type, null, inputReader, randomNumberReader, verbose,
+                  showRandom);
+  }
+
+  /**
+   * Create a Scheduler of the given type that reads processes from a
+   * WorkloadSource.
+   *
+   * @param type One of fcfs, uni, hprn or rr followed by a quantum.
+   * @param workload Source of processes, in arrival order.
+   * @param randomNumberReader Reader wrapping random number stream.
+   * @param verbose Whether to produce verbose output.
+   * @param showRandom Whether to show random numbers in verbose output.
+   * @return New Scheduler.
+   */
+  public static Scheduler create(String type, WorkloadSource workload,
+                                 Reader randomNumberReader, boolean verbose,
+                                 boolean showRandom) {
+    return create(type, workload, null, randomNumberReader, verbose,
+                  showRandom);
+  }
+
+  /**
+   * Create a Scheduler of the given type from whichever of workload and
+   * inputReader is not null.
+   */
+  protected static Scheduler create(String type, WorkloadSource workload,
+                                    Reader inputReader,
+                                    Reader randomNumberReader,
+                                    boolean verbose, boolean showRandom) {
+    if (!verbose && (type.equals("fcfs") || type.equals("uni"))) {
+      // Same results, without the per-cycle scans and sorts
+      boolean uniprogrammed = type.equals("uni");
+      return workload != null
+          ? new FastScheduler(workload, randomNumberReader, uniprogrammed)
+          : new FastScheduler(inputReader, randomNumberReader, uniprogrammed);
+    } else if (type.equals("fcfs")) {
+      return workload != null
+          ? new FCFSScheduler(workload, randomNumberReader, verbose,
+                              showRandom)
+          : new FCFSScheduler(inputReader, randomNumberReader, verbose,
+                              showRandom);
+    } else if (type.equals("uni")) {
+      return workload != null
+          ? new UniScheduler(workload, randomNumberReader, verbose,
+                             showRandom)
+          : new UniScheduler(inputReader, randomNumberReader, verbose,
+                             showRandom);
+    } else if (type.equals("hprn")) {
+      return workload != null
+          ? new HPRNScheduler(workload, randomNumberReader, verbose,
+                              showRandom)
+          : new HPRNScheduler(inputReader, randomNumberReader, verbose,
+                              showRandom);
+    } else if (type.matches("rr[0-9]+")) {
+      int quantum = Integer.parseInt(type.substring(2));
+      return workload != null
+          ? new RRScheduler(workload, randomNumberReader, verbose,
+                            showRandom, quantum)
+          : new RRScheduler(inputReader, randomNumberReader, verbose,
+                            showRandom, quantum);
+    }
+    throw new IllegalArgumentException("Unknown scheduler type " + type);
+  }
+
   /**
    * Given an input file, schedule its processes and output the result.
    *
@@ -454,14 +1082,28 @@ public abstract class Scheduler {
     JCommander commander = new JCommander(s, args);
 
     Reader inputReader = null, randomNumberReader = null;
+    WorkloadSource workload = null;
     // JCommander requires main param to be a List, we only want 1st element
     String inputFile = s.inputFile.get(0);
+    TraceReader trace = null;
     try {
-      inputReader = new BufferedReader(new InputStreamReader(
-          new FileInputStream(inputFile)));
+      if (s.trace) {
+        trace = new TraceReader(new File(inputFile));
+        workload = trace;
+      } else if (s.stream) {
+        workload = new WorkloadReader(new BufferedInputStream(
+            new FileInputStream(inputFile)));
+      } else {
+        inputReader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(inputFile)));
+      }
     } catch (FileNotFoundException e) {
       System.err.println("Could not find file: " + inputFile);
       System.exit(1);
+    } catch (IOException e) {
+      System.err.println("Could not read trace " + inputFile + ": "
+          + e.getMessage());
+      System.exit(1);
     }
     try {
       randomNumberReader = new BufferedReader(new InputStreamReader(
@@ -471,23 +1113,113 @@ public abstract class Scheduler {
       System.exit(1);
     }
 
+    if (s.sweep != null) {
+      if (workload != null) {
+        System.err.println("--sweep cannot be used with --stream");
+        System.exit(1);
+      }
+      try {
+        SchedulerSweep sweep = new SchedulerSweep(
+            inputReader, randomNumberReader, s.verbose, s.showRandom,
+            s.sweep.split(","));
+        sweep.setShowPercentiles(s.percentiles);
+        Map<String, String> outputs =
+            sweep.run(Runtime.getRuntime().availableProcessors());
+        for (Map.Entry<String, String> entry : outputs.entrySet()) {
+          System.out.println("==== " + entry.getKey() + " ====");
+          System.out.print(entry.getValue());
+        }
+      } catch (IllegalArgumentException e) {
+        System.err.println(e.getMessage());
+        commander.usage();
+        System.exit(1);
+      }
+      return;
+    }
+
     Scheduler scheduler = null;
-    if (s.type.equals("fcfs")) {
-      scheduler = new FCFSScheduler(inputReader, randomNumberReader,
-                                    s.verbose, s.showRandom);
-    } else if (s.type.equals("uni")) {
-      scheduler = new UniScheduler(inputReader, randomNumberReader,
-                                   s.verbose, s.showRandom);
-    } else if (s.type.equals("rr2")) {
-      scheduler = new RRScheduler(inputReader, randomNumberReader,
-                                  s.verbose, s.showRandom);
-    } else if (s.type.equals("hprn")) {
-      scheduler = new HPRNScheduler(inputReader, randomNumberReader,
-                                  s.verbose, s.showRandom);
-    } else {
+    try {
+      scheduler = create(s.type, workload, inputReader, randomNumberReader,
+                         s.verbose, s.showRandom);
+    } catch (IllegalArgumentException e) {
       commander.usage();
+      System.exit(1);
+    }
+
+    scheduler.setShowPercentiles(s.percentiles);
+    scheduler.setBurstSource(trace);
+    if (s.checkpointFile != null && trace != null) {
+      System.err.println("--checkpoint-file cannot be used with --trace");
+      System.exit(1);
+    }
+    if (s.checkpointFile != null) {
+      scheduler.setCheckpoint(s.checkpointFile, s.checkpointInterval);
+      if (s.resume) {
+        try {
+          InputStream in = new FileInputStream(s.checkpointFile);
+          try {
+            scheduler.restore(in);
+          } finally {
+            in.close();
+          }
+        } catch (IOException e) {
+          System.err.println("Could not resume from " + s.checkpointFile
+              + ": " + e);
+          System.exit(1);
+        }
+      }
+    } else if (s.resume) {
+      System.err.println("--resume requires --checkpoint-file");
+      System.exit(1);
     }
 
-    System.out.print(scheduler.scheduleUntilComplete());
+    HttpServer metricsServer = null;
+    if (s.metricsPort >= 0 || s.jmx) {
+      SchedulerMetrics metrics = new SchedulerMetrics();
+      scheduler.setMetrics(metrics);
+      try {
+        if (s.jmx) {
+          metrics.registerMBean(s.type);
+        }
+        if (s.metricsPort >= 0) {
+          metricsServer = metrics.serve(s.metricsPort);
+          System.err.println("Serving metrics on http://localhost:"
+              + metricsServer.getAddress().getPort() + "/metrics");
+        }
+      } catch (JMException e) {
+        System.err.println("Could not register metrics MBean: " + e);
+        System.exit(1);
+      } catch (IOException e) {
+        System.err.println("Could not serve metrics: " + e);
+        System.exit(1);
+      }
+    }
+    try {
+      try {
+        System.out.print(scheduler.scheduleUntilComplete());
+      } finally {
+        if (metricsServer != null) {
+          metricsServer.stop(0);
+        }
+      }
+    } catch (IllegalStateException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+
+    if (s.histogramFile != null) {
+      try {
+        FileOutputStream out = new FileOutputStream(s.histogramFile);
+        try {
+          LatencyHistogram.writeAll(scheduler.getHistograms(), out);
+        } finally {
+          out.close();
+        }
+      } catch (IOException e) {
+        System.err.println("Could not write histograms to "
+            + s.histogramFile + ": " + e);
+        System.exit(1);
+      }
+    }
   }
 }
@@ -0,0 +1,196 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Live counters and gauges for a running simulation, so that long runs can be
+ * watched without stopping them.  The Scheduler updates these once per cycle;
+ * readers on other threads see them through JMX or a plain-text HTTP
+ * endpoint.  Counters are striped, so one SchedulerMetrics can be shared by
+ * several Schedulers running concurrently, in which case the gauges show the
+ * most recent update from any of them.
+ */
+public class SchedulerMetrics implements SchedulerMetricsMBean {
+  protected final LongAdder cycles = new LongAdder();
+  protected final LongAdder cpuBusyCycles = new LongAdder();
+  protected final LongAdder ioBusyCycles = new LongAdder();
+  protected final LongAdder dispatches = new LongAdder();
+
+  protected volatile int processCount;
+  protected volatile int readyCount;
+  protected volatile int runningCount;
+  protected volatile int blockedCount;
+  protected volatile int terminatedCount;
+
+  protected final long startNanos;
+
+  public SchedulerMetrics() {
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Record one simulated cycle.
+   *
+   * @param table Process table as of the end of the cycle.
+   */
+  public void recordCycle(ProcessTable table) {
+    int running = table.count(ProcessTable.RUNNING);
+    int blocked = table.count(ProcessTable.BLOCKED);
+    cycles.increment();
+    if (running > 0) {
+      cpuBusyCycles.increment();
+    }
+    if (blocked > 0) {
+      ioBusyCycles.increment();
+    }
+    processCount = table.size();
+    readyCount = table.count(ProcessTable.READY);
+    runningCount = running;
+    blockedCount = blocked;
+    terminatedCount = table.count(ProcessTable.TERMINATED);
+  }
+
+  /**
+   * Record that a process was given the CPU.
+   */
+  public void recordDispatch() {
+    dispatches.increment();
+  }
+
+  public long getCycles() {
+    return cycles.sum();
+  }
+
+  public double getCyclesPerSecond() {
+    long elapsed = System.nanoTime() - startNanos;
+    return elapsed <= 0 ? 0.0 : cycles.sum() * 1e9 / elapsed;
+  }
+
+  public long getDispatches() {
+    return dispatches.sum();
+  }
+
+  public int getProcessCount() {
+    return processCount;
+  }
+
+  public int getReadyCount() {
+    return readyCount;
+  }
+
+  public int getRunningCount() {
+    return runningCount;
+  }
+
+  public int getBlockedCount() {
+    return blockedCount;
+  }
+
+  public int getTerminatedCount() {
+    return terminatedCount;
+  }
+
+  /**
+   * @return Fraction of cycles so far in which some process was running.
+   */
+  public double getCpuUtilization() {
+    long total = cycles.sum();
+    return total == 0 ? 0.0 : (double) cpuBusyCycles.sum() / total;
+  }
+
+  /**
+   * @return Fraction of cycles so far in which some process was blocked.
+   */
+  public double getIoUtilization() {
+    long total = cycles.sum();
+    return total == 0 ? 0.0 : (double) ioBusyCycles.sum() / total;
+  }
+
+  public long getElapsedMillis() {
+    return (System.nanoTime() - startNanos) / 1000000;
+  }
+
+  /**
+   * @return Every metric, one "name value" pair per line.
+   */
+  public String toText() {
+    StringBuilder b = new StringBuilder();
+    b.append("cycles ").append(getCycles()).append('\n');
+    b.append("cycles_per_second ")
+        .append(String.format(Locale.US, "%.1f", getCyclesPerSecond()))
+        .append('\n');
+    b.append("dispatches ").append(getDispatches()).append('\n');
+    b.append("processes ").append(getProcessCount()).append('\n');
+    b.append("ready ").append(getReadyCount()).append('\n');
+    b.append("running ").append(getRunningCount()).append('\n');
+    b.append("blocked ").append(getBlockedCount()).append('\n');
+    b.append("terminated ").append(getTerminatedCount()).append('\n');
+    b.append("cpu_utilization ")
+        .append(String.format(Locale.US, "%.6f", getCpuUtilization()))
+        .append('\n');
+    b.append("io_utilization ")
+        .append(String.format(Locale.US, "%.6f", getIoUtilization()))
+        .append('\n');
+    b.append("elapsed_millis ").append(getElapsedMillis()).append('\n');
+    return b.toString();
+  }
+
+  /**
+   * Register these metrics with the platform MBean server.
+   *
+   * @param name Value of the "name" key in the ObjectName, e.g. "rr2".
+   * @return ObjectName the metrics were registered under.
+   */
+  public ObjectName registerMBean(String name) throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = new ObjectName(
+        "com.vicfryzel.os2:type=SchedulerMetrics,name="
+        + ObjectName.quote(name));
+    server.registerMBean(this, objectName);
+    return objectName;
+  }
+
+  /**
+   * Serve these metrics as plain text at /metrics on the loopback interface.
+   * The caller should stop() the returned server once the run is over.
+   *
+   * @param port Port to listen on, or 0 for any free port.
+   * @return Running HttpServer.
+   */
+  public HttpServer serve(int port) throws IOException {
+    HttpServer server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/metrics", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = toText().getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+          out.write(body);
+        } finally {
+          out.close();
+        }
+      }
+    });
+    server.start();
+    return server;
+  }
+}
@@ -0,0 +1,31 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+
+/**
+ * JMX view of a running simulation.  See SchedulerMetrics.
+ */
+public interface SchedulerMetricsMBean {
+  long getCycles();
+
+  double getCyclesPerSecond();
+
+  long getDispatches();
+
+  int getProcessCount();
+
+  int getReadyCount();
+
+  int getRunningCount();
+
+  int getBlockedCount();
+
+  int getTerminatedCount();
+
+  double getCpuUtilization();
+
+  double getIoUtilization();
+
+  long getElapsedMillis();
+}
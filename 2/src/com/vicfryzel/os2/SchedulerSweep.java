@@ -0,0 +1,155 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Runs several scheduling policies over the same input.  Until a second
+ * process arrives there is nothing to choose between, so every policy makes
+ * the same decisions; that prefix is simulated once and each policy is then
+ * forked from it, copying the process table on write, and run to completion
+ * in parallel.
+ */
+public class SchedulerSweep {
+  /**
+   * FCFS scheduler that remembers the length of each CPU run of process 0,
+   * so that policies with preemption can reconstruct their state after the
+   * prefix.
+   */
+  protected static class PrefixScheduler extends FCFSScheduler {
+    protected IntList completedRuns;
+
+    public PrefixScheduler(Reader inputReader, Reader randomNumberReader,
+                           boolean verbose, boolean showRandom) {
+      super(inputReader, randomNumberReader, verbose, showRandom);
+      completedRuns = new IntList();
+    }
+
+    public void handleRunning() {
+      boolean wasRunning = table.size() > 0 && table.isRunning(0);
+      super.handleRunning();
+      if (wasRunning && !table.isRunning(0)) {
+        completedRuns.add(cycle - table.getReadyTime(0));
+      }
+    }
+  }
+
+  protected PrefixScheduler prefix;
+  protected List<String> types;
+  protected boolean showPercentiles;
+
+  /**
+   * Create a new SchedulerSweep.
+   *
+   * @param inputReader Input to schedule.
+   * @param randomNumberReader Random numbers to schedule with.
+   * @param verbose Whether to produce verbose output.
+   * @param showRandom Whether to show random numbers in verbose output.
+   * @param types Scheduler types to run, e.g. "fcfs", "uni", "hprn", "rr2".
+   */
+  public SchedulerSweep(Reader inputReader, Reader randomNumberReader,
+                        boolean verbose, boolean showRandom, String[] types) {
+    this.types = new ArrayList<String>();
+    for (String type : types) {
+      type = type.trim();
+      if (!isValidType(type)) {
+        throw new IllegalArgumentException("Unknown scheduler type " + type);
+      }
+      this.types.add(type);
+    }
+    prefix = new PrefixScheduler(inputReader, randomNumberReader, verbose,
+                                 showRandom);
+  }
+
+  /**
+   * @param type Scheduler type.
+   * @return Whether the given type can be used in a sweep.
+   */
+  public static boolean isValidType(String type) {
+    return type.equals("fcfs") || type.equals("uni") || type.equals("hprn")
+        || (type.matches("rr[0-9]+") && Integer.parseInt(type.substring(2)) > 0);
+  }
+
+  public void setShowPercentiles(boolean showPercentiles) {
+    this.showPercentiles = showPercentiles;
+  }
+
+  /**
+   * Fork a Scheduler of the given type from the prefix.
+   *
+   * @param type Scheduler type.
+   * @return Scheduler ready to continue from the prefix.
+   */
+  protected Scheduler fork(String type) {
+    Scheduler retval;
+    if (type.equals("fcfs")) {
+      retval = new FCFSScheduler(prefix);
+    } else if (type.equals("uni")) {
+      retval = new UniScheduler(prefix);
+    } else if (type.equals("hprn")) {
+      retval = new HPRNScheduler(prefix);
+    } else {
+      retval = new RRScheduler(prefix, Integer.parseInt(type.substring(2)));
+    }
+    retval.setShowPercentiles(showPercentiles);
+    retval.continueSoloPrefix(prefix.completedRuns);
+    return retval;
+  }
+
+  /**
+   * Simulate the shared prefix, then run every policy to completion.
+   *
+   * @param threads Maximum number of policies to run at once.
+   * @return Output of each policy, keyed on type, in the order given.
+   */
+  public Map<String, String> run(int threads) {
+    prefix.scheduleSoloPrefix();
+
+    // Fork serially; only the forks run concurrently, and each owns its state
+    final Map<String, Scheduler> schedulers =
+        new LinkedHashMap<String, Scheduler>();
+    for (String type : types) {
+      if (!schedulers.containsKey(type)) {
+        schedulers.put(type, fork(type));
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threads, schedulers.size())));
+    try {
+      Map<String, Future<String>> futures =
+          new LinkedHashMap<String, Future<String>>();
+      for (final Map.Entry<String, Scheduler> entry : schedulers.entrySet()) {
+        futures.put(entry.getKey(), executor.submit(new Callable<String>() {
+          public String call() {
+            return entry.getValue().scheduleUntilComplete();
+          }
+        }));
+      }
+      Map<String, String> retval = new LinkedHashMap<String, String>();
+      for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+        retval.put(entry.getKey(), entry.getValue().get());
+      }
+      return retval;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while running sweep", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Scheduler failed during sweep",
+                                      e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
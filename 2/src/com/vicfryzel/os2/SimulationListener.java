@@ -0,0 +1,26 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+
+/**
+ * Receives callbacks as a Scheduler runs.  Callbacks are made on the thread
+ * running the Scheduler, so they should return quickly.
+ */
+public interface SimulationListener {
+  /**
+   * Called at the end of every cycle.
+   *
+   * @param cycle Cycle that just completed.
+   * @param table Process table as of the end of the cycle.  It must not be
+   *        modified, and is only valid until this method returns.
+   */
+  void cycleCompleted(int cycle, ProcessTable table);
+
+  /**
+   * Called once, after every process has terminated.
+   *
+   * @param result Result of the run.
+   */
+  void simulationCompleted(SimulationResult result);
+}
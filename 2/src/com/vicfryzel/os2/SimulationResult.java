@@ -0,0 +1,161 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Outcome of one Scheduler run, as typed values rather than formatted text.
+ */
+public class SimulationResult {
+  /**
+   * Outcome for a single process.
+   */
+  public static class ProcessResult {
+    protected int id;
+    protected int arrival;
+    protected int burst;
+    protected int cpu;
+    protected int io;
+    protected int finishingTime;
+    protected int turnaroundTime;
+    protected int ioTime;
+    protected int waitingTime;
+
+    public ProcessResult(int id, int arrival, int burst, int cpu, int io,
+                         int finishingTime, int turnaroundTime, int ioTime,
+                         int waitingTime) {
+      this.id = id;
+      this.arrival = arrival;
+      this.burst = burst;
+      this.cpu = cpu;
+      this.io = io;
+      this.finishingTime = finishingTime;
+      this.turnaroundTime = turnaroundTime;
+      this.ioTime = ioTime;
+      this.waitingTime = waitingTime;
+    }
+
+    /**
+     * @return Index of this process in arrival order.
+     */
+    public int getId() {
+      return id;
+    }
+
+    public int getArrival() {
+      return arrival;
+    }
+
+    public int getBurst() {
+      return burst;
+    }
+
+    public int getCpu() {
+      return cpu;
+    }
+
+    public int getIo() {
+      return io;
+    }
+
+    public int getFinishingTime() {
+      return finishingTime;
+    }
+
+    public int getTurnaroundTime() {
+      return turnaroundTime;
+    }
+
+    public int getIoTime() {
+      return ioTime;
+    }
+
+    public int getWaitingTime() {
+      return waitingTime;
+    }
+  }
+
+  protected int finishingTime;
+  protected double cpuUtilization;
+  protected double ioUtilization;
+  protected double throughput;
+  protected double averageTurnaroundTime;
+  protected double averageWaitingTime;
+  protected List<ProcessResult> processes;
+  protected Map<String, LatencyHistogram> histograms;
+
+  /**
+   * Create a new SimulationResult.
+   *
+   * @param finishingTime Cycle at which the last process terminated.
+   * @param cpuUtilization Fraction of cycles some process was running.
+   * @param ioUtilization Fraction of cycles some process was blocked.
+   * @param throughput Processes finished per hundred cycles.
+   * @param averageTurnaroundTime Mean turnaround time over all processes.
+   * @param averageWaitingTime Mean waiting time over all processes.
+   * @param processes Result for each process, in arrival order.
+   * @param histograms Latency histograms keyed on name.
+   */
+  public SimulationResult(int finishingTime, double cpuUtilization,
+                          double ioUtilization, double throughput,
+                          double averageTurnaroundTime,
+                          double averageWaitingTime,
+                          List<ProcessResult> processes,
+                          Map<String, LatencyHistogram> histograms) {
+    this.finishingTime = finishingTime;
+    this.cpuUtilization = cpuUtilization;
+    this.ioUtilization = ioUtilization;
+    this.throughput = throughput;
+    this.averageTurnaroundTime = averageTurnaroundTime;
+    this.averageWaitingTime = averageWaitingTime;
+    this.processes = Collections.unmodifiableList(processes);
+    this.histograms = Collections.unmodifiableMap(
+        new LinkedHashMap<String, LatencyHistogram>(histograms));
+  }
+
+  public int getFinishingTime() {
+    return finishingTime;
+  }
+
+  public double getCpuUtilization() {
+    return cpuUtilization;
+  }
+
+  public double getIoUtilization() {
+    return ioUtilization;
+  }
+
+  /**
+   * @return Processes finished per hundred cycles.
+   */
+  public double getThroughput() {
+    return throughput;
+  }
+
+  public double getAverageTurnaroundTime() {
+    return averageTurnaroundTime;
+  }
+
+  public double getAverageWaitingTime() {
+    return averageWaitingTime;
+  }
+
+  /**
+   * @return Result for each process, in arrival order.
+   */
+  public List<ProcessResult> getProcesses() {
+    return processes;
+  }
+
+  /**
+   * @return Turnaround, waiting and response time histograms, keyed on name.
+   */
+  public Map<String, LatencyHistogram> getHistograms() {
+    return histograms;
+  }
+}
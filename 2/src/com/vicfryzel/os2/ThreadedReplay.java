@@ -0,0 +1,336 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+
+/**
+ * Replays the decisions of a Scheduler on real threads.  The simulation is
+ * run first and its CPU and I/O bursts recorded.  Each process then becomes
+ * a chain of tasks that spin for its CPU bursts and park for its I/O bursts,
+ * with a DispatchExecutor making sure CPU bursts run one at a time in the
+ * order the Scheduler chose.  Wall-clock turnaround times can then be
+ * compared with the simulated ones.
+ */
+public class ThreadedReplay {
+  public static class ReplayParameters {
+    @Parameter(description = "Path to input file of processes to schedule.",
+               required = true)
+    public List<String> inputFile;
+
+    @Parameter(names = { "-t", "--type" },
+               description = "Type of scheduler to use. {fcfs,hprn,rr<quantum>,uni}. Default: fcfs.")
+    public String type = "fcfs";
+
+    @Parameter(names = { "--threads" },
+               description = "Number of threads to replay on. Default: 2.")
+    public int threads = 2;
+
+    @Parameter(names = { "--cycle-micros" },
+               description = "Length of one cycle, in microseconds. Default: 100.")
+    public int cycleMicros = 100;
+
+    @Parameter(names = { "--random-file" },
+               description = "Path to input file of random numbers (UDRIs).")
+    public String randomFile = "data/random-numbers";
+  }
+
+  /**
+   * Records the bursts of every process, and the order of CPU bursts, as a
+   * Scheduler runs.  Bursts are stored as positive CPU and negative I/O
+   * lengths, in cycles.
+   */
+  protected static class Recorder implements SimulationListener {
+    protected static final int OTHER = 0;
+    protected static final int CPU = 1;
+    protected static final int IO = 2;
+
+    protected IntList[] bursts;
+    protected int[] current;
+    protected int[] length;
+    protected IntList order = new IntList();
+
+    public void cycleCompleted(int cycle, ProcessTable table) {
+      if (bursts == null) {
+        bursts = new IntList[table.size()];
+        for (int i = 0; i < bursts.length; i++) {
+          bursts[i] = new IntList();
+        }
+        current = new int[table.size()];
+        length = new int[table.size()];
+      }
+      // The state at the end of this cycle is the state during the next
+      for (int i = 0; i < bursts.length; i++) {
+        byte state = table.getState(i);
+        int type = state == ProcessTable.RUNNING ? CPU
+            : state == ProcessTable.BLOCKED ? IO : OTHER;
+        if (type != current[i]) {
+          endBurst(i);
+          if (type == CPU) {
+            order.add(i);
+          }
+          current[i] = type;
+        }
+        if (type != OTHER) {
+          length[i]++;
+        }
+      }
+    }
+
+    public void simulationCompleted(SimulationResult result) {
+      if (bursts != null) {
+        for (int i = 0; i < bursts.length; i++) {
+          endBurst(i);
+          current[i] = OTHER;
+        }
+      }
+    }
+
+    protected void endBurst(int i) {
+      if (current[i] == CPU) {
+        bursts[i].add(length[i]);
+      } else if (current[i] == IO) {
+        bursts[i].add(-length[i]);
+      }
+      length[i] = 0;
+    }
+  }
+
+  /**
+   * Runs the bursts of one process in order, submitting each as the previous
+   * one finishes.
+   */
+  protected class ProcessReplay implements Runnable {
+    protected int process;
+    protected IntList bursts;
+    protected int next;
+
+    public ProcessReplay(int process, IntList bursts) {
+      this.process = process;
+      this.bursts = bursts;
+      next = 0;
+    }
+
+    public void run() {
+      if (next == bursts.size()) {
+        finishedAt[process] = System.nanoTime();
+        done.countDown();
+        return;
+      }
+      final int burst = bursts.get(next++);
+      if (burst > 0) {
+        executor.execute(new DispatchExecutor.CpuBurst(process) {
+          public void run() {
+            spin(burst * cycleNanos);
+            ProcessReplay.this.run();
+          }
+        });
+      } else {
+        executor.execute(new Runnable() {
+          public void run() {
+            park(-burst * cycleNanos);
+            ProcessReplay.this.run();
+          }
+        });
+      }
+    }
+  }
+
+  protected SimulationResult simulated;
+  protected Recorder recorder;
+  protected long cycleNanos;
+  protected int threads;
+
+  protected DispatchExecutor executor;
+  protected CountDownLatch done;
+  protected long startedAt;
+  protected long[] finishedAt;
+  protected long elapsedNanos;
+
+  /**
+   * Run the given Scheduler to completion, recording its decisions for replay.
+   *
+   * @param scheduler Scheduler that has not yet run.
+   * @param threads Number of threads to replay on.
+   * @param cycleNanos Length of one cycle, in nanoseconds.
+   */
+  public ThreadedReplay(Scheduler scheduler, int threads, long cycleNanos) {
+    if (threads < 1 || cycleNanos < 1) {
+      throw new IllegalArgumentException("Invalid replay parameters");
+    }
+    this.threads = threads;
+    this.cycleNanos = cycleNanos;
+    recorder = new Recorder();
+    scheduler.addListener(recorder);
+    simulated = scheduler.run();
+    scheduler.removeListener(recorder);
+  }
+
+  protected static void spin(long nanos) {
+    long end = System.nanoTime() + nanos;
+    while (System.nanoTime() < end) {
+      Thread.onSpinWait();
+    }
+  }
+
+  protected static void park(long nanos) {
+    long end = System.nanoTime() + nanos;
+    long remaining;
+    while ((remaining = end - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  /**
+   * Replay every process, starting each at its arrival time, and wait for
+   * them all to finish.
+   */
+  public void replay() throws InterruptedException {
+    List<SimulationResult.ProcessResult> processes = simulated.getProcesses();
+    int n = processes.size();
+    executor = new DispatchExecutor(threads, recorder.order.toArray());
+    done = new CountDownLatch(n);
+    finishedAt = new long[n];
+    ScheduledExecutorService arrivals =
+        Executors.newSingleThreadScheduledExecutor();
+    try {
+      startedAt = System.nanoTime();
+      for (SimulationResult.ProcessResult p : processes) {
+        final ProcessReplay replay =
+            new ProcessReplay(p.getId(), recorder.bursts[p.getId()]);
+        arrivals.schedule(new Runnable() {
+          public void run() {
+            executor.execute(replay);
+          }
+        }, p.getArrival() * cycleNanos, TimeUnit.NANOSECONDS);
+      }
+      done.await();
+      elapsedNanos = System.nanoTime() - startedAt;
+    } finally {
+      arrivals.shutdownNow();
+      executor.shutdown();
+    }
+  }
+
+  public SimulationResult getSimulatedResult() {
+    return simulated;
+  }
+
+  public DispatchExecutor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * @param i Index of process.
+   * @return Bursts of the given process as simulated, positive for CPU and
+   *         negative for I/O, in cycles.
+   */
+  public IntList getBursts(int i) {
+    return recorder.bursts[i];
+  }
+
+  /**
+   * @return Process of each CPU burst, in the order the Scheduler dispatched
+   *         them.
+   */
+  public IntList getDispatchOrder() {
+    return recorder.order;
+  }
+
+  /**
+   * @param i Index of process.
+   * @return Wall-clock time from the arrival of the given process until it
+   *         finished, in nanoseconds.
+   */
+  public long getTurnaroundNanos(int i) {
+    SimulationResult.ProcessResult p = simulated.getProcesses().get(i);
+    return finishedAt[p.getId()] - startedAt - p.getArrival() * cycleNanos;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return Comparison of simulated and wall-clock times.
+   */
+  public String getReport() {
+    StringBuilder b = new StringBuilder();
+    double cycleMillis = cycleNanos / 1e6;
+    List<SimulationResult.ProcessResult> processes = simulated.getProcesses();
+    for (int k = 0; k < processes.size(); k++) {
+      SimulationResult.ProcessResult p = processes.get(k);
+      b.append(String.format(Locale.US,
+          "Process %d: simulated turnaround %d cycles (%.3f ms), "
+          + "actual %.3f ms\n",
+          p.getId(), p.getTurnaroundTime(),
+          p.getTurnaroundTime() * cycleMillis, getTurnaroundNanos(k) / 1e6));
+    }
+    int switches = executor.getSwitches();
+    b.append("Summary Data:\n");
+    b.append(String.format(Locale.US,
+        "\tFinishing time: simulated %.3f ms, actual %.3f ms\n",
+        simulated.getFinishingTime() * cycleMillis, elapsedNanos / 1e6));
+    b.append("\tCPU bursts dispatched: " + getDispatchOrder().size() + "\n");
+    b.append(String.format(Locale.US,
+        "\tContext switches: %d, mean overhead %.3f us\n", switches,
+        switches == 0 ? 0.0 : executor.getSwitchNanos() / 1e3 / switches));
+    return b.toString();
+  }
+
+  /**
+   * Given an input file, simulate and then replay its processes on threads.
+   *
+   * @param args Command-line arguments.
+   */
+  public static void main(String[] args) {
+    ReplayParameters p = new ReplayParameters();
+    JCommander commander = new JCommander(p, args);
+
+    Reader inputReader = null, randomNumberReader = null;
+    String inputFile = p.inputFile.get(0);
+    try {
+      inputReader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(inputFile)));
+      randomNumberReader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(p.randomFile)));
+    } catch (FileNotFoundException e) {
+      System.err.println("Could not find file: " + e.getMessage());
+      System.exit(1);
+    }
+
+    ThreadedReplay replay = null;
+    try {
+      replay = new ThreadedReplay(
+          Scheduler.create(p.type, inputReader, randomNumberReader, false,
+                           false),
+          p.threads, p.cycleMicros * 1000L);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      commander.usage();
+      System.exit(1);
+    }
+    try {
+      replay.replay();
+    } catch (InterruptedException e) {
+      System.err.println("Interrupted during replay");
+      System.exit(1);
+    }
+    System.out.print(replay.getReport());
+  }
+}
@@ -0,0 +1,234 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * Streams processes and their recorded bursts from a binary trace file, as
+ * written by TraceWriter.  The file is memory-mapped a chunk at a time, so
+ * traces of any size can be replayed.  Once every burst of a process has
+ * been read, its position is dropped, as are the mappings of chunks before
+ * the oldest process with bursts left.  The reader therefore keeps state only
+ * for the processes from that one to the newest admitted.  The Scheduler's
+ * ProcessTable still keeps a row for every process admitted, for its final
+ * report, so replaying a trace uses heap in proportion to its number of
+ * processes, though not to its number of bursts.
+ *
+ * The format is big-endian ints throughout: a header of MAGIC, VERSION and
+ * the number of processes, then one record per process in arrival order.
+ * Each record is the arrival time, the number of bursts, and the bursts
+ * themselves, alternating CPU and I/O and both starting and ending with CPU.
+ */
+public class TraceReader implements WorkloadSource, BurstSource, Closeable {
+  public static final int MAGIC = 0x4f533254;
+  public static final int VERSION = 1;
+  protected static final int HEADER_SIZE = 12;
+
+  // Chunks are a multiple of 4 bytes, so no int ever spans two chunks
+  protected static final int CHUNK_SHIFT = 26;
+  protected static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  protected RandomAccessFile file;
+  protected FileChannel channel;
+  protected long fileSize;
+  protected MappedByteBuffer[] chunks;
+
+  protected int count;
+  protected int read;
+  protected long position;
+
+  // Position of the bursts of each process from origin up to end, at index
+  // i - origin; processes before first have had every burst read
+  protected long[] burstOffsets;
+  protected int[] burstCounts;
+  protected int[] burstCursors;
+  protected int origin;
+  protected int first;
+  protected int end;
+  // Chunks before this one have been unmapped
+  protected int firstChunk;
+
+  /**
+   * Open a trace file.
+   *
+   * @param path Path to trace file.
+   */
+  public TraceReader(File path) throws IOException {
+    file = new RandomAccessFile(path, "r");
+    channel = file.getChannel();
+    fileSize = channel.size();
+    chunks = new MappedByteBuffer[(int) ((fileSize >>> CHUNK_SHIFT) + 1)];
+    if (fileSize < HEADER_SIZE || getInt(0) != MAGIC) {
+      close();
+      throw new IOException("Not a process trace: " + path);
+    }
+    if (getInt(4) != VERSION) {
+      close();
+      throw new IOException("Unsupported trace version " + getInt(4));
+    }
+    count = getInt(8);
+    read = 0;
+    position = HEADER_SIZE;
+    burstOffsets = new long[1024];
+    burstCounts = new int[1024];
+    burstCursors = new int[1024];
+  }
+
+  protected int getInt(long offset) throws IOException {
+    if (offset < 0 || offset + 4 > fileSize) {
+      throw new IOException("Trace is truncated at byte " + offset);
+    }
+    int chunk = (int) (offset >>> CHUNK_SHIFT);
+    MappedByteBuffer buffer = chunks[chunk];
+    if (buffer == null) {
+      long start = (long) chunk << CHUNK_SHIFT;
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                           Math.min(CHUNK_MASK + 1, fileSize - start));
+      chunks[chunk] = buffer;
+    }
+    return buffer.getInt((int) (offset & CHUNK_MASK));
+  }
+
+  /**
+   * Read an int, turning I/O errors into unchecked exceptions since the
+   * WorkloadSource and BurstSource interfaces cannot throw them.
+   */
+  protected int readInt(long offset) {
+    try {
+      return getInt(offset);
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @return Number of processes in the trace.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  public boolean hasNext() {
+    return read < count;
+  }
+
+  public int peekArrival() {
+    return readInt(position);
+  }
+
+  public int next(ProcessTable table) {
+    if (!hasNext()) {
+      throw new IllegalStateException("No more processes in trace");
+    }
+    int arrival = readInt(position);
+    int n = readInt(position + 4);
+    if (n < 1 || n % 2 == 0) {
+      throw new IllegalStateException("Process " + read + " has " + n
+          + " bursts; expected an odd number");
+    }
+    long offset = position + 8;
+    int maxCpu = 0, maxIo = 0, totalCpu = 0;
+    for (int k = 0; k < n; k++) {
+      int burst = readInt(offset + 4L * k);
+      if (burst < 1) {
+        throw new IllegalStateException("Process " + read
+            + " has a burst of " + burst);
+      }
+      if (k % 2 == 0) {
+        maxCpu = Math.max(maxCpu, burst);
+        totalCpu += burst;
+      } else {
+        maxIo = Math.max(maxIo, burst);
+      }
+    }
+    int i = table.add(arrival, maxCpu, totalCpu, Math.max(maxIo, 1));
+    if (i != end) {
+      // Not the next row of the same table, e.g. a process skipped on
+      // restore, so no earlier process can be asked for its bursts
+      origin = first = end = i;
+    }
+    ensureCapacity(i + 1 - origin);
+    burstOffsets[i - origin] = offset;
+    burstCounts[i - origin] = n;
+    burstCursors[i - origin] = 0;
+    end = i + 1;
+    position = offset + 4L * n;
+    read++;
+    return i;
+  }
+
+  protected void ensureCapacity(int capacity) {
+    if (capacity > burstOffsets.length && first - origin >= capacity / 2) {
+      // At least half of the room is taken by processes already done, so
+      // move the rest down instead of growing
+      int live = end - first;
+      System.arraycopy(burstOffsets, first - origin, burstOffsets, 0, live);
+      System.arraycopy(burstCounts, first - origin, burstCounts, 0, live);
+      System.arraycopy(burstCursors, first - origin, burstCursors, 0, live);
+      capacity -= first - origin;
+      origin = first;
+    }
+    if (capacity > burstOffsets.length) {
+      int newCapacity = Math.max(capacity, burstOffsets.length * 2);
+      burstOffsets = Arrays.copyOf(burstOffsets, newCapacity);
+      burstCounts = Arrays.copyOf(burstCounts, newCapacity);
+      burstCursors = Arrays.copyOf(burstCursors, newCapacity);
+    }
+  }
+
+  protected int nextBurst(int i, int parity, String kind) {
+    int k = i >= first && i < end ? burstCursors[i - origin] : -1;
+    if (k < 0 || k >= burstCounts[i - origin] || k % 2 != parity) {
+      throw new IllegalStateException("Process " + i + " has no " + kind
+          + " burst " + (k < 0 ? "left" : String.valueOf(k))
+          + " in the trace");
+    }
+    burstCursors[i - origin] = k + 1;
+    int burst = readInt(burstOffsets[i - origin] + 4L * k);
+    if (i == first && k + 1 == burstCounts[i - origin]) {
+      release();
+    }
+    return burst;
+  }
+
+  /**
+   * Move first past every process that has had all of its bursts read, and
+   * unmap the chunks that no process still needs.
+   */
+  protected void release() {
+    while (first < end
+           && burstCursors[first - origin] == burstCounts[first - origin]) {
+      first++;
+    }
+    long lowest = first < end
+        ? burstOffsets[first - origin] + 4L * burstCursors[first - origin]
+        : position;
+    int chunk = (int) (lowest >>> CHUNK_SHIFT);
+    for (; firstChunk < chunk; firstChunk++) {
+      // Released when garbage collected; mapped again if read again
+      chunks[firstChunk] = null;
+    }
+  }
+
+  public int nextCpuBurst(int i) {
+    return nextBurst(i, 0, "CPU");
+  }
+
+  public int nextIoBurst(int i) {
+    return nextBurst(i, 1, "I/O");
+  }
+
+  public void close() throws IOException {
+    // Mapped chunks are released when they are garbage collected
+    chunks = null;
+    file.close();
+  }
+}
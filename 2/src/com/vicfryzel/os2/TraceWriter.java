@@ -0,0 +1,127 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+
+
+/**
+ * Writes binary process traces for TraceReader.  Processes must be added in
+ * arrival order; the process count in the header is filled in on close().
+ */
+public class TraceWriter implements Closeable {
+  protected File path;
+  protected DataOutputStream out;
+  protected int count;
+  protected int lastArrival;
+
+  /**
+   * Create a new trace file, replacing any existing one.
+   *
+   * @param path Path to write to.
+   */
+  public TraceWriter(File path) throws IOException {
+    this.path = path;
+    out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(path), 1 << 16));
+    out.writeInt(TraceReader.MAGIC);
+    out.writeInt(TraceReader.VERSION);
+    out.writeInt(0);
+    count = 0;
+    lastArrival = 0;
+  }
+
+  /**
+   * Append a process.
+   *
+   * @param arrival Arrival time.  Must not be before the previous process.
+   * @param bursts Burst lengths, alternating CPU and I/O, starting and ending
+   *        with CPU.
+   * @param n Number of bursts to take from the start of bursts.
+   */
+  public void add(int arrival, int[] bursts, int n) throws IOException {
+    if (arrival < lastArrival) {
+      throw new IllegalArgumentException("Process arriving at " + arrival
+          + " is out of order; previous arrived at " + lastArrival);
+    }
+    if (n < 1 || n % 2 == 0) {
+      throw new IllegalArgumentException(
+          "Expected an odd number of bursts, got " + n);
+    }
+    out.writeInt(arrival);
+    out.writeInt(n);
+    for (int k = 0; k < n; k++) {
+      if (bursts[k] < 1) {
+        throw new IllegalArgumentException("Invalid burst " + bursts[k]);
+      }
+      out.writeInt(bursts[k]);
+    }
+    lastArrival = arrival;
+    count++;
+  }
+
+  public void close() throws IOException {
+    out.close();
+    RandomAccessFile file = new RandomAccessFile(path, "rw");
+    try {
+      file.seek(8);
+      file.writeInt(count);
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Convert a text trace to a binary one.  Each line of the text trace is
+   * one process: its arrival time followed by its bursts, alternating CPU and
+   * I/O.  Blank lines and lines starting with # are ignored.
+   *
+   * @param args Paths of the text trace and the binary trace to write.
+   */
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      System.err.println("Usage: java TraceWriter text-trace binary-trace");
+      System.exit(1);
+    }
+    int lineNumber = 0;
+    try {
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+          new FileInputStream(args[0])));
+      TraceWriter writer = new TraceWriter(new File(args[1]));
+      try {
+        String line;
+        while ((line = in.readLine()) != null) {
+          lineNumber++;
+          line = line.trim();
+          if (line.length() == 0 || line.startsWith("#")) {
+            continue;
+          }
+          String[] fields = line.split("\\s+");
+          int[] bursts = new int[fields.length - 1];
+          for (int k = 0; k < bursts.length; k++) {
+            bursts[k] = Integer.parseInt(fields[k + 1]);
+          }
+          writer.add(Integer.parseInt(fields[0]), bursts, bursts.length);
+        }
+      } finally {
+        in.close();
+        writer.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Could not convert trace: " + e);
+      System.exit(1);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Line " + lineNumber + ": " + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
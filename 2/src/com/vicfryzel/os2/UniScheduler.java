@@ -3,9 +3,6 @@
 package com.vicfryzel.os2;
 
 import java.io.Reader;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 
 public class UniScheduler extends FCFSScheduler {
@@ -14,32 +11,47 @@ public class UniScheduler extends FCFSScheduler {
     super(inputReader, randomNumberReader, verbose, showRandom);
   }
 
+  public UniScheduler(WorkloadSource workload, Reader randomNumberReader,
+                      boolean verbose, boolean showRandom) {
+    super(workload, randomNumberReader, verbose, showRandom);
+  }
+
+  public UniScheduler(Scheduler prefix) {
+    super(prefix);
+  }
+
   public void handleBlocked() {
-    for (Process p : getBlocked()) {
-      if (p.getIoBurstRemaining() > 0) {
-        p.addTotalIoTime(1);
-        p.setIoBurstRemaining(p.getIoBurstRemaining() - 1);
-      }
-      if (p.getIoBurstRemaining() == 0) {
-        // Make this process ready before all other processes
-        // because we're uni-programmed.
-        // -1 is NOT a valid cycle
-        p.ready(-1);
+    ProcessTable t = table;
+    for (int i = 0; i < t.size(); i++) {
+      if (t.isBlocked(i)) {
+        if (t.getIoBurstRemaining(i) > 0) {
+          t.addTotalIoTime(i, 1);
+          t.setIoBurstRemaining(i, t.getIoBurstRemaining(i) - 1);
+        }
+        if (t.getIoBurstRemaining(i) == 0) {
+          // Make this process ready before all other processes
+          // because we're uni-programmed.
+          // -1 is NOT a valid cycle
+          t.ready(i, -1);
+        }
       }
-      processes.set(p.getId(), p);
     }
   }
 
   public void handleReady() {
-    for (Process p : getReady()) {
-      if (getRunning().size() == 0 && getBlocked().size() == 0) {
-        p.run();
-        p.setCpuBurstRemaining(getBurst(p.getBurst(), p.getCpu()));
+    ProcessTable t = table;
+    IntList ready = getReady();
+    for (int k = 0; k < ready.size(); k++) {
+      int i = ready.get(k);
+      if (t.count(ProcessTable.RUNNING) == 0
+          && t.count(ProcessTable.BLOCKED) == 0) {
+        t.run(i);
+        recordDispatch(i);
+        t.setCpuBurstRemaining(i, nextCpuBurst(i));
         appendShowRandomCpuString();
       } else {
-        p.processWait();
+        t.processWait(i);
       }
-      processes.set(p.getId(), p);
     }
   }
 }
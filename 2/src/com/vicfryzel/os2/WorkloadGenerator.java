@@ -0,0 +1,174 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+
+/**
+ * Generates synthetic workloads of any size, in arrival order.  Arrivals are
+ * spaced according to a configurable distribution, and each process's
+ * B, C and IO parameters are drawn uniformly from configurable ranges.
+ */
+public class WorkloadGenerator implements WorkloadSource {
+  /**
+   * Distributions of the time between consecutive arrivals.
+   */
+  public enum Distribution {
+    /** Every gap is exactly the mean. */
+    FIXED,
+    /** Gaps are uniform between 0 and twice the mean. */
+    UNIFORM,
+    /** Gaps are exponential with the given mean, i.e. Poisson arrivals. */
+    EXPONENTIAL,
+    /** All processes arrive at cycle 0. */
+    BATCH
+  }
+
+  protected int count;
+  protected Distribution distribution;
+  protected double meanInterarrival;
+  protected int maxBurst;
+  protected int maxCpu;
+  protected int maxIo;
+  protected Random random;
+
+  protected int generated;
+  protected int nextArrival;
+
+  /**
+   * Create a new WorkloadGenerator with default process parameters.
+   *
+   * @param count Number of processes to generate.
+   * @param distribution Distribution of time between arrivals.
+   * @param meanInterarrival Mean time between arrivals, in cycles.
+   * @param seed Seed for the generator, so workloads are repeatable.
+   */
+  public WorkloadGenerator(int count, Distribution distribution,
+                           double meanInterarrival, long seed) {
+    this(count, distribution, meanInterarrival, 5, 100, 5, seed);
+  }
+
+  /**
+   * Create a new WorkloadGenerator.
+   *
+   * @param count Number of processes to generate.
+   * @param distribution Distribution of time between arrivals.
+   * @param meanInterarrival Mean time between arrivals, in cycles.
+   * @param maxBurst Largest B value to generate.
+   * @param maxCpu Largest C value to generate.
+   * @param maxIo Largest IO value to generate.
+   * @param seed Seed for the generator, so workloads are repeatable.
+   */
+  public WorkloadGenerator(int count, Distribution distribution,
+                           double meanInterarrival, int maxBurst, int maxCpu,
+                           int maxIo, long seed) {
+    if (count < 0 || maxBurst < 1 || maxCpu < 1 || maxIo < 1
+        || meanInterarrival < 0) {
+      throw new IllegalArgumentException("Invalid workload parameters");
+    }
+    this.count = count;
+    this.distribution = distribution;
+    this.meanInterarrival = meanInterarrival;
+    this.maxBurst = maxBurst;
+    this.maxCpu = maxCpu;
+    this.maxIo = maxIo;
+    this.random = new Random(seed);
+    generated = 0;
+    nextArrival = nextGap();
+  }
+
+  protected int nextGap() {
+    double gap;
+    switch (distribution) {
+      case FIXED:
+        gap = meanInterarrival;
+        break;
+      case UNIFORM:
+        gap = random.nextDouble() * 2 * meanInterarrival;
+        break;
+      case EXPONENTIAL:
+        gap = -Math.log(1.0 - random.nextDouble()) * meanInterarrival;
+        break;
+      default:
+        gap = 0;
+        break;
+    }
+    return (int) Math.round(gap);
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public boolean hasNext() {
+    return generated < count;
+  }
+
+  public int peekArrival() {
+    return nextArrival;
+  }
+
+  public int next(ProcessTable table) {
+    if (!hasNext()) {
+      throw new IllegalStateException("No more processes in workload");
+    }
+    int i = table.add(nextArrival, 1 + random.nextInt(maxBurst),
+                      1 + random.nextInt(maxCpu), 1 + random.nextInt(maxIo));
+    generated++;
+    nextArrival += nextGap();
+    return i;
+  }
+
+  /**
+   * Write the rest of this workload in the standard input format.
+   *
+   * @param out Writer to write to.
+   */
+  public void write(Writer out) throws IOException {
+    ProcessTable scratch = new ProcessTable(1);
+    StringBuilder b = new StringBuilder();
+    out.write(String.valueOf(count - generated));
+    while (hasNext()) {
+      scratch.clear();
+      int i = next(scratch);
+      b.setLength(0);
+      b.append(" (").append(scratch.getArrival(i)).append(' ')
+          .append(scratch.getBurst(i)).append(' ')
+          .append(scratch.getCpu(i)).append(' ')
+          .append(scratch.getIo(i)).append(')');
+      out.write(b.toString());
+    }
+    out.write('\n');
+    out.flush();
+  }
+
+  /**
+   * Generate a workload and write it to stdout.
+   *
+   * @param args Command-line arguments.
+   */
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 4) {
+      System.err.println("Usage: java WorkloadGenerator count "
+          + "[fixed|uniform|exponential|batch] [mean-interarrival] [seed]");
+      System.exit(1);
+    }
+    int count = Integer.parseInt(args[0]);
+    Distribution distribution = args.length > 1
+        ? Distribution.valueOf(args[1].toUpperCase()) : Distribution.EXPONENTIAL;
+    double mean = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+    long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+    try {
+      new WorkloadGenerator(count, distribution, mean, seed).write(
+          new BufferedWriter(new OutputStreamWriter(System.out)));
+    } catch (IOException e) {
+      System.err.println("Could not write workload: " + e);
+      System.exit(1);
+    }
+  }
+}
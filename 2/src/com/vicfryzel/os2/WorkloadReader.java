@@ -0,0 +1,265 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Streaming parser for process input files, e.g.
+ * "2 (0 1 5 1) (0 1 5 1) comment".  The first number is the number of
+ * processes, followed by one (A B C IO) quadruple per process.  Words are
+ * skipped, and any other non-digit characters are treated as separators.
+ *
+ * Input is parsed a buffer at a time straight from bytes (or chars), and
+ * processes are handed out one at a time as a WorkloadSource.
+ */
+public class WorkloadReader implements WorkloadSource {
+  protected static final int BUFFER_SIZE = 1 << 16;
+
+  protected InputStream in;
+  protected Reader reader;
+  protected byte[] bytes;
+  protected char[] chars;
+  protected int position;
+  protected int limit;
+  protected boolean eof;
+  protected boolean negative;
+
+  protected int declaredCount;
+  protected boolean hasNext;
+  protected int arrival;
+  protected int burst;
+  protected int cpu;
+  protected int io;
+  protected int lastArrival;
+  protected boolean sorted;
+
+  protected static Logger logger;
+  static {
+    logger = Logger.getLogger("WorkloadReader");
+    logger.setLevel(Level.WARNING);
+  }
+
+  /**
+   * Create a new WorkloadReader over raw bytes.
+   *
+   * @param in Stream to read from.
+   */
+  public WorkloadReader(InputStream in) {
+    this.in = in;
+    bytes = new byte[BUFFER_SIZE];
+    init();
+  }
+
+  /**
+   * Create a new WorkloadReader over chars.
+   *
+   * @param reader Reader to read from.
+   */
+  public WorkloadReader(Reader reader) {
+    this.reader = reader;
+    chars = new char[BUFFER_SIZE];
+    init();
+  }
+
+  protected void init() {
+    position = limit = 0;
+    eof = negative = false;
+    lastArrival = Integer.MIN_VALUE;
+    sorted = true;
+    declaredCount = -1;
+    if (!nextNumberIsAvailable()) {
+      hasNext = false;
+      return;
+    }
+    declaredCount = nextNumber();
+    advance();
+  }
+
+  /**
+   * @return Number of processes declared at the start of the input, or -1 if
+   *         the input was empty.
+   */
+  public int getDeclaredCount() {
+    return declaredCount;
+  }
+
+  /**
+   * @return True if every process read so far arrived no earlier than the
+   *         one before it.
+   */
+  public boolean isSorted() {
+    return sorted;
+  }
+
+  public boolean hasNext() {
+    return hasNext;
+  }
+
+  public int peekArrival() {
+    return arrival;
+  }
+
+  public int next(ProcessTable table) {
+    if (!hasNext) {
+      throw new IllegalStateException("No more processes in workload");
+    }
+    int i = table.add(arrival, burst, cpu, io);
+    advance();
+    return i;
+  }
+
+  protected void advance() {
+    // An incomplete trailing process is ignored
+    hasNext = false;
+    if (!nextNumberIsAvailable()) {
+      return;
+    }
+    arrival = nextNumber();
+    if (!nextNumberIsAvailable()) {
+      return;
+    }
+    burst = nextNumber();
+    if (!nextNumberIsAvailable()) {
+      return;
+    }
+    cpu = nextNumber();
+    if (!nextNumberIsAvailable()) {
+      return;
+    }
+    io = nextNumber();
+    if (arrival < lastArrival) {
+      sorted = false;
+    }
+    lastArrival = arrival;
+    hasNext = true;
+  }
+
+  protected boolean fill() {
+    if (eof) {
+      return false;
+    }
+    try {
+      if (in != null) {
+        limit = in.read(bytes, 0, bytes.length);
+      } else {
+        limit = reader.read(chars, 0, chars.length);
+      }
+    } catch (IOException e) {
+      logger.severe("There was an error reading the input: " + e);
+      limit = -1;
+    }
+    position = 0;
+    if (limit <= 0) {
+      limit = 0;
+      eof = true;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return Next char of input without consuming it, or -1 at end of input.
+   */
+  protected int peek() {
+    if (position >= limit && !fill()) {
+      return -1;
+    }
+    return in != null ? (bytes[position] & 0xff) : chars[position];
+  }
+
+  protected static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  protected static boolean isSeparator(int c) {
+    return c == -1 || c == '(' || c == ')' || c == ',' || c <= ' ';
+  }
+
+  /**
+   * Skip ahead to the next number, skipping words and separators.
+   *
+   * @return True if a number is available.
+   */
+  protected boolean nextNumberIsAvailable() {
+    while (true) {
+      int c = peek();
+      if (c == -1) {
+        return false;
+      }
+      if (isDigit(c)) {
+        return true;
+      }
+      if (c == '-') {
+        position++;
+        if (isDigit(peek())) {
+          negative = true;
+          return true;
+        }
+        continue;
+      }
+      if (isSeparator(c)) {
+        position++;
+        continue;
+      }
+      // Skip the rest of a word
+      while (!isSeparator(c)) {
+        position++;
+        c = peek();
+      }
+    }
+  }
+
+  /**
+   * @return Number at the current position.  Only valid after
+   *         nextNumberIsAvailable() returned true.
+   */
+  protected int nextNumber() {
+    int value = 0;
+    int c;
+    while (isDigit(c = peek())) {
+      value = value * 10 + (c - '0');
+      position++;
+    }
+    if (negative) {
+      negative = false;
+      value = -value;
+    }
+    return value;
+  }
+
+  /**
+   * Read all processes from the given Reader into a new ProcessTable, in
+   * input order.
+   *
+   * @param reader Reader to read from.
+   * @return ProcessTable holding every process of the input.
+   */
+  public static ProcessTable readAll(Reader reader) {
+    return readAll(new WorkloadReader(reader));
+  }
+
+  /**
+   * Read all processes from the given stream into a new ProcessTable, in
+   * input order.
+   *
+   * @param in Stream to read from.
+   * @return ProcessTable holding every process of the input.
+   */
+  public static ProcessTable readAll(InputStream in) {
+    return readAll(new WorkloadReader(in));
+  }
+
+  protected static ProcessTable readAll(WorkloadReader r) {
+    ProcessTable table = new ProcessTable(Math.max(r.getDeclaredCount(), 1));
+    while (r.hasNext()) {
+      r.next(table);
+    }
+    return table;
+  }
+}
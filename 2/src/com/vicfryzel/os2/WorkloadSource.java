@@ -0,0 +1,28 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2;
+
+
+/**
+ * Lazily supplies processes to a Scheduler in arrival order, so that large
+ * workloads never have to be held in memory or sorted up front.
+ */
+public interface WorkloadSource {
+  /**
+   * @return True if another process is available.
+   */
+  boolean hasNext();
+
+  /**
+   * @return Arrival time of the next process.  Only valid if hasNext().
+   */
+  int peekArrival();
+
+  /**
+   * Append the next process to the given table.
+   *
+   * @param table Table to add the process to.
+   * @return Index of the added process in table.
+   */
+  int next(ProcessTable table);
+}
@@ -0,0 +1,246 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.bench;
+
+import com.vicfryzel.os2.FCFSScheduler;
+import com.vicfryzel.os2.FastScheduler;
+import com.vicfryzel.os2.HPRNScheduler;
+import com.vicfryzel.os2.RRScheduler;
+import com.vicfryzel.os2.RandomNumbers;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.UniScheduler;
+import com.vicfryzel.os2.WorkloadGenerator;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+
+/**
+ * Measures simulated cycles per second and bytes allocated per cycle for each
+ * scheduling policy over generated workloads of increasing size.  Each
+ * configuration is run a number of times to warm up the JIT before the
+ * measured runs, and the best measured run is reported.
+ */
+public class SchedulerBenchmark {
+  public static class BenchmarkParameters {
+    @Parameter(names = { "--sizes" },
+               description = "Comma-separated workload sizes. "
+                   + "Default: 10,100,1000,10000.")
+    public String sizes = "10,100,1000,10000";
+
+    @Parameter(names = { "--types" },
+               description = "Comma-separated scheduler types. "
+                   + "Default: fcfs,fast-fcfs,rr2,uni,fast-uni,hprn.")
+    public String types = "fcfs,fast-fcfs,rr2,uni,fast-uni,hprn";
+
+    @Parameter(names = { "--warmup" },
+               description = "Unmeasured runs per configuration. Default: 3.")
+    public int warmup = 3;
+
+    @Parameter(names = { "--iterations" },
+               description = "Measured runs per configuration. Default: 5.")
+    public int iterations = 5;
+
+    @Parameter(names = { "--verbose-max-size" },
+               description = "Largest size to also run in verbose mode. "
+                   + "Default: 100.")
+    public int verboseMaxSize = 100;
+
+    @Parameter(names = { "--mean-interarrival" },
+               description = "Mean cycles between arrivals. Default: 60.")
+    public double meanInterarrival = 60.0;
+
+    @Parameter(names = { "--random-file" },
+               description = "Path to input file of random numbers (UDRIs).")
+    public String randomFile = "data/random-numbers";
+  }
+
+  /**
+   * Result of one measured run.
+   */
+  protected static class Measurement {
+    public long cycles;
+    public long nanos;
+    public long bytes;
+
+    public double getCyclesPerSecond() {
+      return nanos == 0 ? 0.0 : cycles * 1e9 / nanos;
+    }
+
+    public double getBytesPerCycle() {
+      return cycles == 0 ? 0.0 : (double) bytes / cycles;
+    }
+  }
+
+  protected com.sun.management.ThreadMXBean threads;
+  protected String randomNumbers;
+
+  public SchedulerBenchmark(String randomNumbers) {
+    this.randomNumbers = randomNumbers;
+    threads = (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+    if (threads.isThreadAllocatedMemorySupported()) {
+      threads.setThreadAllocatedMemoryEnabled(true);
+    }
+  }
+
+  /**
+   * @param size Number of processes.
+   * @param meanInterarrival Mean cycles between arrivals.
+   * @return Workload in the standard input format.
+   */
+  public static String generate(int size, double meanInterarrival) {
+    StringWriter out = new StringWriter();
+    try {
+      new WorkloadGenerator(size, WorkloadGenerator.Distribution.EXPONENTIAL,
+                            meanInterarrival, 42).write(out);
+    } catch (IOException e) {
+      // Writing to a StringWriter never fails
+    }
+    return out.toString();
+  }
+
+  protected Scheduler createScheduler(String type, String input,
+                                      boolean verbose) {
+    Reader in = new StringReader(input);
+    Reader random = new StringReader(randomNumbers);
+    if (type.equals("fast-fcfs") || type.equals("fast-uni")) {
+      if (verbose) {
+        throw new IllegalArgumentException(type + " has no verbose mode");
+      }
+      return new FastScheduler(in, random, type.equals("fast-uni"));
+    } else if (type.equals("fcfs")) {
+      return new FCFSScheduler(in, random, verbose, verbose);
+    } else if (type.equals("uni")) {
+      return new UniScheduler(in, random, verbose, verbose);
+    } else if (type.equals("hprn")) {
+      return new HPRNScheduler(in, random, verbose, verbose);
+    } else if (type.matches("rr[0-9]+")) {
+      return new RRScheduler(in, random, verbose, verbose,
+                             Integer.parseInt(type.substring(2)));
+    }
+    throw new IllegalArgumentException("Unknown scheduler type " + type);
+  }
+
+  protected long allocatedBytes() {
+    return threads.isThreadAllocatedMemorySupported()
+        ? threads.getThreadAllocatedBytes(Thread.currentThread().getId())
+        : 0;
+  }
+
+  /**
+   * Run one simulation, excluding input parsing from the measurement.
+   *
+   * @param type Scheduler type.
+   * @param input Workload in the standard input format.
+   * @param verbose Whether to produce verbose output.
+   * @return Measurement of the run.
+   */
+  public Measurement measure(String type, String input, boolean verbose) {
+    Scheduler scheduler = createScheduler(type, input, verbose);
+    Measurement m = new Measurement();
+    long bytes = allocatedBytes();
+    long start = System.nanoTime();
+    String output = scheduler.scheduleUntilComplete();
+    m.nanos = System.nanoTime() - start;
+    m.bytes = allocatedBytes() - bytes;
+    m.cycles = scheduler.getCycle() + 1;
+    if (output.length() == 0) {
+      throw new IllegalStateException("Scheduler produced no output");
+    }
+    return m;
+  }
+
+  /**
+   * Warm up, then measure, one configuration.
+   *
+   * @return Fastest of the measured runs.
+   */
+  public Measurement run(String type, String input, boolean verbose,
+                         int warmup, int iterations) {
+    for (int i = 0; i < warmup; i++) {
+      measure(type, input, verbose);
+    }
+    Measurement best = null;
+    for (int i = 0; i < iterations; i++) {
+      Measurement m = measure(type, input, verbose);
+      if (best == null || m.nanos < best.nanos) {
+        best = m;
+      }
+    }
+    return best;
+  }
+
+  protected static String readFile(String path) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(path)));
+    try {
+      StringBuilder b = new StringBuilder();
+      char[] buffer = new char[8192];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        b.append(buffer, 0, n);
+      }
+      return b.toString();
+    } finally {
+      in.close();
+    }
+  }
+
+  public static void main(String[] args) {
+    BenchmarkParameters p = new BenchmarkParameters();
+    new JCommander(p, args);
+
+    String randomNumbers = null;
+    try {
+      randomNumbers = readFile(p.randomFile);
+    } catch (IOException e) {
+      System.err.println("Could not read " + p.randomFile + ": " + e);
+      System.exit(1);
+    }
+    if (new RandomNumbers(new StringReader(randomNumbers)).size() == 0) {
+      System.err.println("No random numbers in " + p.randomFile);
+      System.exit(1);
+    }
+    // Large workloads wrap around the random numbers; that is expected here
+    Logger.getLogger("RandomNumbers").setLevel(Level.SEVERE);
+    SchedulerBenchmark benchmark = new SchedulerBenchmark(randomNumbers);
+    List<String> types = Arrays.asList(p.types.split(","));
+
+    System.out.println(String.format(Locale.US, "%-9s %-8s %9s %12s %10s %14s %12s",
+        "type", "mode", "size", "cycles", "ms", "cycles/sec", "bytes/cycle"));
+    for (String size : p.sizes.split(",")) {
+      int n = Integer.parseInt(size.trim());
+      String input = generate(n, p.meanInterarrival);
+      for (String type : types) {
+        for (int v = 0; v < 2; v++) {
+          boolean verbose = v == 1;
+          if (verbose && (n > p.verboseMaxSize
+                          || type.trim().startsWith("fast-"))) {
+            continue;
+          }
+          Measurement m = benchmark.run(type.trim(), input, verbose,
+                                        p.warmup, p.iterations);
+          System.out.println(String.format(Locale.US,
+              "%-9s %-8s %9d %12d %10.1f %14.0f %12.1f",
+              type.trim(), verbose ? "verbose" : "quiet", n, m.cycles,
+              m.nanos / 1e6, m.getCyclesPerSecond(), m.getBytesPerCycle()));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.RRScheduler;
+import com.vicfryzel.os2.Scheduler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import junit.framework.TestCase;
+
+
+public class CheckpointTest extends TestCase {
+  public CheckpointTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  protected Scheduler getScheduler(int input, boolean verbose)
+      throws FileNotFoundException {
+    return new RRScheduler(
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "input-" + input))),
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "random-numbers"))),
+        verbose, verbose);
+  }
+
+  protected void checkResume(boolean verbose) throws Exception {
+    File checkpoint = File.createTempFile("scheduler", ".checkpoint");
+    try {
+      for (int i = 1; i <= BaseSchedulerTest.NUM_TEST_INPUT_FILES; i++) {
+        checkpoint.delete();
+        Scheduler original = getScheduler(i, verbose);
+        original.setCheckpoint(checkpoint.getPath(), 7);
+        String expected = original.scheduleUntilComplete();
+        if (!checkpoint.exists()) {
+          // The run finished before the first checkpoint
+          continue;
+        }
+
+        Scheduler resumed = getScheduler(i, verbose);
+        InputStream in = new FileInputStream(checkpoint);
+        try {
+          resumed.restore(in);
+        } finally {
+          in.close();
+        }
+        assertEquals(expected, resumed.scheduleUntilComplete());
+      }
+    } finally {
+      checkpoint.delete();
+    }
+  }
+
+  public void testResume() throws Exception {
+    checkResume(false);
+  }
+
+  public void testResumeVerbose() throws Exception {
+    checkResume(true);
+  }
+}
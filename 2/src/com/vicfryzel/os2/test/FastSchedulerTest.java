@@ -0,0 +1,122 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.FCFSScheduler;
+import com.vicfryzel.os2.FastScheduler;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.UniScheduler;
+import com.vicfryzel.os2.WorkloadGenerator;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import junit.framework.TestCase;
+
+
+public class FastSchedulerTest extends TestCase {
+  public FastSchedulerTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  protected String read(String path) throws Exception {
+    Reader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(path)));
+    try {
+      StringBuilder b = new StringBuilder();
+      char[] buffer = new char[8192];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        b.append(buffer, 0, n);
+      }
+      return b.toString();
+    } finally {
+      in.close();
+    }
+  }
+
+  protected String generate(int count, WorkloadGenerator.Distribution d,
+                            double mean, long seed) throws Exception {
+    StringWriter out = new StringWriter();
+    new WorkloadGenerator(count, d, mean, seed).write(out);
+    return out.toString();
+  }
+
+  protected void checkSame(String input, String random) throws Exception {
+    for (int u = 0; u < 2; u++) {
+      Scheduler expected = u == 1
+          ? new UniScheduler(new StringReader(input), new StringReader(random),
+                             false, false)
+          : new FCFSScheduler(new StringReader(input),
+                              new StringReader(random), false, false);
+      Scheduler actual = new FastScheduler(
+          new StringReader(input), new StringReader(random), u == 1);
+      expected.setShowPercentiles(true);
+      actual.setShowPercentiles(true);
+      assertEquals(expected.scheduleUntilComplete(),
+                   actual.scheduleUntilComplete());
+    }
+  }
+
+  public void testSameAsFCFSAndUni() throws Exception {
+    String random = read(getDataPath() + "random-numbers");
+    for (int i = 1; i <= BaseSchedulerTest.NUM_TEST_INPUT_FILES; i++) {
+      checkSame(read(getDataPath() + "input-" + i), random);
+    }
+    checkSame(generate(200, WorkloadGenerator.Distribution.EXPONENTIAL, 20, 1),
+              random);
+    checkSame(generate(100, WorkloadGenerator.Distribution.BATCH, 0, 2),
+              random);
+  }
+
+  public void testNoAllocationPerCycle() throws Exception {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!threads.isThreadAllocatedMemorySupported()) {
+      return;
+    }
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+
+    String random = read(getDataPath() + "random-numbers");
+    String input = generate(400, WorkloadGenerator.Distribution.EXPONENTIAL,
+                            50, 3);
+    for (int u = 0; u < 2; u++) {
+      // Warm up, so the measured steps run compiled code
+      for (int k = 0; k < 3; k++) {
+        new FastScheduler(new StringReader(input), new StringReader(random),
+                          u == 1).scheduleUntilComplete();
+      }
+
+      // Generated workloads are already sorted, so stepping can start at once
+      FastScheduler scheduler = new FastScheduler(
+          new StringReader(input), new StringReader(random), u == 1);
+      for (int k = 0; k < 200; k++) {
+        scheduler.step();
+      }
+      // Stop well before the random numbers wrap around, which logs a warning
+      int cycles = 0;
+      long before = threads.getThreadAllocatedBytes(thread);
+      while (cycles < 5000 && scheduler.step()) {
+        cycles++;
+      }
+      long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      assertEquals(5000, cycles);
+      assertEquals("Bytes allocated over " + cycles + " cycles", 0, allocated);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.LatencyHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+
+
+public class LatencyHistogramTest extends TestCase {
+  public LatencyHistogramTest(String name) {
+    super(name);
+  }
+
+  public void testPercentiles() throws Exception {
+    LatencyHistogram h = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      h.record(i);
+    }
+    assertEquals(100, h.getTotalCount());
+    assertEquals(1, h.getMin());
+    assertEquals(50, h.getValueAtPercentile(50.0));
+    assertEquals(90, h.getValueAtPercentile(90.0));
+    assertEquals(99, h.getValueAtPercentile(99.0));
+    assertEquals(100, h.getMax());
+  }
+
+  public void testLargeValuesWithinPrecision() throws Exception {
+    LatencyHistogram h = new LatencyHistogram();
+    int[] values = { 1000, 65537, 1234567, Integer.MAX_VALUE };
+    for (int value : values) {
+      h.reset();
+      h.record(value);
+      long p50 = h.getValueAtPercentile(50.0);
+      assertTrue(p50 <= value);
+      assertTrue(value - p50 <= value >> (h.getPrecisionBits() - 1));
+    }
+  }
+
+  public void testMergeBinary() throws Exception {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    for (int i = 1; i <= 50; i++) {
+      a.record(i);
+    }
+    for (int i = 51; i <= 100; i++) {
+      b.record(i);
+    }
+    Map<String, LatencyHistogram> first =
+        new LinkedHashMap<String, LatencyHistogram>();
+    first.put("Turnaround time", a);
+    Map<String, LatencyHistogram> second =
+        new LinkedHashMap<String, LatencyHistogram>();
+    second.put("Turnaround time", b);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LatencyHistogram.writeAll(first, out);
+    LatencyHistogram.writeAll(second, out);
+
+    Map<String, LatencyHistogram> merged =
+        new LinkedHashMap<String, LatencyHistogram>();
+    LatencyHistogram.mergeAll(
+        new ByteArrayInputStream(out.toByteArray()), merged);
+    LatencyHistogram h = merged.get("Turnaround time");
+    assertEquals(1, merged.size());
+    assertEquals(100, h.getTotalCount());
+    assertEquals("50/90/99/100", h.toPercentileString());
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.ProcessTable;
+
+import junit.framework.TestCase;
+
+
+public class ProcessTableTest extends TestCase {
+  public ProcessTableTest(String name) {
+    super(name);
+  }
+
+  public void testSortByArrivalIsStable() throws Exception {
+    ProcessTable table = new ProcessTable(1);
+    table.add(5, 1, 10, 1);
+    table.add(0, 2, 20, 2);
+    table.add(5, 3, 30, 3);
+    table.add(0, 4, 40, 4);
+    table.sortByArrival();
+    assertEquals(4, table.size());
+    assertEquals("( 0 2 20 2 )", table.toString(0));
+    assertEquals("( 0 4 40 4 )", table.toString(1));
+    assertEquals("( 5 1 10 1 )", table.toString(2));
+    assertEquals("( 5 3 30 3 )", table.toString(3));
+  }
+
+  public void testStateCounts() throws Exception {
+    ProcessTable table = new ProcessTable(2);
+    table.add(0, 1, 2, 1);
+    table.add(0, 1, 2, 1);
+    assertEquals(2, table.count(ProcessTable.UNSTARTED));
+    table.ready(0, 0);
+    table.ready(1, 0);
+    table.run(0);
+    table.processWait(1);
+    assertEquals(1, table.count(ProcessTable.READY));
+    assertEquals(1, table.count(ProcessTable.RUNNING));
+    assertEquals(1, table.getCurrentWaitTime(1));
+    table.block(0);
+    table.terminate(1, 3);
+    assertEquals(1, table.count(ProcessTable.BLOCKED));
+    assertEquals(1, table.count(ProcessTable.TERMINATED));
+    assertEquals(0, table.count(ProcessTable.READY));
+    assertEquals(3, table.getTerminatedTime(1));
+  }
+
+  public void testForkCopiesOnWrite() throws Exception {
+    ProcessTable table = new ProcessTable(2);
+    table.add(0, 1, 2, 1);
+    table.add(3, 1, 2, 1);
+    table.ready(0, 0);
+    ProcessTable fork = table.fork();
+    fork.run(0);
+    fork.addTotalCpuTime(0, 1);
+    table.processWait(0);
+    assertTrue(table.isReady(0));
+    assertEquals(0, table.getTotalCpuTime(0));
+    assertEquals(1, table.getCurrentWaitTime(0));
+    assertTrue(fork.isRunning(0));
+    assertEquals(1, fork.getTotalCpuTime(0));
+    assertEquals(0, fork.getCurrentWaitTime(0));
+    assertEquals(1, fork.count(ProcessTable.RUNNING));
+    assertEquals(0, table.count(ProcessTable.RUNNING));
+    fork.add(5, 1, 2, 1);
+    assertEquals(3, fork.size());
+    assertEquals(2, table.size());
+  }
+}
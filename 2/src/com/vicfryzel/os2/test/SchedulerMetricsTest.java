@@ -0,0 +1,94 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.sun.net.httpserver.HttpServer;
+import com.vicfryzel.os2.FCFSScheduler;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.SchedulerMetrics;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import junit.framework.TestCase;
+
+
+public class SchedulerMetricsTest extends TestCase {
+  public SchedulerMetricsTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  protected Scheduler getScheduler(int input) throws Exception {
+    return new FCFSScheduler(
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "input-" + input))),
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "random-numbers"))),
+        false, false);
+  }
+
+  public void testCountersMatchRun() throws Exception {
+    Scheduler scheduler = getScheduler(2);
+    SchedulerMetrics metrics = new SchedulerMetrics();
+    scheduler.setMetrics(metrics);
+    scheduler.scheduleUntilComplete();
+
+    int processes = scheduler.getProcessTable().size();
+    assertEquals(processes, metrics.getProcessCount());
+    assertEquals(processes, metrics.getTerminatedCount());
+    assertEquals(0, metrics.getReadyCount());
+    assertEquals(0, metrics.getRunningCount());
+    assertEquals(0, metrics.getBlockedCount());
+    // One step per cycle, including the cycle the last process finished in
+    int finishingTime = 0;
+    for (int i = 0; i < processes; i++) {
+      finishingTime = Math.max(
+          finishingTime, scheduler.getProcessTable().getTerminatedTime(i));
+    }
+    assertEquals(finishingTime + 1, metrics.getCycles());
+    assertTrue(metrics.getDispatches() >= processes);
+    assertTrue(metrics.getCpuUtilization() > 0.0);
+    assertTrue(metrics.getCpuUtilization() <= 1.0);
+  }
+
+  public void testHttpEndpoint() throws Exception {
+    SchedulerMetrics metrics = new SchedulerMetrics();
+    Scheduler scheduler = getScheduler(1);
+    scheduler.setMetrics(metrics);
+    scheduler.scheduleUntilComplete();
+
+    HttpServer server = metrics.serve(0);
+    try {
+      URL url = new URL("http://localhost:" + server.getAddress().getPort()
+                        + "/metrics");
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(url.openStream(), "UTF-8"));
+      StringBuilder b = new StringBuilder();
+      try {
+        String line;
+        while ((line = in.readLine()) != null) {
+          b.append(line).append('\n');
+        }
+      } finally {
+        in.close();
+      }
+      assertTrue(b.toString().startsWith(
+          "cycles " + metrics.getCycles() + "\n"));
+      assertTrue(b.toString().contains("terminated "
+          + metrics.getTerminatedCount() + "\n"));
+    } finally {
+      server.stop(0);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.FCFSScheduler;
+import com.vicfryzel.os2.HPRNScheduler;
+import com.vicfryzel.os2.RRScheduler;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.SchedulerSweep;
+import com.vicfryzel.os2.UniScheduler;
+import com.vicfryzel.os2.WorkloadGenerator;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+import junit.framework.TestCase;
+
+
+public class SchedulerSweepTest extends TestCase {
+  protected static final String[] TYPES =
+      { "fcfs", "rr1", "rr2", "rr3", "rr5", "uni", "hprn" };
+
+  public SchedulerSweepTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  protected Reader getRandomNumberReader() throws FileNotFoundException {
+    return new BufferedReader(new InputStreamReader(new FileInputStream(
+        getDataPath() + "random-numbers")));
+  }
+
+  protected Scheduler getScheduler(String type, String input, boolean verbose)
+      throws FileNotFoundException {
+    Reader in = new StringReader(input);
+    Scheduler retval;
+    if (type.equals("fcfs")) {
+      retval = new FCFSScheduler(in, getRandomNumberReader(), verbose, verbose);
+    } else if (type.equals("uni")) {
+      retval = new UniScheduler(in, getRandomNumberReader(), verbose, verbose);
+    } else if (type.equals("hprn")) {
+      retval = new HPRNScheduler(in, getRandomNumberReader(), verbose, verbose);
+    } else {
+      retval = new RRScheduler(in, getRandomNumberReader(), verbose, verbose,
+                               Integer.parseInt(type.substring(2)));
+    }
+    retval.setShowPercentiles(true);
+    return retval;
+  }
+
+  protected void checkSweep(String input, boolean verbose) throws Exception {
+    SchedulerSweep sweep = new SchedulerSweep(
+        new StringReader(input), getRandomNumberReader(), verbose, verbose,
+        TYPES);
+    sweep.setShowPercentiles(true);
+    Map<String, String> outputs = sweep.run(4);
+    assertEquals(TYPES.length, outputs.size());
+    for (String type : TYPES) {
+      assertEquals(type, getScheduler(type, input, verbose)
+          .scheduleUntilComplete(), outputs.get(type));
+    }
+  }
+
+  protected String readInput(int i) throws Exception {
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(getDataPath() + "input-" + i)));
+    try {
+      StringBuilder b = new StringBuilder();
+      String line;
+      while ((line = in.readLine()) != null) {
+        b.append(line).append('\n');
+      }
+      return b.toString();
+    } finally {
+      in.close();
+    }
+  }
+
+  public void testSampleInputs() throws Exception {
+    for (int i = 1; i <= BaseSchedulerTest.NUM_TEST_INPUT_FILES; i++) {
+      checkSweep(readInput(i), false);
+    }
+  }
+
+  public void testLongSoloPrefix() throws Exception {
+    // Arrivals far apart, so the first process runs alone for a long time
+    for (long seed = 1; seed <= 3; seed++) {
+      StringWriter input = new StringWriter();
+      new WorkloadGenerator(6, WorkloadGenerator.Distribution.UNIFORM, 60,
+                            seed).write(input);
+      checkSweep(input.toString(), false);
+      checkSweep(input.toString(), true);
+    }
+  }
+
+  public void testUnknownType() throws Exception {
+    try {
+      new SchedulerSweep(new StringReader("1 (0 1 1 1)"),
+                         getRandomNumberReader(), false, false,
+                         new String[] { "rr0" });
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+}
@@ -13,6 +13,16 @@ public class SchedulerTestSuite {
     suite.addTest(new HPRNSchedulerTest("testScheduler"));
     suite.addTest(new RRSchedulerTest("testScheduler"));
     suite.addTest(new UniSchedulerTest("testScheduler"));
+    suite.addTestSuite(LatencyHistogramTest.class);
+    suite.addTestSuite(ProcessTableTest.class);
+    suite.addTestSuite(WorkloadReaderTest.class);
+    suite.addTestSuite(CheckpointTest.class);
+    suite.addTestSuite(SchedulerSweepTest.class);
+    suite.addTestSuite(SchedulerMetricsTest.class);
+    suite.addTestSuite(SimulationResultTest.class);
+    suite.addTestSuite(ThreadedReplayTest.class);
+    suite.addTestSuite(TraceReaderTest.class);
+    suite.addTestSuite(FastSchedulerTest.class);
     return suite;
   }
 }
@@ -0,0 +1,81 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.HPRNScheduler;
+import com.vicfryzel.os2.ProcessTable;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.SimulationListener;
+import com.vicfryzel.os2.SimulationResult;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import junit.framework.TestCase;
+
+
+public class SimulationResultTest extends TestCase {
+  public SimulationResultTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  protected Scheduler getScheduler(int input) throws Exception {
+    return new HPRNScheduler(
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "input-" + input))),
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "random-numbers"))),
+        false, false);
+  }
+
+  public void testResultMatchesText() throws Exception {
+    for (int i = 1; i <= BaseSchedulerTest.NUM_TEST_INPUT_FILES; i++) {
+      String text = getScheduler(i).scheduleUntilComplete();
+      SimulationResult result = getScheduler(i).run();
+
+      assertTrue(text.contains("\tFinishing time: "
+          + result.getFinishingTime() + "\n"));
+      for (SimulationResult.ProcessResult p : result.getProcesses()) {
+        assertTrue(text.contains("Process " + p.getId() + ":\n"
+            + "\t(A,B,C,IO) = (" + p.getArrival() + "," + p.getBurst() + ","
+            + p.getCpu() + "," + p.getIo() + ")\n"
+            + "\tFinishing time: " + p.getFinishingTime() + "\n"
+            + "\tTurnaround time: " + p.getTurnaroundTime() + "\n"
+            + "\tI/O time: " + p.getIoTime() + "\n"
+            + "\tWaiting time: " + p.getWaitingTime() + "\n"));
+      }
+      assertEquals(3, result.getHistograms().size());
+      assertEquals(result.getProcesses().size(), result.getHistograms()
+          .get("Turnaround time").getTotalCount());
+    }
+  }
+
+  public void testListener() throws Exception {
+    final int[] cycles = new int[1];
+    final SimulationResult[] completed = new SimulationResult[1];
+    Scheduler scheduler = getScheduler(3);
+    scheduler.addListener(new SimulationListener() {
+      public void cycleCompleted(int cycle, ProcessTable table) {
+        assertEquals(cycles[0], cycle);
+        cycles[0]++;
+      }
+
+      public void simulationCompleted(SimulationResult result) {
+        completed[0] = result;
+      }
+    });
+    SimulationResult result = scheduler.run();
+    assertSame(result, completed[0]);
+    assertEquals(result.getFinishingTime() + 1, cycles[0]);
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.IntList;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.SimulationResult;
+import com.vicfryzel.os2.ThreadedReplay;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+
+public class ThreadedReplayTest extends TestCase {
+  protected static final long CYCLE_NANOS = 20000;
+
+  public ThreadedReplayTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  protected ThreadedReplay getReplay(String type, int input, int threads)
+      throws Exception {
+    return new ThreadedReplay(Scheduler.create(type,
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "input-" + input))),
+        new BufferedReader(new InputStreamReader(new FileInputStream(
+            getDataPath() + "random-numbers"))),
+        false, false), threads, CYCLE_NANOS);
+  }
+
+  protected void checkReplay(String type, int input, int threads)
+      throws Exception {
+    ThreadedReplay replay = getReplay(type, input, threads);
+    SimulationResult result = replay.getSimulatedResult();
+    int cpuBursts = 0;
+    for (SimulationResult.ProcessResult p : result.getProcesses()) {
+      IntList bursts = replay.getBursts(p.getId());
+      int cpu = 0, io = 0;
+      for (int k = 0; k < bursts.size(); k++) {
+        if (bursts.get(k) > 0) {
+          cpu += bursts.get(k);
+          cpuBursts++;
+        } else {
+          io -= bursts.get(k);
+        }
+      }
+      assertEquals(p.getCpu(), cpu);
+      assertEquals(p.getIoTime(), io);
+    }
+    assertEquals(cpuBursts, replay.getDispatchOrder().size());
+
+    replay.replay();
+    assertTrue(Arrays.equals(replay.getDispatchOrder().toArray(),
+                             replay.getExecutor().getExecutedOrder()));
+    for (int k = 0; k < result.getProcesses().size(); k++) {
+      SimulationResult.ProcessResult p = result.getProcesses().get(k);
+      assertTrue(replay.getTurnaroundNanos(k) >= p.getCpu() * CYCLE_NANOS);
+    }
+  }
+
+  public void testReplayFollowsDispatchOrder() throws Exception {
+    checkReplay("fcfs", 5, 2);
+    checkReplay("rr2", 3, 1);
+    checkReplay("hprn", 7, 4);
+    checkReplay("uni", 2, 2);
+  }
+}
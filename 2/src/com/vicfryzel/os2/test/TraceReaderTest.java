@@ -0,0 +1,188 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.FCFSScheduler;
+import com.vicfryzel.os2.IntList;
+import com.vicfryzel.os2.ProcessTable;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.SimulationResult;
+import com.vicfryzel.os2.ThreadedReplay;
+import com.vicfryzel.os2.TraceReader;
+import com.vicfryzel.os2.TraceWriter;
+import com.vicfryzel.os2.UniScheduler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import junit.framework.TestCase;
+
+
+public class TraceReaderTest extends TestCase {
+  public TraceReaderTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  protected Reader getReader(String name) throws Exception {
+    return new BufferedReader(new InputStreamReader(new FileInputStream(
+        getDataPath() + name)));
+  }
+
+  public void testRoundTrip() throws Exception {
+    File path = File.createTempFile("scheduler", ".trace");
+    try {
+      TraceWriter writer = new TraceWriter(path);
+      writer.add(0, new int[] { 3, 2, 4 }, 3);
+      writer.add(5, new int[] { 7 }, 1);
+      writer.close();
+
+      TraceReader reader = new TraceReader(path);
+      try {
+        ProcessTable table = new ProcessTable(2);
+        assertEquals(2, reader.getCount());
+        assertEquals(0, reader.peekArrival());
+        int i = reader.next(table);
+        assertEquals("( 0 4 7 2 )", table.toString(i));
+        assertEquals(5, reader.peekArrival());
+        int j = reader.next(table);
+        assertEquals("( 5 7 7 1 )", table.toString(j));
+        assertFalse(reader.hasNext());
+
+        assertEquals(3, reader.nextCpuBurst(i));
+        assertEquals(2, reader.nextIoBurst(i));
+        assertEquals(4, reader.nextCpuBurst(i));
+        assertEquals(7, reader.nextCpuBurst(j));
+        try {
+          reader.nextIoBurst(j);
+          fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+          // Expected
+        }
+      } finally {
+        reader.close();
+      }
+    } finally {
+      path.delete();
+    }
+  }
+
+  /**
+   * TraceReader that exposes how many processes it has room for.
+   */
+  protected static class WindowReader extends TraceReader {
+    public WindowReader(File path) throws IOException {
+      super(path);
+    }
+
+    public int getCapacity() {
+      return burstOffsets.length;
+    }
+  }
+
+  public void testReleasesFinishedProcesses() throws Exception {
+    File path = File.createTempFile("scheduler", ".trace");
+    try {
+      int n = 10000;
+      TraceWriter writer = new TraceWriter(path);
+      for (int k = 0; k < n; k++) {
+        writer.add(k, new int[] { 1 + k % 5 }, 1);
+      }
+      writer.close();
+
+      WindowReader reader = new WindowReader(path);
+      try {
+        ProcessTable table = new ProcessTable(n);
+        // Keep a few processes live at once, finishing the oldest each time
+        for (int k = 0; k < n; k++) {
+          reader.next(table);
+          if (k >= 3) {
+            assertEquals(1 + (k - 3) % 5, reader.nextCpuBurst(k - 3));
+          }
+        }
+        assertEquals(1024, reader.getCapacity());
+        try {
+          reader.nextCpuBurst(0);
+          fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+          // Expected
+        }
+        assertEquals(1 + (n - 1) % 5, reader.nextCpuBurst(n - 1));
+      } finally {
+        reader.close();
+      }
+    } finally {
+      path.delete();
+    }
+  }
+
+  /**
+   * Record the bursts of a non-preemptive run and check that replaying them
+   * from a trace gives the same results.
+   */
+  protected void checkReplay(String type, int input) throws Exception {
+    ThreadedReplay recorded = new ThreadedReplay(
+        Scheduler.create(type, getReader("input-" + input),
+                         getReader("random-numbers"), false, false),
+        1, 1);
+    SimulationResult expected = recorded.getSimulatedResult();
+
+    File path = File.createTempFile("scheduler", ".trace");
+    try {
+      TraceWriter writer = new TraceWriter(path);
+      for (SimulationResult.ProcessResult p : expected.getProcesses()) {
+        IntList bursts = recorded.getBursts(p.getId());
+        int[] values = bursts.toArray();
+        for (int k = 0; k < values.length; k++) {
+          values[k] = Math.abs(values[k]);
+        }
+        writer.add(p.getArrival(), values, values.length);
+      }
+      writer.close();
+
+      TraceReader trace = new TraceReader(path);
+      try {
+        Scheduler replayed = type.equals("uni")
+            ? new UniScheduler(trace, getReader("random-numbers"), false,
+                               false)
+            : new FCFSScheduler(trace, getReader("random-numbers"), false,
+                                false);
+        replayed.setBurstSource(trace);
+        SimulationResult actual = replayed.run();
+        assertEquals(expected.getFinishingTime(), actual.getFinishingTime());
+        assertEquals(expected.getProcesses().size(),
+                     actual.getProcesses().size());
+        for (int k = 0; k < expected.getProcesses().size(); k++) {
+          SimulationResult.ProcessResult e = expected.getProcesses().get(k);
+          SimulationResult.ProcessResult a = actual.getProcesses().get(k);
+          assertEquals(e.getFinishingTime(), a.getFinishingTime());
+          assertEquals(e.getWaitingTime(), a.getWaitingTime());
+          assertEquals(e.getIoTime(), a.getIoTime());
+        }
+      } finally {
+        trace.close();
+      }
+    } finally {
+      path.delete();
+    }
+  }
+
+  public void testReplayMatchesSimulation() throws Exception {
+    for (int i = 1; i <= BaseSchedulerTest.NUM_TEST_INPUT_FILES; i++) {
+      checkReplay("fcfs", i);
+      checkReplay("uni", i);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os2.test;
+
+import com.vicfryzel.os2.FCFSScheduler;
+import com.vicfryzel.os2.ProcessTable;
+import com.vicfryzel.os2.Scheduler;
+import com.vicfryzel.os2.WorkloadGenerator;
+import com.vicfryzel.os2.WorkloadReader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import junit.framework.TestCase;
+
+
+public class WorkloadReaderTest extends TestCase {
+  public WorkloadReaderTest(String name) {
+    super(name);
+  }
+
+  protected String getDataPath() {
+    String dataPath = System.getProperty("data.dir");
+    if (dataPath == null) {
+      dataPath = "";
+    } else {
+      dataPath += "/";
+    }
+    return dataPath;
+  }
+
+  public void testReadSkipsWordsAndSeparators() throws Exception {
+    String input = "3 (1 5 30 3) (1 5 30 4)\n(0 5 30 3)  the last has 2 words";
+    ProcessTable table = WorkloadReader.readAll(
+        new ByteArrayInputStream(input.getBytes("US-ASCII")));
+    assertEquals(3, table.size());
+    assertEquals("( 1 5 30 3 )", table.toString(0));
+    assertEquals("( 1 5 30 4 )", table.toString(1));
+    assertEquals("( 0 5 30 3 )", table.toString(2));
+  }
+
+  public void testStreamingMatchesFullRead() throws Exception {
+    StringWriter workload = new StringWriter();
+    new WorkloadGenerator(50, WorkloadGenerator.Distribution.EXPONENTIAL,
+                          10.0, 3).write(workload);
+    String random = getDataPath() + "random-numbers";
+
+    Scheduler full = new FCFSScheduler(
+        new StringReader(workload.toString()),
+        new BufferedReader(new InputStreamReader(new FileInputStream(random))),
+        false, false);
+    Scheduler streamed = new FCFSScheduler(
+        new WorkloadGenerator(50, WorkloadGenerator.Distribution.EXPONENTIAL,
+                              10.0, 3),
+        new BufferedReader(new InputStreamReader(new FileInputStream(random))),
+        false, false);
+
+    String fullOutput = full.scheduleUntilComplete();
+    String streamedOutput = streamed.scheduleUntilComplete();
+    // The streamed output has no input lists, so compare the summaries
+    assertEquals(fullOutput.substring(fullOutput.indexOf("Process 0:")),
+                 streamedOutput.substring(streamedOutput.indexOf("Process 0:")));
+  }
+}
@@ -1,9 +1,32 @@
 #!/bin/sh
 
 ant jar
-for i in 01 02 03 04 05 06 07 08 09 10 11 12 13; do
+for i in 01 02 03 04 05 06 07 08 09 10 11 12 13 14; do
   echo "===== data/input-$i ====="
   echo
   java -jar build/jar/os3.jar data/input-$i
   echo
 done
+
+# Allocator options, compared side by side and checked against the expected
+# summary in the given output file
+GRANT=fifo,fifo/smallest,fifo/batch,banker,banker/smallest,banker/batch
+VICTIM=fifo,fifo/fewest,fifo/progress,fifo/youngest,fifo/rollback
+failed=0
+compare() {
+  echo "===== data/input-$1 ($2) ====="
+  echo
+  java -cp build/jar/os3.jar com.vicfryzel.os3.AllocatorComparison -n -j 1 \
+      -t $2 data/input-$1 > build/$3
+  cat build/$3
+  if ! diff data/$3 build/$3 > /dev/null; then
+    echo "Differs from data/$3"
+    failed=1
+  fi
+  echo
+}
+compare 05 $GRANT output-05-grant
+compare 15 $VICTIM output-15
+compare 16 fifo,fifo/rollback,fifo/youngest/rollback output-16
+compare 17 $GRANT output-17
+exit $failed
@@ -13,6 +13,14 @@ public class Activity {
     INITIATE, REQUEST, RELEASE, COMPUTE, TERMINATE
   }
 
+  /**
+   * Number of ints an Activity takes when encoded: its type ordinal, resource
+   * type, number of cycles and number of resources.
+   */
+  public static final int ENCODED_SIZE = 4;
+
+  protected static final Type[] TYPES = Type.values();
+
   protected Type type;
   protected int task;
   protected int resourceType;
@@ -56,6 +64,60 @@ public class Activity {
     this.resources = other.resources;
   }
 
+  /**
+   * Write this Activity, less its task, into the given array.
+   * 
+   * @param into
+   *          Array to write into.
+   * @param offset
+   *          Position of the first of ENCODED_SIZE ints to write.
+   */
+  public void encode(int[] into, int offset) {
+    encode(into, offset, type, resourceType, numCycles, resources);
+  }
+
+  /**
+   * Write an Activity with the given fields into the given array, without
+   * creating it.
+   * 
+   * @param into
+   *          Array to write into.
+   * @param offset
+   *          Position of the first of ENCODED_SIZE ints to write.
+   */
+  public static void encode(int[] into, int offset, Type type,
+      int resourceType, int numCycles, int resources) {
+    into[offset] = type.ordinal();
+    into[offset + 1] = resourceType;
+    into[offset + 2] = numCycles;
+    into[offset + 3] = resources;
+  }
+
+  /**
+   * Read an Activity written by encode.
+   * 
+   * @param task
+   *          Task the Activity belongs to.
+   * @param from
+   *          Array to read from.
+   * @param offset
+   *          Position of the first of ENCODED_SIZE ints to read.
+   * @return Decoded Activity.
+   */
+  public static Activity decode(int task, int[] from, int offset) {
+    return new Activity(TYPES[from[offset]], task, from[offset + 1],
+        from[offset + 2], from[offset + 3]);
+  }
+
+  /**
+   * @param ordinal
+   *          Ordinal of an Activity Type.
+   * @return Type with the given ordinal.
+   */
+  public static Type typeOf(int ordinal) {
+    return TYPES[ordinal];
+  }
+
   /**
    * @return Type of this Activity.
    */
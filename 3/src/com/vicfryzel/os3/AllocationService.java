@@ -0,0 +1,403 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe allocation of Resources to concurrent workers, gated by the
+ * same Banker's safety check as BankerAllocator. Each worker is a Task that
+ * declares its maximum claim of each Resource type, then acquires and
+ * releases units of them, blocking while an acquire would be unsafe.
+ *
+ * The safety check reads the claims of every Task and the units of every
+ * Resource, so the ResourceManager is guarded by a single lock. Every
+ * declare, acquire, release and finish holds it throughout, including the
+ * O(n^2 * m) safety check and, after a release or finish, the scan of every
+ * waiter queue; a waiting acquire gives it up only while parked.
+ *
+ * Waiters are queued per Resource type. A release, or a Task finishing,
+ * scans each queue in FIFO order and grants units directly to every waiter
+ * that is now safe, waking only those waiters. An unsafe waiter does not
+ * hold up safe waiters behind it, as the Task that must finish first for it
+ * to become safe may be one of them.
+ *
+ * A claim never makes another pending acquire safe, so after every release
+ * all remaining waiters are unsafe, and a new acquire that is safe can be
+ * granted at once without overtaking any waiter that could have had it.
+ */
+public class AllocationService {
+  /**
+   * Pending acquire of a blocked Task.
+   */
+  protected class Waiter {
+    protected Task task;
+    protected int type;
+    protected int units;
+    protected Condition granted;
+    protected boolean done;
+
+    public Waiter(Task task, int type, int units) {
+      this.task = task;
+      this.type = type;
+      this.units = units;
+      granted = lock.newCondition();
+    }
+  }
+
+  protected ReentrantLock lock;
+  protected ResourceManager manager;
+  protected List<Task> tasks;
+  // Waiters on each Resource type, by column of the table
+  protected List<LinkedList<Waiter>> queues;
+  protected boolean[] waiting;
+
+  protected long grants;
+  protected long waits;
+  protected long timeouts;
+
+  /**
+   * Create a new AllocationService.
+   *
+   * @param tasks
+   *          Number of Tasks, which are numbered from 1.
+   * @param units
+   *          Units of each Resource type, by type - 1.
+   */
+  public AllocationService(int tasks, int[] units) {
+    lock = new ReentrantLock();
+    manager = new ResourceManager(tasks, units.length);
+    for (int j = 0; j < units.length; j++) {
+      manager.add(new Resource(j + 1, units[j]));
+    }
+    this.tasks = new ArrayList<Task>();
+    for (int i = 0; i < tasks; i++) {
+      this.tasks.add(new Task(i + 1, manager.getTable()));
+    }
+    queues = new ArrayList<LinkedList<Waiter>>();
+    for (int j = 0; j < units.length; j++) {
+      queues.add(new LinkedList<Waiter>());
+    }
+    waiting = new boolean[tasks];
+  }
+
+  protected Task getTask(int taskId) {
+    if (taskId < 1 || taskId > tasks.size()) {
+      throw new IllegalArgumentException("Task " + taskId
+          + " does not exist.");
+    }
+    return tasks.get(taskId - 1);
+  }
+
+  /**
+   * Declare the maximum number of units of the given Resource type that the
+   * given Task may hold at once. A Task holding nothing can always finish
+   * last, so declaring never makes the current state unsafe.
+   *
+   * @param taskId
+   *          ID of Task.
+   * @param type
+   *          Type of Resource.
+   * @param maximum
+   *          Maximum units of the Resource the Task may hold.
+   * @throws IllegalArgumentException
+   *           Thrown if the maximum exceeds the units of the Resource.
+   * @throws IllegalStateException
+   *           Thrown if the Task holds or is waiting for any units.
+   */
+  public void declare(int taskId, int type, int maximum) {
+    lock.lock();
+    try {
+      Task t = getTask(taskId);
+      ResourceTable table = manager.getTable();
+      if (maximum < 0 || maximum > table.getUnits(type)) {
+        throw new IllegalArgumentException("Claim for resource " + type
+            + " (" + maximum + ") exceeds number of units present ("
+            + table.getUnits(type) + ")");
+      }
+      if (holdsAny(t) || waiting[t.getIndex()]) {
+        throw new IllegalStateException("Task " + taskId
+            + " must hold nothing to declare a claim.");
+      }
+      table.setMaximum(t.getIndex(), type, maximum);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  protected boolean holdsAny(Task t) {
+    ResourceTable table = manager.getTable();
+    for (int type = 1; type <= table.getResources(); type++) {
+      if (table.getClaim(t.getIndex(), type) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Acquire the given units of the given Resource type, blocking until it is
+   * safe to do so.
+   *
+   * @param taskId
+   *          ID of Task.
+   * @param type
+   *          Type of Resource.
+   * @param units
+   *          Number of units to acquire.
+   * @throws InterruptedException
+   *           Thrown if interrupted while waiting; nothing is acquired. If
+   *           the units were granted as the interrupt arrived, they are
+   *           acquired instead, and the interrupt status is set again.
+   */
+  public void acquire(int taskId, int type, int units)
+      throws InterruptedException {
+    acquire(taskId, type, units, -1, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Acquire the given units of the given Resource type, blocking until it is
+   * safe to do so or the timeout elapses.
+   *
+   * @param taskId
+   *          ID of Task.
+   * @param type
+   *          Type of Resource.
+   * @param units
+   *          Number of units to acquire.
+   * @param timeout
+   *          Longest time to wait, or a negative number to wait forever.
+   * @param unit
+   *          Unit of timeout.
+   * @return True if the units were acquired, false if the timeout elapsed
+   *         first.
+   * @throws InterruptedException
+   *           Thrown if interrupted while waiting; nothing is acquired. If
+   *           the units were granted as the interrupt arrived, they are
+   *           acquired instead, and the interrupt status is set again.
+   * @throws IllegalArgumentException
+   *           Thrown if the units exceed the remaining claim of the Task.
+   * @throws IllegalStateException
+   *           Thrown if the Task is already waiting in another thread.
+   */
+  public boolean acquire(int taskId, int type, int units, long timeout,
+      TimeUnit unit) throws InterruptedException {
+    boolean timed = timeout >= 0;
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      Task t = getTask(taskId);
+      int i = t.getIndex();
+      int need = manager.getTable().getNeed(i, type);
+      if (units < 0 || units > need) {
+        throw new IllegalArgumentException("Task " + taskId + " requested "
+            + units + " units of resource " + type + " but may only claim "
+            + need + " more.");
+      }
+      if (waiting[i]) {
+        throw new IllegalStateException("Task " + taskId
+            + " is already waiting.");
+      }
+      LinkedList<Waiter> queue = queues.get(manager.getTable().column(type));
+      if (tryClaim(t, type, units)) {
+        grants++;
+        return true;
+      }
+
+      Waiter w = new Waiter(t, type, units);
+      queue.add(w);
+      waiting[i] = true;
+      waits++;
+      try {
+        while (!w.done) {
+          if (!timed) {
+            w.granted.await();
+          } else if (nanos > 0) {
+            nanos = w.granted.awaitNanos(nanos);
+          } else {
+            break;
+          }
+        }
+      } catch (InterruptedException e) {
+        if (!w.done) {
+          cancel(w);
+          throw e;
+        }
+        // Granted before the interrupt was noticed, so the units are held:
+        // keep them, and leave the interrupt for the caller to see
+        Thread.currentThread().interrupt();
+      }
+      if (!w.done) {
+        // Timed out
+        cancel(w);
+      }
+      return w.done;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Take the given waiter, which was not granted, out of its queue. Must be
+   * called with the lock held.
+   */
+  protected void cancel(Waiter w) {
+    queues.get(manager.getTable().column(w.type)).remove(w);
+    waiting[w.task.getIndex()] = false;
+    timeouts++;
+  }
+
+  /**
+   * Release the given units of the given Resource type.
+   *
+   * @param taskId
+   *          ID of Task.
+   * @param type
+   *          Type of Resource.
+   * @param units
+   *          Number of units to release.
+   * @throws IllegalArgumentException
+   *           Thrown if the Task does not hold that many units.
+   */
+  public void release(int taskId, int type, int units) {
+    lock.lock();
+    try {
+      Task t = getTask(taskId);
+      if (units < 0
+          || units > manager.getTable().getClaim(t.getIndex(), type)
+          || manager.tryRelease(t, type, units) != Resource.OK) {
+        throw new IllegalArgumentException("Task " + taskId
+            + " cannot release " + units + " units of resource " + type);
+      }
+      grantWaiters();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Release everything the given Task holds and clear its declared claims, so
+   * that it no longer constrains other Tasks. It may then declare new claims.
+   *
+   * @param taskId
+   *          ID of Task.
+   * @throws IllegalStateException
+   *           Thrown if the Task is waiting in another thread.
+   */
+  public void finish(int taskId) {
+    lock.lock();
+    try {
+      Task t = getTask(taskId);
+      if (waiting[t.getIndex()]) {
+        // Its waiter could otherwise be granted more than its cleared claim
+        throw new IllegalStateException("Task " + taskId
+            + " cannot finish while it is waiting.");
+      }
+      manager.releaseAll(t);
+      ResourceTable table = manager.getTable();
+      for (int type = 1; type <= table.getResources(); type++) {
+        table.setMaximum(t.getIndex(), type, 0);
+      }
+      grantWaiters();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  protected boolean tryClaim(Task t, int type, int units) {
+    return manager.claimingResourceIsSafe(tasks, t, type, units)
+        && manager.tryClaim(t, type, units) == Resource.OK;
+  }
+
+  /**
+   * Grant every waiter that is safe, in FIFO order within each queue. Must be
+   * called with the lock held.
+   */
+  protected void grantWaiters() {
+    for (LinkedList<Waiter> queue : queues) {
+      Iterator<Waiter> it = queue.iterator();
+      while (it.hasNext()) {
+        Waiter w = it.next();
+        if (tryClaim(w.task, w.type, w.units)) {
+          it.remove();
+          w.done = true;
+          waiting[w.task.getIndex()] = false;
+          grants++;
+          w.granted.signal();
+        }
+      }
+    }
+  }
+
+  /**
+   * @param type
+   *          Type of Resource.
+   * @return Units of the given Resource type not held by any Task.
+   */
+  public int getAvailable(int type) {
+    lock.lock();
+    try {
+      return manager.getTable().getAvailable(type);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param taskId
+   *          ID of Task.
+   * @param type
+   *          Type of Resource.
+   * @return Units of the given Resource type held by the given Task.
+   */
+  public int getClaim(int taskId, int type) {
+    lock.lock();
+    try {
+      return manager.getTable().getClaim(getTask(taskId).getIndex(), type);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return Number of acquires granted.
+   */
+  public long getGrants() {
+    lock.lock();
+    try {
+      return grants;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return Number of acquires that had to wait.
+   */
+  public long getWaits() {
+    lock.lock();
+    try {
+      return waits;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return Number of acquires that timed out or were interrupted.
+   */
+  public long getTimeouts() {
+    lock.lock();
+    try {
+      return timeouts;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
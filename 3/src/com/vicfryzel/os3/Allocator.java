@@ -2,18 +2,14 @@
 
 package com.vicfryzel.os3;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.StreamTokenizer;
-import java.io.StringBufferInputStream;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,7 +18,6 @@ import java.util.logging.Logger;
  * Abstract representation of an Allocator that can be used to allocate a list
  * of Tasks to completion.
  */
-@SuppressWarnings("deprecation")
 public abstract class Allocator {
   public class AllocatorException extends Exception {
     /**
@@ -35,38 +30,80 @@ public abstract class Allocator {
     }
   }
 
-  protected String input;
+  protected Workload workload;
 
   protected List<Task> tasks;
   protected List<Task> tasksToAdvance;
   protected ResourceManager manager;
 
+  /**
+   * Indexes of the active Tasks whose next Activity is of each Type, by
+   * ordinal of the Type. Kept up to date as Tasks advance and terminate, so
+   * that each phase of a step visits only the Tasks it handles, still in
+   * index order.
+   */
+  protected BitSet[] queues;
+  protected int active;
+
   protected Logger logger;
   protected int cycle;
 
+  /**
+   * Whether step jumps over cycles in which only computations progress.
+   */
+  protected boolean eventDriven;
+
   protected ByteArrayOutputStream data;
   protected PrintStream out;
 
   /**
-   * Create a new Allocator based on the given Reader for input.
+   * Create a new Allocator based on the given input text.
    * 
-   * @param inputReader
-   *          Reader wrapping input stream.
+   * @param input
+   *          Input to parse.
    */
   public Allocator(String input) {
-    this.input = input;
+    this(parse(input));
+  }
 
-    reset();
+  /**
+   * Create a new Allocator for the given Workload, which is shared, not
+   * copied.
+   * 
+   * @param workload
+   *          Parsed input.
+   */
+  public Allocator(Workload workload) {
+    this.workload = workload;
 
     logger = Logger.getLogger("Allocator");
     logger.setLevel(Level.WARNING);
+
+    reset();
+  }
+
+  /**
+   * @param input
+   *          Input text.
+   * @return Workload parsed from input, or an empty Workload if it is not
+   *         valid.
+   */
+  protected static Workload parse(String input) {
+    try {
+      return Workload.parse(input);
+    } catch (Workload.WorkloadException e) {
+      Logger.getLogger("Allocator").severe(
+          "There was an error parsing the input: " + e);
+      return new Workload(new int[0], new int[0][], new int[0]);
+    }
   }
 
   /**
    * Reset this Allocator to an "initial" state.
    */
   protected void reset() {
-    read(input);
+    read(workload);
+    index();
 
     tasksToAdvance = new ArrayList<Task>();
     data = new ByteArrayOutputStream();
@@ -76,93 +113,93 @@ public abstract class Allocator {
   }
 
   /**
-   * Read the given input data, and populate this Allocator with data.
+   * Populate this Allocator with the Tasks and Resources of the given
+   * Workload. Tasks share their scripts of Activities with the Workload.
    * 
-   * @param input
-   *          Data to parse as Allocator input.
+   * @param workload
+   *          Parsed input.
    */
-  protected void read(String input) {
-    StreamTokenizer tokenizer = new StreamTokenizer(
-        new StringBufferInputStream(input));
-    tokenizer.eolIsSignificant(false);
-    tokenizer.parseNumbers();
-
+  protected void read(Workload workload) {
     tasks = new ArrayList<Task>();
-    manager = new ResourceManager();
+    manager = new ResourceManager(workload.getTasks(),
+        workload.getResources());
+    for (int type = 1; type <= workload.getResources(); type++) {
+      manager.add(new Resource(type, workload.getUnits(type)));
+    }
+    for (int i = 0; i < workload.getTasks(); i++) {
+      tasks.add(new Task(i + 1, manager.getTable(), workload.getScript(i),
+          workload.getActivityCount(i)));
+    }
+  }
 
-    try {
-      int next;
-      int numResources = -1;
-      boolean readingResources = false;
-      int numResourcesRead = 0;
-
-      int numTasks = -1;
-
-      int n;
-      String word;
-      while ((next = tokenizer.nextToken()) != StreamTokenizer.TT_EOF) {
-        if (next == StreamTokenizer.TT_NUMBER) {
-          n = (int) tokenizer.nval;
-          if (numTasks == -1) {
-            numTasks = n;
-            for (int taskNum = 0; taskNum < numTasks; taskNum++) {
-              tasks.add(new Task(taskNum + 1));
-            }
-          } else if (numResources == -1) {
-            numResources = n;
-            readingResources = true;
-          } else if (readingResources) {
-            manager.add(new Resource(numResourcesRead + 1, n));
-            numResourcesRead++;
-            if (numResourcesRead == numResources) {
-              readingResources = false;
-            }
-          }
-        } else if (next == StreamTokenizer.TT_WORD) {
-          word = tokenizer.sval;
-          next = tokenizer.nextToken();
-          int taskNum = (int) tokenizer.nval;
-          Task currentTask = tasks.get(taskNum - 1);
-          if (word.equals("initiate")) {
-            next = tokenizer.nextToken();
-            int resourceType = (int) tokenizer.nval;
-            next = tokenizer.nextToken();
-            int initialClaim = (int) tokenizer.nval;
-            currentTask.addActivity(new Activity(Activity.Type.INITIATE,
-                taskNum, resourceType, 0, initialClaim));
-          } else if (word.equals("request")) {
-            next = tokenizer.nextToken();
-            int resourceType = (int) tokenizer.nval;
-            next = tokenizer.nextToken();
-            int numRequested = (int) tokenizer.nval;
-            currentTask.addActivity(new Activity(Activity.Type.REQUEST,
-                taskNum, resourceType, 0, numRequested));
-          } else if (word.equals("release")) {
-            next = tokenizer.nextToken();
-            int resourceType = (int) tokenizer.nval;
-            next = tokenizer.nextToken();
-            int numReleased = (int) tokenizer.nval;
-            currentTask.addActivity(new Activity(Activity.Type.RELEASE,
-                taskNum, resourceType, 0, numReleased));
-          } else if (word.equals("compute")) {
-            next = tokenizer.nextToken();
-            int numCycles = (int) tokenizer.nval;
-            currentTask.addActivity(new Activity(Activity.Type.COMPUTE,
-                taskNum, 0, numCycles, 0));
-          } else if (word.equals("terminate")) {
-            currentTask.addActivity(new Activity(Activity.Type.TERMINATE,
-                taskNum, 0, 0, 0));
-          } else {
-            throw new AllocatorException(word
-                + " is not a valid activity type.");
-          }
-          tasks.set(taskNum - 1, currentTask);
-        }
+  /**
+   * @return Parsed input of this Allocator.
+   */
+  public Workload getWorkload() {
+    return workload;
+  }
+
+  /**
+   * Queue every Task by the Type of its next Activity.
+   */
+  protected void index() {
+    Activity.Type[] types = Activity.Type.values();
+    queues = new BitSet[types.length];
+    for (int k = 0; k < types.length; k++) {
+      queues[k] = new BitSet(tasks.size());
+    }
+    active = 0;
+    for (Task t : tasks) {
+      if (!t.isTerminated()) {
+        queues[t.getNextType().ordinal()].set(t.getIndex());
+        active++;
       }
-    } catch (IOException e) {
-      logger.severe("There was an error reading the input: " + e);
-    } catch (AllocatorException e) {
-      logger.severe("There was an error parsing the input: " + e);
+    }
+  }
+
+  /**
+   * Move the given Task on to its next Activity.
+   * 
+   * @param t
+   *          Task to advance.
+   */
+  protected void advance(Task t) {
+    if (t.isTerminated()) {
+      t.removeNextActivity();
+      return;
+    }
+    queues[t.getNextType().ordinal()].clear(t.getIndex());
+    t.removeNextActivity();
+    queues[t.getNextType().ordinal()].set(t.getIndex());
+  }
+
+  /**
+   * Move the given Task back to an earlier Activity.
+   * 
+   * @param t
+   *          Task to rewind.
+   * @param cursor
+   *          Position of the Activity to move back to, as from
+   *          Task.getCursor.
+   */
+  protected void rewind(Task t, int cursor) {
+    queues[t.getNextType().ordinal()].clear(t.getIndex());
+    t.rewind(cursor);
+    queues[t.getNextType().ordinal()].set(t.getIndex());
+  }
+
+  /**
+   * Take the given Task, which has just terminated or aborted, out of the
+   * queues.
+   * 
+   * @param t
+   *          Task that is no longer active.
+   */
+  protected void dequeue(Task t) {
+    BitSet queue = queues[t.getNextType().ordinal()];
+    if (queue.get(t.getIndex())) {
+      queue.clear(t.getIndex());
+      active--;
     }
   }
 
@@ -188,7 +225,13 @@ public abstract class Allocator {
   public boolean step() {
     boolean retval = true;
 
-    if (getTerminated().size() < tasks.size()) {
+    if (active > 0) {
+      if (eventDriven) {
+        int cycles = getIdleCycles();
+        if (cycles > 0) {
+          skip(cycles);
+        }
+      }
       logger.info("During " + cycle + "-" + (cycle + 1));
       handleInitiates();
       handleRequests();
@@ -197,7 +240,7 @@ public abstract class Allocator {
       handleDeadlocks();
       cycle++;
       for (Task t : tasksToAdvance) {
-        t.removeNextActivity();
+        advance(t);
       }
       tasksToAdvance.clear();
       handleTerminates();
@@ -207,6 +250,87 @@ public abstract class Allocator {
     return retval;
   }
 
+  /**
+   * @param eventDriven
+   *          True to jump over cycles in which only computations progress,
+   *          rather than stepping through them one by one. Times are
+   *          accounted exactly as if they had been stepped through.
+   */
+  public void setEventDriven(boolean eventDriven) {
+    this.eventDriven = eventDriven;
+  }
+
+  public boolean isEventDriven() {
+    return eventDriven;
+  }
+
+  /**
+   * Count the cycles from now in which nothing can happen but computations
+   * counting down: no Task is initiating, releasing or terminating, every
+   * request is one that has already been refused and would be again, and no
+   * computation finishes. Claims and availability cannot change during these
+   * cycles, so neither can the outcome of any request.
+   * 
+   * @return Number of cycles that can be skipped, or 0 if the next cycle must
+   *         be stepped through.
+   */
+  protected int getIdleCycles() {
+    if (hasTasksByCurrentType(Activity.Type.INITIATE)
+        || hasTasksByCurrentType(Activity.Type.RELEASE)
+        || hasTasksByCurrentType(Activity.Type.TERMINATE)
+        || !hasTasksByCurrentType(Activity.Type.COMPUTE)) {
+      return 0;
+    }
+    for (Task t : getTasksByCurrentType(Activity.Type.REQUEST)) {
+      if (!isStalled(t)) {
+        return 0;
+      }
+    }
+    // Stop one cycle short of the first computation to finish, so that it
+    // finishes, and its Task advances, in an ordinary step
+    int cycles = Integer.MAX_VALUE;
+    for (Task t : getTasksByCurrentType(Activity.Type.COMPUTE)) {
+      int remaining = t.getComputeTime() == -1 ? t.getNextNumCycles() : t
+          .getComputeTime();
+      cycles = Math.min(cycles, remaining - 1);
+    }
+    return Math.max(cycles, 0);
+  }
+
+  /**
+   * @param t
+   *          Task whose next Activity is Activity.Type.REQUEST.
+   * @return True if the request of t has been refused, and will be refused
+   *         again for as long as claims and availability do not change.
+   */
+  protected boolean isStalled(Task t) {
+    return false;
+  }
+
+  /**
+   * Account for the given number of cycles in which only computations
+   * progress, as getIdleCycles found, without stepping through them. Each
+   * stalled request waits, and each computation counts down, once per cycle.
+   * 
+   * @param cycles
+   *          Number of cycles to skip.
+   */
+  protected void skip(int cycles) {
+    logger.info("Skipping " + cycle + "-" + (cycle + cycles));
+    for (Task t : getTasksByCurrentType(Activity.Type.REQUEST)) {
+      t.addWaitTime(cycles);
+      t.addTotalTime(cycles);
+    }
+    for (Task t : getTasksByCurrentType(Activity.Type.COMPUTE)) {
+      if (t.getComputeTime() == -1) {
+        t.setComputeTime(t.getNextNumCycles());
+      }
+      t.setComputeTime(t.getComputeTime() - cycles);
+      t.addTotalTime(cycles);
+    }
+    cycle += cycles;
+  }
+
   /**
    * Handle all Tasks whose next Activity is Activity.Type.INITIATE.
    */
@@ -237,6 +361,13 @@ public abstract class Allocator {
    */
   public abstract void handleDeadlocks();
 
+  /**
+   * @return Number of cycles allocated so far.
+   */
+  public int getCycle() {
+    return cycle;
+  }
+
   /**
    * @return List of all Tasks in their current state.
    */
@@ -250,15 +381,23 @@ public abstract class Allocator {
    * @return All Tasks with a next Activity of the given Type.
    */
   public List<Task> getTasksByCurrentType(Activity.Type type) {
-    List<Task> tasks = new ArrayList<Task>();
-    for (Task t : getTasks()) {
-      if (!t.isTerminated() && t.getNextActivity().getType() == type) {
-        tasks.add(t);
-      }
+    BitSet queue = queues[type.ordinal()];
+    List<Task> tasks = new ArrayList<Task>(queue.cardinality());
+    for (int i = queue.nextSetBit(0); i >= 0; i = queue.nextSetBit(i + 1)) {
+      tasks.add(this.tasks.get(i));
     }
     return tasks;
   }
 
+  /**
+   * @param type
+   *          Type to search for.
+   * @return True if any active Task has a next Activity of the given Type.
+   */
+  public boolean hasTasksByCurrentType(Activity.Type type) {
+    return !queues[type.ordinal()].isEmpty();
+  }
+
   /**
    * @return All non-terminated Tasks.
    */
@@ -286,35 +425,150 @@ public abstract class Allocator {
   }
 
   /**
-   * Sends a String task summary to out.
+   * @return Total time of all Tasks that were not aborted.
    */
-  protected void printTaskSummary() {
+  public int getTotalTime() {
+    int retval = 0;
+    for (Task t : getTasks()) {
+      if (!t.isAborted()) {
+        retval += t.getTotalTime();
+      }
+    }
+    return retval;
+  }
+
+  /**
+   * @return Total wait time of all Tasks that were not aborted.
+   */
+  public int getTotalWaitTime() {
+    int retval = 0;
+    for (Task t : getTasks()) {
+      if (!t.isAborted()) {
+        retval += t.getWaitTime();
+      }
+    }
+    return retval;
+  }
+
+  /**
+   * @return Percentage of their total time that Tasks that were not aborted
+   *         spent waiting.
+   */
+  public double getWaitPercentage() {
+    return ((double) getTotalWaitTime() / (double) getTotalTime()) * 100.0;
+  }
+
+  /**
+   * @param percentage
+   *          Percentage to format.
+   * @return Given percentage rounded half up to a whole number, with a "%".
+   */
+  public static String formatPercentage(double percentage) {
     DecimalFormat df = new DecimalFormat("#");
     df.setRoundingMode(RoundingMode.HALF_UP);
     df.setMinimumFractionDigits(0);
+    return df.format(percentage) + "%";
+  }
 
+  /**
+   * Sends a String task summary to out.
+   */
+  protected void printTaskSummary() {
     StringBuilder summary = new StringBuilder();
-    int totalTime = 0;
-    int totalWaitTime = 0;
     for (Task t : getTasks()) {
       summary.append("Task ").append(t.getId()).append("\t\t");
       if (!t.isAborted()) {
-        totalTime += t.getTotalTime();
-        totalWaitTime += t.getWaitTime();
         summary.append(t.getTotalTime()).append("\t").append(t.getWaitTime())
-            .append("\t").append(df.format(t.getWaitPercentage())).append("%");
+            .append("\t").append(formatPercentage(t.getWaitPercentage()));
       } else {
         summary.append("aborted");
       }
       summary.append("\n");
     }
-    double overallPercentage = ((double) totalWaitTime / (double) totalTime) * 100.0;
-    summary.append("total\t\t").append(totalTime).append("\t")
-        .append(totalWaitTime).append("\t")
-        .append(df.format(overallPercentage)).append("%");
+    summary.append("total\t\t").append(getTotalTime()).append("\t")
+        .append(getTotalWaitTime()).append("\t")
+        .append(formatPercentage(getWaitPercentage()));
     out.println(summary.toString());
   }
 
+  /**
+   * @param type
+   *          Type of Allocator, "fifo" or "banker", optionally followed by
+   *          options, each after a "/": the name of a grant policy, the name
+   *          of a victim policy, or "rollback", e.g. "fifo/batch/rollback".
+   * @param workload
+   *          Parsed input, shared by the Allocator.
+   * @return New Allocator of the given type.
+   * @throws IllegalArgumentException
+   *           Thrown if type is not a known Allocator or option.
+   */
+  public static Allocator create(String type, Workload workload) {
+    String[] parts = type.split("/");
+    FIFOAllocator allocator;
+    if (parts[0].equals("fifo")) {
+      allocator = new FIFOAllocator(workload);
+    } else if (parts[0].equals("banker")) {
+      allocator = new BankerAllocator(workload);
+    } else {
+      throw new IllegalArgumentException("Unknown allocator type " + type);
+    }
+    for (int k = 1; k < parts.length; k++) {
+      GrantPolicy grantPolicy = createGrantPolicy(parts[k]);
+      VictimPolicy victimPolicy = createVictimPolicy(parts[k]);
+      if (grantPolicy != null) {
+        allocator.setGrantPolicy(grantPolicy);
+      } else if (victimPolicy != null) {
+        allocator.setVictimPolicy(victimPolicy);
+      } else if (parts[k].equals("rollback")) {
+        allocator.setRollback(true);
+      } else {
+        throw new IllegalArgumentException("Unknown allocator option "
+            + parts[k]);
+      }
+    }
+    return allocator;
+  }
+
+  /**
+   * @param name
+   *          Name of grant policy: "fifo", "smallest" or "batch".
+   * @return New GrantPolicy of the given name, or null if there is none.
+   */
+  public static GrantPolicy createGrantPolicy(String name) {
+    if (name.equals("fifo")) {
+      return new FIFOGrantPolicy();
+    } else if (name.equals("smallest")) {
+      return new SmallestFirstGrantPolicy();
+    } else if (name.equals("batch")) {
+      return new BatchGrantPolicy();
+    }
+    return null;
+  }
+
+  /**
+   * @param name
+   *          Name of victim policy: "lowest", "fewest", "progress" or
+   *          "youngest".
+   * @return New VictimPolicy of the given name, or null if there is none.
+   */
+  public static VictimPolicy createVictimPolicy(String name) {
+    if (name.equals("lowest")) {
+      return new LowestIdVictimPolicy();
+    } else if (name.equals("fewest")) {
+      return new FewestUnitsVictimPolicy();
+    } else if (name.equals("progress")) {
+      return new LeastProgressVictimPolicy();
+    } else if (name.equals("youngest")) {
+      return new YoungestVictimPolicy();
+    }
+    return null;
+  }
+
+  /**
+   * @return Name of this Allocator, as used to head its output.
+   */
+  public abstract String getName();
+
   /**
    * Given an input file, allocate its tasks and output the result to STDOUT.
    * 
@@ -327,33 +581,29 @@ public abstract class Allocator {
       System.exit(1);
     }
 
-    String input = "";
-    byte[] buffer = new byte[(int) new File(args[0]).length()];
-    BufferedInputStream f = null;
+    Workload workload = null;
     try {
-      f = new BufferedInputStream(new FileInputStream(args[0]));
-      f.read(buffer);
+      workload = Workload.read(args[0]);
     } catch (FileNotFoundException e) {
       System.err.println("Could not find file: " + args[0]);
+      System.exit(1);
     } catch (IOException e) {
       e.printStackTrace();
-    } finally {
-      if (f != null) {
-        try {
-          f.close();
-        } catch (Exception ignored) {
-        }
-      } else {
-        System.exit(1);
-      }
+      System.exit(1);
+    } catch (Workload.WorkloadException e) {
+      System.err.println("There was an error parsing the input: "
+          + e.getMessage());
+      System.exit(1);
     }
-    input = new String(buffer);
 
-    Allocator fifo = new FIFOAllocator(input);
-    Allocator banker = new BankerAllocator(input);
+    Allocator fifo = new FIFOAllocator(workload);
+    Allocator banker = new BankerAllocator(workload);
+    // Results are the same either way, but long computations take no time
+    fifo.setEventDriven(true);
+    banker.setEventDriven(true);
 
-    System.out.print("FIFO\n" + fifo.allocateUntilComplete());
+    System.out.print(fifo.getName() + "\n" + fifo.allocateUntilComplete());
     System.out.println();
-    System.out.print("BANKER'S\n" + banker.allocateUntilComplete());
+    System.out.print(banker.getName() + "\n" + banker.allocateUntilComplete());
   }
 }
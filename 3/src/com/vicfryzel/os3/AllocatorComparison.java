@@ -0,0 +1,399 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several Allocators over the same parsed Workload in parallel, and
+ * summarizes their results side by side. A Workload is immutable and every
+ * Allocator builds its own Tasks and ResourceManager from it, so they share
+ * nothing mutable. In batch mode every input file in a directory is parsed
+ * and compared, with all of the parsing and allocation spread over the same
+ * pool of threads.
+ */
+public class AllocatorComparison {
+  protected static final int LABEL_WIDTH = 12;
+  protected static final String[] RECOVERY_LABELS = { "aborts", "rollbacks",
+      "preempted", "lost cycles" };
+  protected static final int COLUMN_WIDTH = 22;
+
+  protected Workload workload;
+  protected List<String> types;
+  protected Map<String, Future<Allocator>> results;
+  protected Map<String, Long> elapsedNanos;
+  protected boolean showTime = true;
+
+  /**
+   * Create a new AllocatorComparison.
+   *
+   * @param workload
+   *          Parsed input to allocate.
+   * @param types
+   *          Allocator types to compare, e.g. "fifo", "banker".
+   */
+  public AllocatorComparison(Workload workload, String[] types) {
+    this.workload = workload;
+    this.types = new ArrayList<String>();
+    for (String type : types) {
+      type = type.trim();
+      // Fail now rather than on a pool thread
+      Allocator.create(type, workload);
+      if (!this.types.contains(type)) {
+        this.types.add(type);
+      }
+    }
+    elapsedNanos = new LinkedHashMap<String, Long>();
+  }
+
+  /**
+   * @param showTime
+   *          False to leave the time taken out of the summary, so that it
+   *          is the same on every run and can be checked against a file.
+   */
+  public void setShowTime(boolean showTime) {
+    this.showTime = showTime;
+  }
+
+  public boolean isShowTime() {
+    return showTime;
+  }
+
+  /**
+   * Start every Allocator on the given executor.
+   *
+   * @param executor
+   *          Executor to run the Allocators on.
+   */
+  public void start(ExecutorService executor) {
+    results = new LinkedHashMap<String, Future<Allocator>>();
+    for (final String type : types) {
+      results.put(type, executor.submit(new Callable<Allocator>() {
+        public Allocator call() {
+          Allocator allocator = Allocator.create(type, workload);
+          allocator.setEventDriven(true);
+          long start = System.nanoTime();
+          allocator.allocateUntilComplete();
+          long elapsed = System.nanoTime() - start;
+          synchronized (elapsedNanos) {
+            elapsedNanos.put(type, elapsed);
+          }
+          return allocator;
+        }
+      }));
+    }
+  }
+
+  /**
+   * Wait for every Allocator started by start to finish.
+   *
+   * @return Finished Allocators, keyed on type, in the order given.
+   */
+  public Map<String, Allocator> await() {
+    Map<String, Allocator> retval = new LinkedHashMap<String, Allocator>();
+    try {
+      for (Map.Entry<String, Future<Allocator>> entry : results.entrySet()) {
+        retval.put(entry.getKey(), entry.getValue().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while comparing", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Allocator failed during comparison",
+          e.getCause());
+    }
+    return retval;
+  }
+
+  /**
+   * Run every Allocator to completion.
+   *
+   * @param threads
+   *          Maximum number of Allocators to run at once.
+   * @return Finished Allocators, keyed on type, in the order given.
+   */
+  public Map<String, Allocator> run(int threads) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+        Math.min(threads, types.size())));
+    try {
+      start(executor);
+      return await();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  protected static String pad(String s, int width) {
+    StringBuilder b = new StringBuilder(s);
+    while (b.length() < width) {
+      b.append(' ');
+    }
+    return b.toString();
+  }
+
+  /**
+   * End the current line, dropping the padding after its last column.
+   */
+  protected static void endLine(StringBuilder b) {
+    int end = b.length();
+    while (end > 0 && b.charAt(end - 1) == ' ') {
+      end--;
+    }
+    b.setLength(end);
+    b.append("\n");
+  }
+
+  /**
+   * @return Cost of deadlock recovery in the given row: deadlocked Tasks
+   *         aborted, rollbacks, units taken from deadlocked Tasks, and
+   *         cycles of their work lost.
+   */
+  protected static long recoveryCost(FIFOAllocator a, int row) {
+    switch (row) {
+    case 0:
+      return a.getAborts();
+    case 1:
+      return a.getRollbacks();
+    case 2:
+      return a.getPreemptedUnits();
+    default:
+      return a.getLostCycles();
+    }
+  }
+
+  protected static String cell(int total, int wait, String percentage) {
+    return String.format(Locale.US, "%6d %6d %5s", total, wait, percentage);
+  }
+
+  /**
+   * @param allocators
+   *          Finished Allocators, as returned by run or await.
+   * @return Summary of every Task under every Allocator, one column per
+   *         Allocator, followed by the grant rate (requests granted per
+   *         cycle), the mean and longest cycles a request waited, the cost
+   *         of deadlock recovery, and the time taken.
+   */
+  public String getSummary(Map<String, Allocator> allocators) {
+    StringBuilder b = new StringBuilder(pad("", LABEL_WIDTH));
+    for (Allocator a : allocators.values()) {
+      // Long names with several options still stay apart
+      b.append(pad(a.getName() + " ", COLUMN_WIDTH));
+    }
+    endLine(b);
+    for (int i = 0; i < workload.getTasks(); i++) {
+      b.append(pad("Task " + (i + 1), LABEL_WIDTH));
+      for (Allocator a : allocators.values()) {
+        Task t = a.getTasks().get(i);
+        b.append(pad(t.isAborted() ? "aborted" : cell(t.getTotalTime(),
+            t.getWaitTime(), Allocator.formatPercentage(t
+                .getWaitPercentage())), COLUMN_WIDTH));
+      }
+      endLine(b);
+    }
+    b.append(pad("total", LABEL_WIDTH));
+    for (Allocator a : allocators.values()) {
+      b.append(pad(cell(a.getTotalTime(), a.getTotalWaitTime(), Allocator
+          .formatPercentage(a.getWaitPercentage())), COLUMN_WIDTH));
+    }
+    endLine(b);
+    b.append(pad("grant rate", LABEL_WIDTH));
+    for (Allocator a : allocators.values()) {
+      b.append(pad(a instanceof FIFOAllocator ? String.format(Locale.US,
+          "%13.3f", ((FIFOAllocator) a).getGrantRate()) : "", COLUMN_WIDTH));
+    }
+    endLine(b);
+    b.append(pad("mean wait", LABEL_WIDTH));
+    for (Allocator a : allocators.values()) {
+      b.append(pad(a instanceof FIFOAllocator ? String.format(Locale.US,
+          "%13.2f", ((FIFOAllocator) a).getMeanGrantWait()) : "",
+          COLUMN_WIDTH));
+    }
+    endLine(b);
+    b.append(pad("longest wait", LABEL_WIDTH));
+    for (Allocator a : allocators.values()) {
+      b.append(pad(a instanceof FIFOAllocator ? String.format(Locale.US,
+          "%13d", ((FIFOAllocator) a).getLongestWait()) : "", COLUMN_WIDTH));
+    }
+    endLine(b);
+    for (int row = 0; row < RECOVERY_LABELS.length; row++) {
+      b.append(pad(RECOVERY_LABELS[row], LABEL_WIDTH));
+      for (Allocator a : allocators.values()) {
+        b.append(pad(a instanceof FIFOAllocator ? String.format(Locale.US,
+            "%13d", recoveryCost((FIFOAllocator) a, row)) : "", COLUMN_WIDTH));
+      }
+      endLine(b);
+    }
+    if (showTime) {
+      b.append(pad("ms", LABEL_WIDTH));
+      for (String type : allocators.keySet()) {
+        Long elapsed;
+        synchronized (elapsedNanos) {
+          elapsed = elapsedNanos.get(type);
+        }
+        b.append(pad(String.format(Locale.US, "%13.3f", elapsed / 1e6),
+            COLUMN_WIDTH));
+      }
+      endLine(b);
+    }
+    return b.toString();
+  }
+
+  /**
+   * Compare Allocators over every input file in a directory, parsing each
+   * file once.
+   *
+   * @param files
+   *          Input files, in the order to report them.
+   * @param types
+   *          Allocator types to compare.
+   * @param threads
+   *          Number of threads to parse and allocate on.
+   * @param showTime
+   *          False to leave the time taken out of each summary.
+   * @return Summary of each file, keyed on file, in the order given.
+   */
+  public static Map<File, String> batch(List<File> files, String[] types,
+      int threads, boolean showTime) throws IOException,
+      Workload.WorkloadException {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+        threads));
+    try {
+      List<Future<Workload>> parsed = new ArrayList<Future<Workload>>();
+      for (final File f : files) {
+        parsed.add(executor.submit(new Callable<Workload>() {
+          public Workload call() throws Exception {
+            return Workload.read(f.getPath());
+          }
+        }));
+      }
+      // Start each comparison as soon as its file is parsed, so that
+      // allocation of earlier files overlaps parsing of later ones
+      List<AllocatorComparison> comparisons =
+          new ArrayList<AllocatorComparison>();
+      for (Future<Workload> w : parsed) {
+        AllocatorComparison c = new AllocatorComparison(get(w), types);
+        c.setShowTime(showTime);
+        c.start(executor);
+        comparisons.add(c);
+      }
+      Map<File, String> retval = new LinkedHashMap<File, String>();
+      for (int k = 0; k < files.size(); k++) {
+        AllocatorComparison c = comparisons.get(k);
+        retval.put(files.get(k), c.getSummary(c.await()));
+      }
+      return retval;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  protected static Workload get(Future<Workload> w) throws IOException,
+      Workload.WorkloadException {
+    try {
+      return w.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while parsing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof Workload.WorkloadException) {
+        throw (Workload.WorkloadException) e.getCause();
+      }
+      throw new IllegalStateException("Failed to parse", e.getCause());
+    }
+  }
+
+  protected static void usage() {
+    System.err.println("Usage: java AllocatorComparison [-t fifo,banker] "
+        + "[-j threads] [-p prefix] [-n] input-file-or-directory");
+    System.exit(1);
+  }
+
+  /**
+   * Given an input file or a directory of input files, compare Allocators
+   * and output the result to STDOUT. Only files in the directory whose names
+   * start with the prefix, "input" by default, are compared.
+   *
+   * @param args
+   *          Command-line arguments.
+   */
+  public static void main(String[] args) {
+    String[] types = { "fifo", "banker" };
+    int threads = Runtime.getRuntime().availableProcessors();
+    String prefix = "input";
+    String path = null;
+    boolean showTime = true;
+    for (int k = 0; k < args.length; k++) {
+      if ((args[k].equals("-t") || args[k].equals("--types"))
+          && k + 1 < args.length) {
+        types = args[++k].split(",");
+      } else if ((args[k].equals("-j") || args[k].equals("--threads"))
+          && k + 1 < args.length) {
+        threads = Integer.parseInt(args[++k]);
+      } else if ((args[k].equals("-p") || args[k].equals("--prefix"))
+          && k + 1 < args.length) {
+        prefix = args[++k];
+      } else if (args[k].equals("-n") || args[k].equals("--no-time")) {
+        showTime = false;
+      } else if (path == null && !args[k].startsWith("-")) {
+        path = args[k];
+      } else {
+        usage();
+      }
+    }
+    if (path == null) {
+      usage();
+    }
+
+    File input = new File(path);
+    try {
+      if (input.isDirectory()) {
+        File[] files = input.listFiles();
+        Arrays.sort(files);
+        List<File> inputs = new ArrayList<File>();
+        for (File f : files) {
+          if (f.isFile() && f.getName().startsWith(prefix)) {
+            inputs.add(f);
+          }
+        }
+        for (Map.Entry<File, String> entry : batch(inputs, types, threads,
+            showTime).entrySet()) {
+          System.out.println("===== " + entry.getKey().getPath() + " =====");
+          System.out.println(entry.getValue());
+        }
+      } else {
+        AllocatorComparison c = new AllocatorComparison(Workload.read(path),
+            types);
+        c.setShowTime(showTime);
+        System.out.print(c.getSummary(c.run(threads)));
+      }
+    } catch (FileNotFoundException e) {
+      System.err.println("Could not find file: " + e.getMessage());
+      System.exit(1);
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    } catch (Workload.WorkloadException e) {
+      System.err.println("There was an error parsing the input: "
+          + e.getMessage());
+      System.exit(1);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      usage();
+    }
+  }
+}
@@ -3,11 +3,31 @@
  */
 package com.vicfryzel.os3;
 
+import java.util.Arrays;
+
 /**
  * @author vic
  * 
  */
 public class BankerAllocator extends FIFOAllocator {
+  /**
+   * Task indexes of the last proven safe sequence, and the units of each
+   * Resource available when it was proven. Valid while the ResourceManager
+   * is still at safeVersion.
+   */
+  protected int[] safeSequence;
+  protected int[] safeAvailable;
+  protected int safeVersion;
+
+  /**
+   * Version of the ResourceManager at which the pending request of each Task
+   * was last refused, or -1. The same request is refused again until a claim,
+   * release or termination changes the state.
+   */
+  protected int[] refusedVersion;
+
+  protected int fullChecks;
+  protected int cachedChecks;
 
   /**
    * (non-Javadoc)
@@ -15,7 +35,24 @@ public class BankerAllocator extends FIFOAllocator {
    * @see com.vicfryzel.os3.Allocator#Allocator()
    */
   public BankerAllocator(String input) {
-    super(input);
+    this(parse(input));
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see com.vicfryzel.os3.Allocator#Allocator(Workload)
+   */
+  public BankerAllocator(Workload workload) {
+    super(workload);
+
+    refusedVersion = new int[tasks.size()];
+    Arrays.fill(refusedVersion, -1);
+  }
+
+  @Override
+  public String getName() {
+    return "BANKER'S" + getOptionsSuffix();
   }
 
   /**
@@ -27,20 +64,25 @@ public class BankerAllocator extends FIFOAllocator {
   public void handleInitiates() {
     for (Task t : getTasksByCurrentType(Activity.Type.INITIATE)) {
       logger.info("Initiating " + t.getId());
-      Activity current = t.getNextActivity();
-      Resource requested = manager.getResourceByType(current.getResourceType());
-      if (requested.getUnits() < current.getResources()) {
+      ResourceTable table = manager.getTable();
+      int type = t.getNextResourceType();
+      int claim = t.getNextResources();
+      if (table.getUnits(type) < claim) {
         StringBuilder b = new StringBuilder();
         b.append("Banker aborts task ").append(t.getId())
             .append(" before run begins:\n").append("claim for resource ")
-            .append(requested.getType()).append(" (")
-            .append(current.getResources())
+            .append(type).append(" (")
+            .append(claim)
             .append(") exceeds number of units present (")
-            .append(requested.getUnits()).append(")");
+            .append(table.getUnits(type)).append(")");
         out.println(b.toString());
         abortTask(t);
       } else {
-        t.setMaximum(requested, current.getResources());
+        table.setMaximum(t.getIndex(), type, claim);
+        // Raising a claim raises the need of a Task that may already hold
+        // units, without a claim or release, so the cached safe sequence
+        // may no longer be safe
+        invalidateSafeSequence();
         tasksToAdvance.add(t);
         t.incrementTotalTime();
         tasks.set(t.getIndex(), t);
@@ -55,31 +97,156 @@ public class BankerAllocator extends FIFOAllocator {
    */
   @Override
   protected void handleRequest(Task t) {
-    Activity current = t.getNextActivity();
-    logger.info("Request from task " + t.getId() + " for "
-        + current.getResources() + " units of resource "
-        + current.getResourceType());
+    int units = t.getNextResources();
+    logger.info("Request from task " + t.getId() + " for " + units
+        + " units of resource " + t.getNextResourceType());
 
-    Resource r = manager.getResourceByType(current.getResourceType());
-    if (t.getCurrentClaim(r) + current.getResources() > t.getMaximum(r)) {
+    Resource r = manager.getResourceByType(t.getNextResourceType());
+    if (units > manager.getTable().getNeed(t.getIndex(), r.getType())) {
       abortTask(t);
     } else {
-      if (manager.claimingResourceIsSafe(tasks, t, current.getResourceType(),
-          current.getResources())
-          && manager
-              .claim(t, current.getResourceType(), current.getResources())) {
-        blocked.remove((Integer) t.getIndex());
+      boolean cached = cachedSequenceIsSafe(t);
+      boolean refused = !cached
+          && refusedVersion[t.getIndex()] == manager.getVersion();
+      if (!cached && !refused) {
+        fullChecks++;
+      }
+      if (!refused
+          && (cached || manager.claimingResourceIsSafe(tasks, t, r.getType(),
+              units)) && manager.tryClaim(t, r, units) == Resource.OK) {
+        if (cached) {
+          cachedChecks++;
+          moveToHead(t);
+          safeAvailable[manager.getTable().column(r.getType())] -= units;
+        } else {
+          safeSequence = manager.getSafeSequence();
+          safeAvailable = manager.getAvailableVector();
+        }
+        safeVersion = manager.getVersion();
+        refusedVersion[t.getIndex()] = -1;
+        blocked.remove(t.getIndex());
+        recordGrant(t);
         tasksToAdvance.add(t);
+        t.incrementTotalTime();
       } else {
-        t.incrementWaitTime();
-        if (!blocked.contains(t.getIndex())) {
-          blocked.add(t.getIndex());
-        }
+        refusedVersion[t.getIndex()] = manager.getVersion();
+        defer(t);
       }
-      t.incrementTotalTime();
     }
   }
 
+  /*
+   * Banker does not detect deadlocks, so waiting requests are not recorded
+   * with the detector.
+   * 
+   * @see com.vicfryzel.os3.FIFOAllocator#defer(com.vicfryzel.os3.Task)
+   */
+  @Override
+  protected void defer(Task t) {
+    t.incrementWaitTime();
+    blocked.add(t.getIndex());
+    requestWait[t.getIndex()]++;
+    t.incrementTotalTime();
+  }
+
+  /*
+   * A blocked request is refused again, without a safety check, until the
+   * state changes.
+   * 
+   * @see com.vicfryzel.os3.FIFOAllocator#isStalled(com.vicfryzel.os3.Task)
+   */
+  @Override
+  protected boolean isStalled(Task t) {
+    return blocked.contains(t.getIndex())
+        && refusedVersion[t.getIndex()] == manager.getVersion();
+  }
+
+  /**
+   * Determine from the cached safe sequence alone whether the given claim is
+   * safe. If the remaining need of t fits within what is available, t can be
+   * moved to the head of the sequence: it can claim part of that need and
+   * still finish first, after which the work vector is at least what it was
+   * before, so the rest of the sequence is still safe.
+   * 
+   * @param t
+   *          Task attempting to claim part of its remaining need.
+   * @return True if the claim is known to be safe, false if a full safety
+   *         check is needed.
+   */
+  protected boolean cachedSequenceIsSafe(Task t) {
+    return safeSequence != null && safeVersion == manager.getVersion()
+        && manager.canFinish(t, safeAvailable);
+  }
+
+  /**
+   * Move the given Task to the head of the cached safe sequence.
+   * 
+   * @param t
+   *          Task that was shown safe to finish first.
+   */
+  protected void moveToHead(Task t) {
+    int k = 0;
+    while (safeSequence[k] != t.getIndex()) {
+      k++;
+    }
+    for (; k > 0; k--) {
+      safeSequence[k] = safeSequence[k - 1];
+    }
+    safeSequence[0] = t.getIndex();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.vicfryzel.os3.FIFOAllocator#handleTerminates()
+   */
+  @Override
+  public void handleTerminates() {
+    // A Task terminating changes what the safety check sees without a claim
+    // or release: units it still holds leave the work vector, and its need
+    // no longer has to be met
+    if (hasTasksByCurrentType(Activity.Type.TERMINATE)) {
+      invalidateSafeSequence();
+    }
+    super.handleTerminates();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.vicfryzel.os3.FIFOAllocator#abortTask(com.vicfryzel.os3.Task)
+   */
+  @Override
+  protected void abortTask(Task t) {
+    super.abortTask(t);
+    // Aborting a Task that holds nothing releases nothing, but its need no
+    // longer has to be met
+    invalidateSafeSequence();
+  }
+
+  /**
+   * Forget the cached safe sequence and refused requests.
+   */
+  protected void invalidateSafeSequence() {
+    safeSequence = null;
+    Arrays.fill(refusedVersion, -1);
+  }
+
+  /**
+   * @return Number of requests that needed a full safety check, not counting
+   *         requests refused again because nothing had changed.
+   */
+  public int getFullChecks() {
+    return fullChecks;
+  }
+
+  /**
+   * @return Number of requests granted using the cached safe sequence alone.
+   */
+  public int getCachedChecks() {
+    return cachedChecks;
+  }
+
   /*
    * Do nothing to handle deadlocks, as Banker does not encounter them.
    * 
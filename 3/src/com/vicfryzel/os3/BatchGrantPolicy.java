@@ -0,0 +1,137 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs each Resource as fully as possible. Of the pending requests for each
+ * Resource type, it selects the subset that grants the most units within
+ * what is available, found by a 0/1 subset sum over the available units, in
+ * which a sum is always reached by the earliest request that can reach it.
+ * Selected requests are attempted first, in FIFO order, and then the rest.
+ * The rest only matter when a selected request is refused for some other
+ * reason, such as Banker's safety check; were they left waiting instead, a
+ * safe request that the packing never selects would wait forever.
+ */
+public class BatchGrantPolicy implements GrantPolicy {
+  /**
+   * Most available units of one Resource to pack exactly. Above this,
+   * requests are selected in FIFO order while they fit.
+   */
+  public static final int MAX_PACKED_UNITS = 1 << 16;
+
+  // Column of each request in the high half and its FIFO position in the low
+  // half, so that sorting groups requests by Resource, in FIFO order
+  protected long[] keys = new long[0];
+  protected int[] fifo = new int[0];
+  protected boolean[] selected = new boolean[0];
+  // FIFO position + 1 of the request that first reached each sum, or 0
+  protected int[] reachedBy = new int[0];
+
+  public int select(int[] pending, int count, List<Task> tasks,
+      ResourceTable table) {
+    if (keys.length < count) {
+      keys = new long[count];
+      fifo = new int[count];
+      selected = new boolean[count];
+    }
+    for (int k = 0; k < count; k++) {
+      long column = table.column(tasks.get(pending[k]).getNextResourceType());
+      keys[k] = (column << 32) | k;
+      fifo[k] = pending[k];
+      selected[k] = false;
+    }
+    Arrays.sort(keys, 0, count);
+
+    int start = 0;
+    while (start < count) {
+      int end = start + 1;
+      while (end < count && keys[end] >>> 32 == keys[start] >>> 32) {
+        end++;
+      }
+      pack(start, end, tasks, table);
+      start = end;
+    }
+
+    int n = 0;
+    for (int k = 0; k < count; k++) {
+      if (selected[k]) {
+        pending[n++] = fifo[k];
+      }
+    }
+    for (int k = 0; k < count; k++) {
+      if (!selected[k]) {
+        pending[n++] = fifo[k];
+      }
+    }
+    return count;
+  }
+
+  protected int units(int key, List<Task> tasks) {
+    return tasks.get(fifo[(int) keys[key]]).getNextResources();
+  }
+
+  /**
+   * Select the requests from keys[start] to keys[end - 1], which are all for
+   * the same Resource.
+   */
+  protected void pack(int start, int end, List<Task> tasks,
+      ResourceTable table) {
+    int type = (int) (keys[start] >>> 32) + 1;
+    int available = table.getAvailable(type);
+    long fitting = 0;
+    for (int k = start; k < end; k++) {
+      int u = units(k, tasks);
+      if (u <= available) {
+        fitting += Math.max(u, 0);
+      }
+    }
+
+    if (fitting <= available || available > MAX_PACKED_UNITS) {
+      // Everything that fits can be granted, or there are too many units to
+      // pack exactly
+      long left = available;
+      for (int k = start; k < end; k++) {
+        int u = units(k, tasks);
+        if (u <= left) {
+          selected[(int) keys[k]] = true;
+          left -= Math.max(u, 0);
+        }
+      }
+      return;
+    }
+
+    if (reachedBy.length < available + 1) {
+      reachedBy = new int[available + 1];
+    }
+    Arrays.fill(reachedBy, 0, available + 1, 0);
+    reachedBy[0] = -1;
+    int best = 0;
+    for (int k = start; k < end; k++) {
+      int u = units(k, tasks);
+      if (u <= 0) {
+        selected[(int) keys[k]] = true;
+        continue;
+      }
+      // Descending, so that each request is used at most once
+      for (int s = available; s >= u; s--) {
+        if (reachedBy[s] == 0 && reachedBy[s - u] != 0) {
+          reachedBy[s] = (int) keys[k] + 1;
+          best = Math.max(best, s);
+        }
+      }
+    }
+    int s = best;
+    while (s > 0) {
+      int position = reachedBy[s] - 1;
+      selected[position] = true;
+      s -= tasks.get(fifo[position]).getNextResources();
+    }
+  }
+
+  public String getName() {
+    return "batch";
+  }
+}
@@ -0,0 +1,234 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Detects deadlocks in a resource-allocation graph with multiple units of
+ * each Resource. Allocation edges are the claims in a ResourceTable; request
+ * edges are kept here, one per blocked Task, as the allocator blocks and
+ * grants requests.
+ * 
+ * Detection reduces the graph: any Task that is not waiting, or whose request
+ * fits within the work vector, can finish and return its claims to the work
+ * vector. Waiting Tasks are bucketed by Resource type and sorted by units
+ * requested, so each time the work vector grows for a type only the newly
+ * satisfiable waiters are visited, and the whole reduction is a single pass
+ * over the Tasks. Whatever cannot be reduced is deadlocked.
+ */
+public class DeadlockDetector {
+  protected ResourceTable table;
+  protected List<Task> tasks;
+
+  // Request edges, by Task index; a type of 0 means not waiting
+  protected int[] requestType;
+  protected int[] requestUnits;
+  protected int requests;
+
+  // State of the last reduction
+  protected int[] work;
+  protected boolean[] finished;
+  protected long[] waiting;
+  protected int[] waitingNext;
+  protected int[] waitingEnd;
+  protected int[] queue;
+  protected int queueHead;
+  protected int queueTail;
+
+  /**
+   * Create a new DeadlockDetector.
+   * 
+   * @param table
+   *          Table holding the claims of every Task.
+   */
+  public DeadlockDetector(ResourceTable table) {
+    this.table = table;
+    int n = table.getTasks();
+    int m = table.getResources();
+    requestType = new int[n];
+    requestUnits = new int[n];
+    work = new int[m];
+    finished = new boolean[n];
+    waiting = new long[n];
+    waitingNext = new int[m];
+    waitingEnd = new int[m];
+    queue = new int[n];
+  }
+
+  /**
+   * Record that the given Task is blocked requesting the given units.
+   * 
+   * @param task
+   *          Index of Task.
+   * @param type
+   *          Type of Resource requested.
+   * @param units
+   *          Number of units requested.
+   */
+  public void request(int task, int type, int units) {
+    table.column(type);
+    if (requestType[task] == 0) {
+      requests++;
+    }
+    requestType[task] = type;
+    requestUnits[task] = units;
+  }
+
+  /**
+   * Record that the given Task is no longer waiting.
+   * 
+   * @param task
+   *          Index of Task.
+   */
+  public void clear(int task) {
+    if (requestType[task] != 0) {
+      requests--;
+      requestType[task] = 0;
+    }
+  }
+
+  /**
+   * @param task
+   *          Index of Task.
+   * @return True if the given Task is blocked on a request.
+   */
+  public boolean isWaiting(int task) {
+    return requestType[task] != 0;
+  }
+
+  /**
+   * @return Number of Tasks blocked on a request.
+   */
+  public int getWaiting() {
+    return requests;
+  }
+
+  /**
+   * Reduce the resource-allocation graph from the current state.
+   * 
+   * @param tasks
+   *          All Tasks; terminated Tasks are left out of the graph.
+   * @return Indexes of the deadlocked Tasks, in increasing order.
+   */
+  public int[] detect(List<Task> tasks) {
+    this.tasks = tasks;
+    int n = tasks.size();
+    int m = table.getResources();
+    System.arraycopy(table.available, 0, work, 0, m);
+    queueHead = 0;
+    queueTail = 0;
+    if (requests == 0) {
+      Arrays.fill(finished, true);
+      return new int[0];
+    }
+
+    // Bucket the waiting Tasks by column, then sort each bucket by units
+    Arrays.fill(waitingEnd, 0);
+    for (int i = 0; i < n; i++) {
+      finished[i] = tasks.get(i).isTerminated();
+      if (!finished[i] && requestType[i] != 0) {
+        waitingEnd[requestType[i] - 1]++;
+      }
+    }
+    int start = 0;
+    for (int j = 0; j < m; j++) {
+      int count = waitingEnd[j];
+      waitingNext[j] = start;
+      waitingEnd[j] = start;
+      start += count;
+    }
+    for (int i = 0; i < n; i++) {
+      if (finished[i]) {
+        continue;
+      }
+      if (requestType[i] == 0) {
+        queue[queueTail++] = i;
+      } else {
+        int j = requestType[i] - 1;
+        waiting[waitingEnd[j]++] = ((long) requestUnits[i] << 32) | i;
+      }
+    }
+    for (int j = 0; j < m; j++) {
+      Arrays.sort(waiting, waitingNext[j], waitingEnd[j]);
+      wake(j);
+    }
+    reduce();
+    return getDeadlocked();
+  }
+
+  /**
+   * Take the given deadlocked Task out of the graph, as if it had been aborted,
+   * and continue the last reduction with its claims returned. Must be called
+   * before its claims are actually released.
+   * 
+   * @param task
+   *          Index of Task to remove.
+   * @return Indexes of the Tasks that are still deadlocked, in increasing
+   *         order.
+   */
+  public int[] removeVictim(int task) {
+    clear(task);
+    if (!finished[task]) {
+      finish(task);
+      reduce();
+    }
+    return getDeadlocked();
+  }
+
+  protected void reduce() {
+    while (queueHead < queueTail) {
+      int i = queue[queueHead++];
+      if (!finished[i]) {
+        finish(i);
+      }
+    }
+  }
+
+  /**
+   * Mark the given Task finished, returning its claims to the work vector.
+   */
+  protected void finish(int i) {
+    finished[i] = true;
+    int m = table.getResources();
+    int row = i * m;
+    for (int j = 0; j < m; j++) {
+      int claimed = table.claims[row + j];
+      if (claimed != 0) {
+        work[j] += claimed;
+        wake(j);
+      }
+    }
+  }
+
+  /**
+   * Queue every Task waiting on column j whose request now fits.
+   */
+  protected void wake(int j) {
+    int k = waitingNext[j];
+    int end = waitingEnd[j];
+    while (k < end && (int) (waiting[k] >>> 32) <= work[j]) {
+      queue[queueTail++] = (int) waiting[k];
+      k++;
+    }
+    waitingNext[j] = k;
+  }
+
+  protected int[] getDeadlocked() {
+    int count = 0;
+    for (int i = 0; i < tasks.size(); i++) {
+      if (!finished[i]) {
+        count++;
+      }
+    }
+    int[] retval = new int[count];
+    count = 0;
+    for (int i = 0; i < tasks.size(); i++) {
+      if (!finished[i]) {
+        retval[count++] = i;
+      }
+    }
+    return retval;
+  }
+}
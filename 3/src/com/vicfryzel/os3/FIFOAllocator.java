@@ -3,19 +3,57 @@
 package com.vicfryzel.os3;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Allocates Tasks in a FIFO manner. Efficient, but can have deadlocks.
  */
 public class FIFOAllocator extends Allocator {
   /**
-   * A list of task IDs that are currently blocked.
+   * Indexes of the Tasks that are currently blocked, in the order they
+   * blocked.
    */
-  protected List<Integer> blocked;
+  protected Set<Integer> blocked;
+
+  protected DeadlockDetector detector;
+  protected VictimPolicy victimPolicy;
+
+  protected GrantPolicy grantPolicy;
+  // Indexes of the Tasks with pending requests this cycle
+  protected int[] pending;
+
+  // Cycles the pending request of each Task has waited so far
+  protected int[] requestWait;
+  protected int grants;
+  protected long grantWait;
+  protected int longestWait;
+
+  /**
+   * Most times a single Task may be rolled back before it is aborted
+   * instead, so that Tasks cannot keep taking units from each other forever.
+   */
+  public static final int MAX_ROLLBACKS = 3;
+
+  protected boolean rollback;
+  // Requests of each Task granted since its last release, four ints each:
+  // position of the request, progress when it was granted, Resource type and
+  // units
+  protected int[][] checkpoints;
+  protected int[] checkpointCount;
+  protected int[] rollbackCount;
+  // Tasks just rolled back, whose requests wait until another Task is granted
+  protected boolean[] heldBack;
+  // Indexes set in heldBack, so that a grant clears only those
+  protected List<Integer> heldBackTasks;
+
+  protected int aborts;
+  protected int rollbacks;
+  protected long preemptedUnits;
+  protected long lostCycles;
 
   /**
    * (non-Javadoc)
@@ -23,9 +61,89 @@ public class FIFOAllocator extends Allocator {
    * @see com.vicfryzel.os3.Allocator#Allocator()
    */
   public FIFOAllocator(String input) {
-    super(input);
+    this(parse(input));
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see com.vicfryzel.os3.Allocator#Allocator(Workload)
+   */
+  public FIFOAllocator(Workload workload) {
+    super(workload);
+
+    blocked = new LinkedHashSet<Integer>();
+    detector = new DeadlockDetector(manager.getTable());
+    victimPolicy = new LowestIdVictimPolicy();
+    grantPolicy = new FIFOGrantPolicy();
+    pending = new int[tasks.size()];
+    requestWait = new int[tasks.size()];
+    checkpoints = new int[tasks.size()][];
+    checkpointCount = new int[tasks.size()];
+    rollbackCount = new int[tasks.size()];
+    heldBack = new boolean[tasks.size()];
+    heldBackTasks = new ArrayList<Integer>();
+  }
+
+  /**
+   * @param victimPolicy
+   *          Policy choosing which deadlocked Task to abort.
+   */
+  public void setVictimPolicy(VictimPolicy victimPolicy) {
+    this.victimPolicy = victimPolicy;
+  }
+
+  public VictimPolicy getVictimPolicy() {
+    return victimPolicy;
+  }
+
+  /**
+   * @param grantPolicy
+   *          Policy choosing which pending requests to attempt each cycle.
+   */
+  public void setGrantPolicy(GrantPolicy grantPolicy) {
+    this.grantPolicy = grantPolicy;
+  }
+
+  public GrantPolicy getGrantPolicy() {
+    return grantPolicy;
+  }
+
+  /**
+   * @param rollback
+   *          True to recover from deadlock by rolling the victim back to an
+   *          earlier request, taking only as many of its units as let another
+   *          deadlocked Task proceed, instead of aborting it.
+   */
+  public void setRollback(boolean rollback) {
+    this.rollback = rollback;
+  }
+
+  public boolean isRollback() {
+    return rollback;
+  }
 
-    blocked = new ArrayList<Integer>();
+  @Override
+  public String getName() {
+    return "FIFO" + getOptionsSuffix();
+  }
+
+  /**
+   * @return Names of the options to append to the name of this Allocator,
+   *         leaving out the defaults.
+   */
+  protected String getOptionsSuffix() {
+    String suffix = "";
+    if (!(grantPolicy instanceof FIFOGrantPolicy)) {
+      suffix += "/" + grantPolicy.getName().toUpperCase();
+    }
+    if (!(victimPolicy instanceof LowestIdVictimPolicy)) {
+      suffix += "/" + victimPolicy.getName().toUpperCase();
+    }
+    if (rollback) {
+      suffix += "/ROLLBACK";
+    }
+    return suffix;
   }
 
   /*
@@ -37,9 +155,8 @@ public class FIFOAllocator extends Allocator {
   public void handleInitiates() {
     for (Task t : getTasksByCurrentType(Activity.Type.INITIATE)) {
       logger.info("Initiating " + t.getId());
-      Activity current = t.getNextActivity();
-      t.setMaximum(manager.getResourceByType(current.getResourceType()),
-          current.getResources());
+      manager.getTable().setMaximum(t.getIndex(), t.getNextResourceType(),
+          t.getNextResources());
       tasksToAdvance.add(t);
       t.incrementTotalTime();
     }
@@ -52,20 +169,27 @@ public class FIFOAllocator extends Allocator {
    */
   @Override
   public void handleRequests() {
-    List<Integer> visited = new ArrayList<Integer>();
-    // Avoid concurrent modification
-    List<Integer> currentBlocked = new ArrayList<Integer>(blocked);
-    Collections.copy(currentBlocked, blocked);
-    for (int index : currentBlocked) {
-      Task t = getTasks().get(index);
-      if (!t.isTerminated()) {
-        handleRequest(t);
-        visited.add(t.getIndex());
+    // Blocked Tasks first, in the order they blocked, then new requests
+    int count = 0;
+    for (int index : blocked) {
+      if (!tasks.get(index).isTerminated()) {
+        pending[count++] = index;
       }
     }
-    for (Task t : getTasksByCurrentType(Activity.Type.REQUEST)) {
-      if (!visited.contains(t.getIndex())) {
+    BitSet queue = queues[Activity.Type.REQUEST.ordinal()];
+    for (int i = queue.nextSetBit(0); i >= 0; i = queue.nextSetBit(i + 1)) {
+      if (!blocked.contains(i)) {
+        pending[count++] = i;
+      }
+    }
+    int attempted = grantPolicy.select(pending, count, tasks,
+        manager.getTable());
+    for (int k = 0; k < count; k++) {
+      Task t = tasks.get(pending[k]);
+      if (k < attempted && !heldBack[t.getIndex()]) {
         handleRequest(t);
+      } else {
+        defer(t);
       }
     }
   }
@@ -77,22 +201,169 @@ public class FIFOAllocator extends Allocator {
    *          Task from which to handle request.
    */
   protected void handleRequest(Task t) {
-    Activity current = t.getNextActivity();
-    logger.info("Request from task " + t.getId() + " for "
-        + current.getResources() + " units of resource "
-        + current.getResourceType());
-    if (manager.claim(t, current.getResourceType(), current.getResources())) {
-      blocked.remove((Integer) t.getIndex());
+    int type = t.getNextResourceType();
+    int units = t.getNextResources();
+    logger.info("Request from task " + t.getId() + " for " + units
+        + " units of resource " + type);
+    if (manager.tryClaim(t, type, units) == Resource.OK) {
+      blocked.remove(t.getIndex());
+      detector.clear(t.getIndex());
+      recordGrant(t);
       tasksToAdvance.add(t);
+      t.incrementTotalTime();
     } else {
-      t.incrementWaitTime();
-      if (!blocked.contains(t.getIndex())) {
-        blocked.add(t.getIndex());
-      }
+      defer(t);
     }
+  }
+
+  /**
+   * Make the request of the given Task wait until the next cycle, either
+   * because it was refused or because the grant policy did not attempt it.
+   * 
+   * @param t
+   *          Task whose request waits.
+   */
+  protected void defer(Task t) {
+    detector.request(t.getIndex(), t.getNextResourceType(),
+        t.getNextResources());
+    t.incrementWaitTime();
+    blocked.add(t.getIndex());
+    requestWait[t.getIndex()]++;
     t.incrementTotalTime();
   }
 
+  /**
+   * Record how long the request of the given Task waited before its grant.
+   * 
+   * @param t
+   *          Task whose request was granted.
+   */
+  protected void recordGrant(Task t) {
+    int i = t.getIndex();
+    int wait = requestWait[i];
+    grants++;
+    grantWait += wait;
+    longestWait = Math.max(longestWait, wait);
+    requestWait[i] = 0;
+    if (rollback) {
+      for (int k : heldBackTasks) {
+        heldBack[k] = false;
+      }
+      heldBackTasks.clear();
+      checkpoint(t);
+    }
+  }
+
+  /**
+   * Remember the request of the given Task that is being granted, so that it
+   * can be rolled back to.
+   * 
+   * @param t
+   *          Task whose request was granted.
+   */
+  protected void checkpoint(Task t) {
+    int i = t.getIndex();
+    int offset = checkpointCount[i] * 4;
+    if (checkpoints[i] == null) {
+      checkpoints[i] = new int[8];
+    } else if (offset == checkpoints[i].length) {
+      checkpoints[i] = Arrays.copyOf(checkpoints[i], offset * 2);
+    }
+    checkpoints[i][offset] = t.getCursor();
+    checkpoints[i][offset + 1] = t.getTotalTime() - t.getWaitTime();
+    checkpoints[i][offset + 2] = t.getNextResourceType();
+    checkpoints[i][offset + 3] = t.getNextResources();
+    checkpointCount[i]++;
+  }
+
+  /**
+   * @return Number of requests granted.
+   */
+  public int getGrants() {
+    return grants;
+  }
+
+  /**
+   * @return Requests granted per cycle.
+   */
+  public double getGrantRate() {
+    return cycle == 0 ? 0 : (double) grants / cycle;
+  }
+
+  /**
+   * @return Mean cycles a granted request waited before its grant.
+   */
+  public double getMeanGrantWait() {
+    return grants == 0 ? 0 : (double) grantWait / grants;
+  }
+
+  /**
+   * @return Most cycles any request waited, whether it was eventually
+   *         granted or its Task was aborted while waiting.
+   */
+  public int getLongestWait() {
+    return longestWait;
+  }
+
+  /**
+   * @return Number of deadlocked Tasks aborted.
+   */
+  public int getAborts() {
+    return aborts;
+  }
+
+  /**
+   * @return Number of times a deadlocked Task was rolled back.
+   */
+  public int getRollbacks() {
+    return rollbacks;
+  }
+
+  /**
+   * @return Units taken from deadlocked Tasks, by aborts and rollbacks.
+   */
+  public long getPreemptedUnits() {
+    return preemptedUnits;
+  }
+
+  /**
+   * @return Cycles of work lost by deadlocked Tasks: all of the work of an
+   *         aborted Task, and the work since its checkpoint of a Task rolled
+   *         back.
+   */
+  public long getLostCycles() {
+    return lostCycles;
+  }
+
+  /*
+   * A blocked request is refused for as long as there are not enough units
+   * available.
+   * 
+   * @see com.vicfryzel.os3.Allocator#isStalled(com.vicfryzel.os3.Task)
+   */
+  @Override
+  protected boolean isStalled(Task t) {
+    return blocked.contains(t.getIndex())
+        && t.getNextResources() > manager.getTable().getAvailable(
+            t.getNextResourceType());
+  }
+
+  /*
+   * Cycles cannot be skipped while the blocked Tasks are deadlocked, as the
+   * next step must abort them.
+   * 
+   * @see com.vicfryzel.os3.Allocator#getIdleCycles()
+   */
+  @Override
+  protected int getIdleCycles() {
+    int cycles = super.getIdleCycles();
+    if (cycles > 0 && detector.getWaiting() > 0
+        && detector.detect(tasks).length > 0) {
+      cycles = 0;
+    }
+    return cycles;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -100,16 +371,18 @@ public class FIFOAllocator extends Allocator {
    */
   @Override
   public void handleReleases() {
-    Activity current = null;
     for (Task t : getTasksByCurrentType(Activity.Type.RELEASE)) {
-      current = t.getNextActivity();
-      logger.info("Release from task " + t.getId() + " for "
-          + current.getResources() + " units of resource "
-          + current.getResourceType());
-      if (manager.release(t, current.getResourceType(), current.getResources())) {
+      int type = t.getNextResourceType();
+      int units = t.getNextResources();
+      logger.info("Release from task " + t.getId() + " for " + units
+          + " units of resource " + type);
+      if (manager.tryRelease(t, type, units) == Resource.OK) {
         // t.release(manager.getResourceByType(current.getResourceType()),
         // current.getResources());
         tasksToAdvance.add(t);
+        // Released units cannot be taken back, so nothing before this
+        // release can be rolled back to
+        checkpointCount[t.getIndex()] = 0;
       }
       t.incrementTotalTime();
     }
@@ -122,11 +395,9 @@ public class FIFOAllocator extends Allocator {
    */
   @Override
   public void handleComputes() {
-    Activity current = null;
     for (Task t : getTasksByCurrentType(Activity.Type.COMPUTE)) {
-      current = t.getNextActivity();
       if (t.getComputeTime() == -1) {
-        t.setComputeTime(current.getNumCycles());
+        t.setComputeTime(t.getNextNumCycles());
       }
       logger.info("Computing " + t.getId() + " " + t.getComputeTime());
       t.decrementComputeTime();
@@ -148,35 +419,109 @@ public class FIFOAllocator extends Allocator {
     for (Task t : getTasksByCurrentType(Activity.Type.TERMINATE)) {
       logger.info("Terminating " + t.getId());
       t.terminate();
+      dequeue(t);
       // Do not increment total time for terminate activity
     }
   }
 
+  /*
+   * Abort deadlocked Tasks, as chosen by the victim policy, until the rest can
+   * proceed. With rollback, a victim is rolled back instead while it can be.
+   * 
+   * @see com.vicfryzel.os3.Allocator#handleDeadlocks()
+   */
+  @Override
   public void handleDeadlocks() {
-    List<Task> requests = getTasksByCurrentType(Activity.Type.REQUEST);
-    List<Integer> releases = new ArrayList<Integer>();
-    for (Task t : getTasksByCurrentType(Activity.Type.RELEASE)) {
-      releases.add(t.getNextActivity().getResourceType());
-    }
-    // If there is any unblocked request, we're not deadlocked yet.
-    if (blocked.size() > 1 && blocked.size() >= requests.size()) {
-      Task aborted = null;
-
-      // Are two or more waiting on the same resource?
-      Map<Integer, Integer> required = new HashMap<Integer, Integer>();
-
-      for (Task t : requests) {
-        int type = t.getNextActivity().getResourceType();
-        if (!tasksToAdvance.contains(t) && !releases.contains(type)) {
-          if (required.containsKey(type)) {
-            aborted = tasks.get(required.get(type));
-            abortTask(aborted);
-            blocked.remove((Integer) t.getIndex());
-          }
-          required.put(type, t.getIndex());
+    if (detector.getWaiting() == 0) {
+      return;
+    }
+    int[] deadlocked = detector.detect(tasks);
+    while (deadlocked.length > 0) {
+      int victim = victimPolicy.choose(deadlocked, tasks, manager.getTable());
+      Task t = tasks.get(victim);
+      if (rollback && rollBack(t, deadlocked)) {
+        deadlocked = detector.detect(tasks);
+      } else {
+        aborts++;
+        lostCycles += t.getTotalTime() - t.getWaitTime();
+        for (int type = 1; type <= manager.getTable().getResources(); type++) {
+          preemptedUnits += manager.getTable().getClaim(victim, type);
         }
+        deadlocked = detector.removeVictim(victim);
+        blocked.remove(victim);
+        abortTask(t);
+      }
+    }
+  }
+
+  /**
+   * Roll the given deadlocked Task back one granted request at a time,
+   * returning the units of each, until the request of another deadlocked Task
+   * fits. The Task then makes its earliest rolled back request again, after
+   * another Task has been granted.
+   * 
+   * @param t
+   *          Deadlocked Task chosen as victim.
+   * @param deadlocked
+   *          Indexes of all deadlocked Tasks.
+   * @return True if the Task was rolled back, false if it has nothing to roll
+   *         back or has been rolled back too often, and must be aborted.
+   */
+  protected boolean rollBack(Task t, int[] deadlocked) {
+    int i = t.getIndex();
+    if (checkpointCount[i] == 0 || rollbackCount[i] >= MAX_ROLLBACKS) {
+      return false;
+    }
+    logger.info("Rolling back " + t.getId());
+    int progress = t.getTotalTime() - t.getWaitTime();
+    int offset;
+    boolean fits;
+    do {
+      offset = --checkpointCount[i] * 4;
+      int type = checkpoints[i][offset + 2];
+      int units = checkpoints[i][offset + 3];
+      if (manager.tryRelease(t, type, units) != Resource.OK) {
+        throw new IllegalStateException("Task " + t.getId()
+            + " no longer holds " + units + " units of resource " + type);
+      }
+      preemptedUnits += units;
+      fits = otherRequestFits(i, deadlocked);
+    } while (!fits && checkpointCount[i] > 0);
+
+    rollbacks++;
+    rollbackCount[i]++;
+    lostCycles += progress - checkpoints[i][offset + 1];
+    rewind(t, checkpoints[i][offset]);
+    detector.request(i, t.getNextResourceType(), t.getNextResources());
+    // To the back of the queue, and held back if another Task can proceed,
+    // so that it does not just claim the same units again
+    blocked.remove(i);
+    blocked.add(i);
+    heldBack[i] = fits;
+    if (fits) {
+      heldBackTasks.add(i);
+    }
+    return true;
+  }
+
+  /**
+   * @param victim
+   *          Index of the Task being rolled back.
+   * @param deadlocked
+   *          Indexes of all deadlocked Tasks.
+   * @return True if the request of a deadlocked Task other than the victim
+   *         fits in the available units.
+   */
+  protected boolean otherRequestFits(int victim, int[] deadlocked) {
+    for (int i : deadlocked) {
+      Task t = tasks.get(i);
+      if (i != victim && !heldBack[i]
+          && t.getNextResources() <= manager.getTable().getAvailable(
+              t.getNextResourceType())) {
+        return true;
       }
     }
+    return false;
   }
 
   /**
@@ -187,7 +532,13 @@ public class FIFOAllocator extends Allocator {
    */
   protected void abortTask(Task t) {
     logger.info("Aborting " + t.getId());
+    longestWait = Math.max(longestWait, requestWait[t.getIndex()]);
+    requestWait[t.getIndex()] = 0;
+    checkpointCount[t.getIndex()] = 0;
+    heldBack[t.getIndex()] = false;
+    detector.clear(t.getIndex());
     manager.releaseAll(t);
+    dequeue(t);
     t.abort();
   }
 }
@@ -0,0 +1,19 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.List;
+
+/**
+ * Attempts every pending request, in FIFO order.
+ */
+public class FIFOGrantPolicy implements GrantPolicy {
+  public int select(int[] pending, int count, List<Task> tasks,
+      ResourceTable table) {
+    return count;
+  }
+
+  public String getName() {
+    return "fifo";
+  }
+}
@@ -0,0 +1,32 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.List;
+
+/**
+ * Aborts the deadlocked Task holding the fewest units of all Resources, so
+ * that the least is taken from any one Task. Ties go to the lowest numbered
+ * Task.
+ */
+public class FewestUnitsVictimPolicy implements VictimPolicy {
+  public int choose(int[] deadlocked, List<Task> tasks, ResourceTable table) {
+    int victim = deadlocked[0];
+    long fewest = Long.MAX_VALUE;
+    for (int i : deadlocked) {
+      long held = 0;
+      for (int type = 1; type <= table.getResources(); type++) {
+        held += table.getClaim(i, type);
+      }
+      if (held < fewest) {
+        fewest = held;
+        victim = i;
+      }
+    }
+    return victim;
+  }
+
+  public String getName() {
+    return "fewest";
+  }
+}
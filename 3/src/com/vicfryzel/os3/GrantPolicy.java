@@ -0,0 +1,33 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.List;
+
+/**
+ * Chooses which pending requests to attempt in a cycle, and in what order.
+ * Requests that are not attempted wait until the next cycle, as if they had
+ * been refused.
+ */
+public interface GrantPolicy {
+  /**
+   * @param pending
+   *          Indexes of the Tasks with pending requests, in FIFO order:
+   *          blocked Tasks in the order they blocked, then new requests in
+   *          index order. Reordered in place so that the requests to attempt
+   *          come first, in the order to attempt them.
+   * @param count
+   *          Number of pending requests, from the start of pending.
+   * @param tasks
+   *          All Tasks.
+   * @param table
+   *          Claims, maximums and availability of all Resources.
+   * @return Number of requests, from the start of pending, to attempt.
+   */
+  int select(int[] pending, int count, List<Task> tasks, ResourceTable table);
+
+  /**
+   * @return Name of this policy, as used to choose it.
+   */
+  String getName();
+}
@@ -0,0 +1,30 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.List;
+
+/**
+ * Aborts the deadlocked Task that has made the least progress, counted as
+ * the cycles it has spent other than waiting, so that the least work is
+ * lost. Ties go to the lowest numbered Task.
+ */
+public class LeastProgressVictimPolicy implements VictimPolicy {
+  public int choose(int[] deadlocked, List<Task> tasks, ResourceTable table) {
+    int victim = deadlocked[0];
+    int least = Integer.MAX_VALUE;
+    for (int i : deadlocked) {
+      Task t = tasks.get(i);
+      int progress = t.getTotalTime() - t.getWaitTime();
+      if (progress < least) {
+        least = progress;
+        victim = i;
+      }
+    }
+    return victim;
+  }
+
+  public String getName() {
+    return "progress";
+  }
+}
@@ -0,0 +1,18 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.List;
+
+/**
+ * Aborts the lowest numbered deadlocked Task.
+ */
+public class LowestIdVictimPolicy implements VictimPolicy {
+  public int choose(int[] deadlocked, List<Task> tasks, ResourceTable table) {
+    return deadlocked[0];
+  }
+
+  public String getName() {
+    return "lowest";
+  }
+}
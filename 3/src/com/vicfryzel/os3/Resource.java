@@ -3,7 +3,8 @@
 package com.vicfryzel.os3;
 
 /**
- * Represents a single Resource that is available for allocation.
+ * Represents a single Resource that is available for allocation. Once added
+ * to a ResourceManager, its units are kept in the manager's ResourceTable.
  */
 public class Resource {
   public class ResourceException extends Exception {
@@ -14,9 +15,27 @@ public class Resource {
     }
   }
 
+  /**
+   * Status of a claim or release that was made.
+   */
+  public static final int OK = 0;
+  /**
+   * Status of a claim of more units than are available.
+   */
+  public static final int UNAVAILABLE = 1;
+  /**
+   * Status of a claim of more units than the Resource has in total.
+   */
+  public static final int EXCEEDS_UNITS = 2;
+  /**
+   * Status of a release that would leave more units available than the
+   * Resource has in total.
+   */
+  public static final int OVER_RELEASE = 3;
+
   protected int type;
   protected int units;
-  protected int availableUnits;
+  protected ResourceTable table;
 
   /**
    * Create a new Resource.
@@ -29,19 +48,31 @@ public class Resource {
   public Resource(int type, int units) {
     this.type = type;
     this.units = units;
-    this.availableUnits = units;
   }
 
   /**
-   * Create a clone of another Resource.
+   * Create a view of the given type of Resource in the given table.
    * 
-   * @param other
-   *          Resource to clone.
+   * @param table
+   *          Table holding the units of this Resource.
+   * @param type
+   *          Type of this Resource.
    */
-  public Resource(Resource other) {
-    this.type = other.type;
-    this.units = other.units;
-    this.availableUnits = other.availableUnits;
+  public Resource(ResourceTable table, int type) {
+    this.type = type;
+    this.units = table.getUnits(type);
+    this.table = table;
+  }
+
+  /**
+   * Keep the units of this Resource in the given table from now on.
+   * 
+   * @param table
+   *          Table to hold the units of this Resource.
+   */
+  protected void attach(ResourceTable table) {
+    table.setUnits(type, units);
+    this.table = table;
   }
 
   /**
@@ -62,7 +93,31 @@ public class Resource {
    * @return Number of units this resource currently has available.
    */
   public int getAvailableUnits() {
-    return availableUnits;
+    return table == null ? units : table.getAvailable(type);
+  }
+
+  /**
+   * Claim the given number of units from this Resource, if they are
+   * available.
+   * 
+   * @param numUnits
+   *          Number of units to claim.
+   * @return OK if the claim was made, otherwise UNAVAILABLE or EXCEEDS_UNITS.
+   * @throws IllegalStateException
+   *           Thrown if this Resource is not managed by a ResourceManager.
+   */
+  public int tryClaim(int numUnits) {
+    if (table == null) {
+      throw new IllegalStateException(notAttached());
+    }
+    if (numUnits > units) {
+      return EXCEEDS_UNITS;
+    }
+    if (numUnits > table.getAvailable(type)) {
+      return UNAVAILABLE;
+    }
+    table.addAvailable(type, -numUnits);
+    return OK;
   }
 
   /**
@@ -75,15 +130,38 @@ public class Resource {
    *           Thrown if claim cannot be made.
    */
   public int claim(int numUnits) throws ResourceException {
-    if (numUnits > getAvailableUnits()) {
-      throw new ResourceException("Tried to claim " + numUnits
-          + " units, but there are only " + getAvailableUnits() + " available.");
-    }
-    if (numUnits > getUnits()) {
+    checkAttached();
+    int status = tryClaim(numUnits);
+    if (status == EXCEEDS_UNITS) {
       throw new ResourceException("Tried to claim " + numUnits
           + " units, but there are only " + getUnits() + " total.");
+    } else if (status == UNAVAILABLE) {
+      throw new ResourceException("Tried to claim " + numUnits
+          + " units, but there are only " + getAvailableUnits()
+          + " available.");
+    }
+    return getAvailableUnits();
+  }
+
+  /**
+   * Release the given number of units back to this Resource, if that leaves
+   * no more than its total units available.
+   * 
+   * @param numUnits
+   *          Number of units to release.
+   * @return OK if the release was made, otherwise OVER_RELEASE.
+   * @throws IllegalStateException
+   *           Thrown if this Resource is not managed by a ResourceManager.
+   */
+  public int tryRelease(int numUnits) {
+    if (table == null) {
+      throw new IllegalStateException(notAttached());
+    }
+    if (numUnits > units || numUnits + table.getAvailable(type) > units) {
+      return OVER_RELEASE;
     }
-    return availableUnits -= numUnits;
+    table.addAvailable(type, numUnits);
+    return OK;
   }
 
   /**
@@ -96,11 +174,22 @@ public class Resource {
    *           Thrown if release cannot be made.
    */
   public int release(int numUnits) throws ResourceException {
-    if (numUnits > getUnits() || numUnits + getAvailableUnits() > getUnits()) {
+    checkAttached();
+    if (tryRelease(numUnits) != OK) {
       throw new ResourceException("Tried to release " + numUnits
           + " units, but there is a max of " + getUnits());
     }
-    return availableUnits += numUnits;
+    return getAvailableUnits();
+  }
+
+  protected String notAttached() {
+    return "Resource " + type + " is not managed by a ResourceManager.";
+  }
+
+  protected void checkAttached() throws ResourceException {
+    if (table == null) {
+      throw new ResourceException(notAttached());
+    }
   }
 
   /**
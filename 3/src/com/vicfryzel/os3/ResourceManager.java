@@ -2,37 +2,54 @@
 
 package com.vicfryzel.os3;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-
-import com.vicfryzel.os3.Resource.ResourceException;
 
 /**
- * Manages Resources during allocation.
+ * Manages Resources during allocation. The units of every Resource, and the
+ * claims and maximums of every Task, are kept in one ResourceTable.
  */
 public class ResourceManager {
-  protected Map<Integer, Resource> resources;
+  protected ResourceTable table;
+  protected Resource[] resources;
+
+  // Reused between safety checks
+  protected boolean[] done;
+  protected int[] work;
+  protected boolean[] finish;
+  protected int[] sequence;
+  protected int sequenceLength;
+
+  // Incremented by every claim and release
+  protected int version;
 
   /**
    * Create a new ResourceManager.
+   * 
+   * @param tasks
+   *          Number of Tasks that will claim Resources.
+   * @param resources
+   *          Number of Resource types, which are numbered from 1.
    */
-  public ResourceManager() {
-    resources = new HashMap<Integer, Resource>();
+  public ResourceManager(int tasks, int resources) {
+    table = new ResourceTable(tasks, resources);
+    this.resources = new Resource[resources];
   }
 
   /**
-   * Clone the given ResourceManager.
+   * Clone the given ResourceManager, including the claims of every Task.
    * 
    * @param other
    *          ResourceManager to clone.
    */
   public ResourceManager(ResourceManager other) {
-    resources = new HashMap<Integer, Resource>();
-    for (Resource r : other.resources.values()) {
-      add(new Resource(r));
+    table = new ResourceTable(other.table);
+    resources = new Resource[other.resources.length];
+    for (int j = 0; j < resources.length; j++) {
+      if (other.resources[j] != null) {
+        resources[j] = new Resource(table, other.resources[j].getType());
+      }
     }
   }
 
@@ -40,17 +57,26 @@ public class ResourceManager {
    * Add the given Resource to this manager.
    * 
    * @param r
-   *          Resource to add.
+   *          Resource to add, with all of its units available.
    */
   public void add(Resource r) {
-    resources.put(r.getType(), r);
+    r.attach(table);
+    resources[table.column(r.getType())] = r;
+  }
+
+  /**
+   * @return Table holding the units of every Resource and the claims and
+   *         maximums of every Task.
+   */
+  public ResourceTable getTable() {
+    return table;
   }
 
   /**
    * @return Resources managed by this ResourceManager.
    */
   public Collection<Resource> getResources() {
-    return resources.values();
+    return Arrays.asList(resources);
   }
 
   /**
@@ -59,7 +85,7 @@ public class ResourceManager {
    * @return Resource of given type.
    */
   public Resource getResourceByType(int type) {
-    return resources.get(type);
+    return resources[table.column(type)];
   }
 
   /**
@@ -74,7 +100,7 @@ public class ResourceManager {
    * @return True if the claim succeeded, false if otherwise.
    */
   public boolean claim(Task t, int type, int units) {
-    return claim(t, getResourceByType(type), units);
+    return tryClaim(t, getResourceByType(type), units) == Resource.OK;
   }
 
   /**
@@ -89,14 +115,46 @@ public class ResourceManager {
    * @return True if the claim succeeded, false if otherwise.
    */
   public boolean claim(Task t, Resource r, int units) {
-    boolean success = false;
-    try {
-      r.claim(units);
+    return tryClaim(t, r, units) == Resource.OK;
+  }
+
+  /**
+   * Claim the given units of the given resource type to the given Task,
+   * without throwing or allocating when they are not available.
+   * 
+   * @param t
+   *          Task claiming resources.
+   * @param type
+   *          Type of Resource to claim.
+   * @param units
+   *          Number of units to claim.
+   * @return Resource.OK if the claim succeeded, otherwise the status from
+   *         Resource.tryClaim.
+   */
+  public int tryClaim(Task t, int type, int units) {
+    return tryClaim(t, getResourceByType(type), units);
+  }
+
+  /**
+   * Claim the given units of the given Resource to the given Task, without
+   * throwing or allocating when they are not available.
+   * 
+   * @param t
+   *          Task claiming resources.
+   * @param r
+   *          Resource to claim.
+   * @param units
+   *          Number of units to claim.
+   * @return Resource.OK if the claim succeeded, otherwise the status from
+   *         Resource.tryClaim.
+   */
+  public int tryClaim(Task t, Resource r, int units) {
+    int status = r.tryClaim(units);
+    if (status == Resource.OK) {
       t.claim(r, units);
-      success = true;
-    } catch (ResourceException e) {
+      version++;
     }
-    return success;
+    return status;
   }
 
   /**
@@ -111,7 +169,7 @@ public class ResourceManager {
    * @return True if the release succeeded, false if otherwise.
    */
   public boolean release(Task t, int type, int units) {
-    return release(t, getResourceByType(type), units);
+    return tryRelease(t, getResourceByType(type), units) == Resource.OK;
   }
 
   /**
@@ -126,14 +184,54 @@ public class ResourceManager {
    * @return True if the release succeeded, false if otherwise.
    */
   public boolean release(Task t, Resource r, int units) {
-    boolean success = false;
-    try {
-      r.release(units);
+    return tryRelease(t, r, units) == Resource.OK;
+  }
+
+  /**
+   * Release the given units of the given resource type from the given Task,
+   * without throwing or allocating if the release cannot be made.
+   * 
+   * @param t
+   *          Task claiming resources.
+   * @param type
+   *          Type of Resource to release.
+   * @param units
+   *          Number of units to release.
+   * @return Resource.OK if the release succeeded, otherwise the status from
+   *         Resource.tryRelease.
+   */
+  public int tryRelease(Task t, int type, int units) {
+    return tryRelease(t, getResourceByType(type), units);
+  }
+
+  /**
+   * Release the given units of the given Resource from the given Task,
+   * without throwing or allocating if the release cannot be made.
+   * 
+   * @param t
+   *          Task claiming resources.
+   * @param r
+   *          Resource to release.
+   * @param units
+   *          Number of units to release.
+   * @return Resource.OK if the release succeeded, otherwise the status from
+   *         Resource.tryRelease.
+   */
+  public int tryRelease(Task t, Resource r, int units) {
+    int status = r.tryRelease(units);
+    if (status == Resource.OK) {
       t.release(r, units);
-      success = true;
-    } catch (ResourceException e) {
+      version++;
     }
-    return success;
+    return status;
+  }
+
+  /**
+   * @return Number of claims and releases made so far. Anything derived from
+   *         the state of this ResourceManager is stale once this changes.
+   */
+  public int getVersion() {
+    return version;
   }
 
   /**
@@ -145,11 +243,13 @@ public class ResourceManager {
    */
   public boolean releaseAll(Task t) {
     boolean success = true;
-    Map<Integer, Integer> claims = t.getClaims();
-    for (int resourceType : claims.keySet()) {
-      success = release(t, resourceType, claims.get(resourceType));
-      if (!success) {
-        break;
+    for (Resource r : resources) {
+      int claimed = table.getClaim(t.getIndex(), r.getType());
+      if (claimed != 0) {
+        success = tryRelease(t, r, claimed) == Resource.OK;
+        if (!success) {
+          break;
+        }
       }
     }
     return success;
@@ -171,60 +271,121 @@ public class ResourceManager {
    */
   public boolean claimingResourceIsSafe(List<Task> tasks, Task t, int type,
       int units) {
-    // Copy everything so that this is a fake run
-    ResourceManager manager = new ResourceManager(this);
-    List<Task> taskListCopy = new ArrayList<Task>();
-    for (Task original : tasks) {
-      taskListCopy.add(original.getIndex(), new Task(original));
-    }
-    Task taskCopy = taskListCopy.get(t.getIndex());
-    Resource r = manager.getResourceByType(type);
-
-    if (!manager.claim(taskCopy, type, units)) {
+    int i = t.getIndex();
+    int available = table.getAvailable(type);
+    if (units > available) {
       return false;
-    } else if (taskCopy.getMaximum(r) - taskCopy.getCurrentClaim(r) > r
-        .getAvailableUnits()) {
+    }
+    if (table.getNeed(i, type) - units > available - units) {
       return false;
     }
-    return claimingResourceIsSafe(taskListCopy, manager);
+
+    if (done == null || done.length < tasks.size()) {
+      done = new boolean[tasks.size()];
+    }
+    for (Task other : tasks) {
+      done[other.getIndex()] = other.isTerminated();
+    }
+    // Pretend the claim has been made, check, then take it back
+    table.addClaim(i, type, units);
+    table.addAvailable(type, -units);
+    boolean safe = isSafe(tasks.size(), done);
+    table.addClaim(i, type, -units);
+    table.addAvailable(type, units);
+    return safe;
   }
 
   /**
-   * Determine if the remaining Tasks in the given Task list can safely complete
-   * given the current state of the Task list and ResourceManager.
+   * Determine if every unfinished Task can still run to completion, by
+   * repeatedly finishing any Task whose remaining need fits within the work
+   * vector and returning its claims. Finishing a Task only ever adds to the
+   * work vector, so the order in which Tasks are finished does not matter and
+   * at most n passes are needed, for O(n^2 * m) time overall. The order in
+   * which Tasks were finished is kept, and is available from getSafeSequence.
    * 
-   * @param tasks
-   *          Current list of Tasks.
-   * @param manager
-   *          ResourceManager currently managing claims.
-   * @return True if a safe route of claims is still available.
-   */
-  protected boolean claimingResourceIsSafe(List<Task> tasks,
-      ResourceManager manager) {
-    boolean found = false;
-    boolean safe = false;
-
-    for (Task t : tasks) {
-      if (!t.isTerminated()) {
-        found = true;
-        boolean allResourcesPassed = true;
-        for (Resource r : manager.getResources()) {
-          if (t.getMaximum(r) - t.getCurrentClaim(r) > r.getAvailableUnits()) {
-            allResourcesPassed = false;
-            break;
-          }
-        }
+   * @param n
+   *          Number of Tasks (rows of the table) to consider.
+   * @param done
+   *          Tasks that are already finished and can be ignored.
+   * @return True if a safe sequence exists, false if otherwise.
+   */
+  public boolean isSafe(int n, boolean[] done) {
+    int m = table.resources;
+    int[] claims = table.claims;
+    int[] maximums = table.maximums;
+    if (work == null || work.length < m) {
+      work = new int[m];
+    }
+    if (finish == null || finish.length < n) {
+      finish = new boolean[n];
+      sequence = new int[n];
+    }
+    sequenceLength = 0;
+    System.arraycopy(table.available, 0, work, 0, m);
+    int remaining = 0;
+    for (int i = 0; i < n; i++) {
+      finish[i] = done[i];
+      if (!finish[i]) {
+        remaining++;
+      }
+    }
 
-        if (allResourcesPassed) {
-          manager.releaseAll(t);
-          t.terminate();
-          safe = claimingResourceIsSafe(tasks, manager);
+    boolean progress = true;
+    while (remaining > 0 && progress) {
+      progress = false;
+      for (int i = 0, row = 0; i < n; i++, row += m) {
+        if (finish[i]) {
+          continue;
+        }
+        int j = 0;
+        while (j < m && maximums[row + j] - claims[row + j] <= work[j]) {
+          j++;
+        }
+        if (j == m) {
+          for (j = 0; j < m; j++) {
+            work[j] += claims[row + j];
+          }
+          finish[i] = true;
+          sequence[sequenceLength++] = i;
+          remaining--;
+          progress = true;
         }
       }
     }
-    if (!found) {
-      safe = true;
+    return remaining == 0;
+  }
+
+  /**
+   * @param t
+   *          Task to check.
+   * @param available
+   *          Units available of each Resource, by column of the table.
+   * @return True if the remaining need of t fits within available.
+   */
+  public boolean canFinish(Task t, int[] available) {
+    int m = table.resources;
+    int row = t.getIndex() * m;
+    for (int j = 0; j < m; j++) {
+      if (table.maximums[row + j] - table.claims[row + j] > available[j]) {
+        return false;
+      }
     }
-    return safe;
+    return true;
+  }
+
+  /**
+   * @return Indexes of the Tasks in the order the last successful safety check
+   *         finished them.
+   */
+  public int[] getSafeSequence() {
+    return Arrays.copyOf(sequence, sequenceLength);
+  }
+
+  /**
+   * @return Units currently available of each Resource, by column of the
+   *         table.
+   */
+  public int[] getAvailableVector() {
+    return table.getAvailableVector();
   }
 }
@@ -0,0 +1,168 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.Arrays;
+
+/**
+ * Dense table of the Resource state of every Task. Resource types are the
+ * small dense integers 1..resources from the input header, and Tasks are
+ * indexed 0..tasks-1, so claims and maximums are each kept in one flat array
+ * of tasks * resources entries, row by Task, and the units and availability
+ * of each Resource in one array each. Safety checks and deadlock scans then
+ * walk flat arrays instead of boxed maps.
+ */
+public class ResourceTable {
+  protected int tasks;
+  protected int resources;
+
+  protected int[] claims;
+  protected int[] maximums;
+  protected int[] units;
+  protected int[] available;
+
+  /**
+   * Create a new ResourceTable with nothing claimed and no Resource units.
+   *
+   * @param tasks
+   *          Number of Tasks.
+   * @param resources
+   *          Number of Resource types.
+   */
+  public ResourceTable(int tasks, int resources) {
+    this.tasks = tasks;
+    this.resources = resources;
+    claims = new int[tasks * resources];
+    maximums = new int[tasks * resources];
+    units = new int[resources];
+    available = new int[resources];
+  }
+
+  /**
+   * Clone the given ResourceTable.
+   *
+   * @param other
+   *          ResourceTable to clone.
+   */
+  public ResourceTable(ResourceTable other) {
+    tasks = other.tasks;
+    resources = other.resources;
+    claims = Arrays.copyOf(other.claims, other.claims.length);
+    maximums = Arrays.copyOf(other.maximums, other.maximums.length);
+    units = Arrays.copyOf(other.units, other.units.length);
+    available = Arrays.copyOf(other.available, other.available.length);
+  }
+
+  /**
+   * @return Number of Tasks (rows) in this table.
+   */
+  public int getTasks() {
+    return tasks;
+  }
+
+  /**
+   * @return Number of Resource types (columns) in this table.
+   */
+  public int getResources() {
+    return resources;
+  }
+
+  /**
+   * @param type
+   *          Resource type, from 1.
+   * @return Column of the given Resource type.
+   */
+  public int column(int type) {
+    if (type < 1 || type > resources) {
+      throw new IllegalArgumentException("Unknown resource type " + type);
+    }
+    return type - 1;
+  }
+
+  /**
+   * Set the total units of the given Resource type, all of them available.
+   *
+   * @param type
+   *          Resource type.
+   * @param n
+   *          Number of units.
+   */
+  public void setUnits(int type, int n) {
+    int j = column(type);
+    units[j] = n;
+    available[j] = n;
+  }
+
+  public int getUnits(int type) {
+    return units[column(type)];
+  }
+
+  public int getAvailable(int type) {
+    return available[column(type)];
+  }
+
+  /**
+   * Add to the available units of the given Resource type.
+   *
+   * @param type
+   *          Resource type.
+   * @param n
+   *          Units to add, negative to take units.
+   * @return New number of available units.
+   */
+  public int addAvailable(int type, int n) {
+    return available[column(type)] += n;
+  }
+
+  public int getClaim(int task, int type) {
+    return claims[task * resources + column(type)];
+  }
+
+  public void addClaim(int task, int type, int n) {
+    claims[task * resources + column(type)] += n;
+  }
+
+  /**
+   * @return Maximum units the given Task may claim of the given type, 0 if it
+   *         has not declared one.
+   */
+  public int getMaximum(int task, int type) {
+    return maximums[task * resources + column(type)];
+  }
+
+  public void setMaximum(int task, int type, int max) {
+    maximums[task * resources + column(type)] = max;
+  }
+
+  /**
+   * @return Units of the given type the given Task may still claim.
+   */
+  public int getNeed(int task, int type) {
+    int k = task * resources + column(type);
+    return maximums[k] - claims[k];
+  }
+
+  /**
+   * Copy the row of a Task in another table into a row of this one.
+   *
+   * @param task
+   *          Row in this table.
+   * @param other
+   *          Table to copy from, with the same number of Resource types.
+   * @param otherTask
+   *          Row in other.
+   */
+  public void copyRow(int task, ResourceTable other, int otherTask) {
+    System.arraycopy(other.claims, otherTask * resources, claims, task
+        * resources, resources);
+    System.arraycopy(other.maximums, otherTask * resources, maximums, task
+        * resources, resources);
+  }
+
+  /**
+   * @return Copy of the available units of each Resource, by column.
+   */
+  public int[] getAvailableVector() {
+    return Arrays.copyOf(available, resources);
+  }
+}
@@ -0,0 +1,39 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Attempts every pending request, smallest number of units first. Requests
+ * for the same number of units are attempted in FIFO order.
+ */
+public class SmallestFirstGrantPolicy implements GrantPolicy {
+  // Units of each request in the high half and its FIFO position in the low
+  // half, so that sorting orders by units, then position
+  protected long[] keys = new long[0];
+  protected int[] fifo = new int[0];
+
+  public int select(int[] pending, int count, List<Task> tasks,
+      ResourceTable table) {
+    if (keys.length < count) {
+      keys = new long[count];
+      fifo = new int[count];
+    }
+    for (int k = 0; k < count; k++) {
+      long units = tasks.get(pending[k]).getNextResources();
+      keys[k] = (units << 32) | k;
+      fifo[k] = pending[k];
+    }
+    Arrays.sort(keys, 0, count);
+    for (int k = 0; k < count; k++) {
+      pending[k] = fifo[(int) keys[k]];
+    }
+    return count;
+  }
+
+  public String getName() {
+    return "smallest";
+  }
+}
@@ -3,9 +3,7 @@
 package com.vicfryzel.os3;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Represents a single Task (a.k.a. process,) that needs Resources allocated to
@@ -14,60 +12,94 @@ import java.util.Map;
 public class Task {
   protected int id;
   protected int index;
-  protected List<Activity> activities;
+  /**
+   * Activities of this Task, encoded by Activity.encode. Once read, the
+   * script never changes, and copies of this Task share it; each keeps its
+   * own cursor, next, into the script.
+   */
+  protected int[] activities;
+  protected int activityCount;
+  protected int next;
+  protected boolean activitiesShared;
   protected boolean aborted;
   protected boolean terminated;
   protected boolean blocked;
   protected int waitTime;
   protected int totalTime;
   protected int computeTime;
-  protected Map<Integer, Integer> claims;
-  protected Map<Integer, Integer> maximums;
+  protected ResourceTable table;
 
   /**
    * Create a new Task with the given ID.
    * 
    * @param id
    *          Identifier of this Task.
+   * @param table
+   *          Table holding the claims and maximums of this Task, in row
+   *          id - 1.
    */
-  public Task(int id) {
+  public Task(int id, ResourceTable table) {
     this.id = id;
     this.index = id - 1;
-    this.activities = new ArrayList<Activity>();
+    this.activities = new int[4 * Activity.ENCODED_SIZE];
+    this.activityCount = 0;
+    this.next = 0;
     this.aborted = false;
     this.terminated = false;
     this.waitTime = 0;
     this.totalTime = 0;
     this.computeTime = -1;
-    this.claims = new HashMap<Integer, Integer>();
-    this.maximums = new HashMap<Integer, Integer>();
+    this.table = table;
+  }
+
+  /**
+   * Create a new Task running the given script of Activities.
+   * 
+   * @param id
+   *          Identifier of this Task.
+   * @param table
+   *          Table holding the claims and maximums of this Task, in row
+   *          id - 1.
+   * @param activities
+   *          Activities encoded by Activity.encode, shared with the caller.
+   * @param activityCount
+   *          Number of Activities in the script.
+   */
+  public Task(int id, ResourceTable table, int[] activities,
+      int activityCount) {
+    this(id, table);
+    this.activities = activities;
+    this.activityCount = activityCount;
+    this.activitiesShared = true;
   }
 
   /**
-   * Clone the given Task.
+   * Clone the given Task into the given table. The clone shares the
+   * Activities of other, so this takes time proportional to the number of
+   * Resource types only.
    * 
    * @param other
    *          Task to clone.
+   * @param table
+   *          Table to hold the claims and maximums of the clone. If it is not
+   *          the table of other, the row of other is copied into it.
    */
-  public Task(Task other) {
+  public Task(Task other, ResourceTable table) {
     this.id = other.id;
     this.index = other.index;
-    this.activities = new ArrayList<Activity>();
-    for (Activity a : other.activities) {
-      addActivity(new Activity(a));
-    }
+    this.activities = other.activities;
+    this.activityCount = other.activityCount;
+    this.next = other.next;
+    this.activitiesShared = true;
+    other.activitiesShared = true;
     this.aborted = other.aborted;
     this.terminated = other.terminated;
     this.waitTime = other.waitTime;
     this.totalTime = other.totalTime;
     this.computeTime = other.computeTime;
-    this.claims = new HashMap<Integer, Integer>();
-    for (int resourceType : other.claims.keySet()) {
-      this.claims.put(resourceType, other.claims.get(resourceType));
-    }
-    this.maximums = new HashMap<Integer, Integer>();
-    for (int resourceType : other.maximums.keySet()) {
-      this.maximums.put(resourceType, other.maximums.get(resourceType));
+    this.table = table;
+    if (table != other.table) {
+      table.copyRow(index, other.table, other.index);
     }
   }
 
@@ -92,28 +124,105 @@ public class Task {
    *          Activity to add.
    */
   public void addActivity(Activity a) {
-    activities.add(a);
+    int size = activityCount * Activity.ENCODED_SIZE;
+    if (activitiesShared || size == activities.length) {
+      int[] grown = new int[Math.max(activities.length * 2, size
+          + Activity.ENCODED_SIZE)];
+      System.arraycopy(activities, 0, grown, 0, size);
+      activities = grown;
+      activitiesShared = false;
+    }
+    a.encode(activities, size);
+    activityCount++;
   }
 
   /**
-   * @return All Activities of this Task.
+   * @return Activities of this Task that have not been processed yet.
    */
   public List<Activity> getActivities() {
-    return activities;
+    List<Activity> retval = new ArrayList<Activity>();
+    for (int k = next; k < activityCount; k++) {
+      retval.add(Activity.decode(id, activities, k * Activity.ENCODED_SIZE));
+    }
+    return retval;
   }
 
   /**
    * @return Next Activity to process in this Task.
    */
   public Activity getNextActivity() {
-    return activities.get(0);
+    return Activity.decode(id, activities, position());
+  }
+
+  /**
+   * @return Position of the next Activity in the encoded script.
+   */
+  protected int position() {
+    if (next >= activityCount) {
+      throw new IndexOutOfBoundsException("Task " + id
+          + " has no Activities left");
+    }
+    return next * Activity.ENCODED_SIZE;
+  }
+
+  /**
+   * @return Type of the next Activity, without decoding it.
+   */
+  public Activity.Type getNextType() {
+    return Activity.typeOf(activities[position()]);
+  }
+
+  /**
+   * @return Resource type of the next Activity, without decoding it.
+   */
+  public int getNextResourceType() {
+    return activities[position() + 1];
+  }
+
+  /**
+   * @return Number of cycles of the next Activity, without decoding it.
+   */
+  public int getNextNumCycles() {
+    return activities[position() + 2];
+  }
+
+  /**
+   * @return Number of resources of the next Activity, without decoding it.
+   */
+  public int getNextResources() {
+    return activities[position() + 3];
   }
 
   /**
    * Remove the next Activity, exposing the Activity after that.
    */
   public void removeNextActivity() {
-    activities.remove(0);
+    position();
+    next++;
+  }
+
+  /**
+   * @return Number of Activities already removed, which is also the position
+   *         of the next Activity in the script.
+   */
+  public int getCursor() {
+    return next;
+  }
+
+  /**
+   * Move back to an earlier Activity, so that it and every Activity after it
+   * are processed again.
+   * 
+   * @param cursor
+   *          Position of the Activity to move back to, as from getCursor.
+   */
+  public void rewind(int cursor) {
+    if (cursor < 0 || cursor > next) {
+      throw new IllegalArgumentException("Task " + id
+          + " cannot rewind to Activity " + cursor);
+    }
+    next = cursor;
+    computeTime = -1;
   }
 
   /**
@@ -181,6 +290,16 @@ public class Task {
     waitTime += 1;
   }
 
+  /**
+   * Mark this Task as waiting the given number of additional cycles.
+   * 
+   * @param cycles
+   *          Number of cycles waited.
+   */
+  public void addWaitTime(int cycles) {
+    waitTime += cycles;
+  }
+
   /**
    * @return Total time this Task has been processing.
    */
@@ -195,6 +314,17 @@ public class Task {
     totalTime += 1;
   }
 
+  /**
+   * Increment time this Task has been processing by the given number of
+   * cycles.
+   * 
+   * @param cycles
+   *          Number of cycles processed.
+   */
+  public void addTotalTime(int cycles) {
+    totalTime += cycles;
+  }
+
   /**
    * @return Cycles this Task has left to compute.
    */
@@ -224,17 +354,20 @@ public class Task {
     return ((double) getWaitTime() / (double) getTotalTime()) * 100.0;
   }
 
+  /**
+   * @return Table holding the claims and maximums of this Task.
+   */
+  public ResourceTable getTable() {
+    return table;
+  }
+
   /**
    * @param r
    *          Resource to get current claim for.
    * @return Current claim from this Task of the given Resource.
    */
   public int getCurrentClaim(Resource r) {
-    int retval = 0;
-    if (claims.get(r.getType()) != null) {
-      retval = claims.get(r.getType());
-    }
-    return retval;
+    return table.getClaim(index, r.getType());
   }
 
   /**
@@ -246,8 +379,7 @@ public class Task {
    *          Units of Resource to claim.
    */
   public void claim(Resource r, int units) {
-    int total = getCurrentClaim(r) + units;
-    claims.put(r.getType(), total);
+    table.addClaim(index, r.getType(), units);
   }
 
   /**
@@ -259,24 +391,17 @@ public class Task {
    *          Units of Resource to release.
    */
   public void release(Resource r, int units) {
-    int total = getCurrentClaim(r) - units;
-    claims.put(r.getType(), total);
-  }
-
-  /**
-   * @return All current claims, keyed on Resource type, valued on claim amount.
-   */
-  public Map<Integer, Integer> getClaims() {
-    return claims;
+    table.addClaim(index, r.getType(), -units);
   }
 
   /**
    * @param r
    *          Resource to get maximum for.
-   * @return Maximum number of units this Task can claim of given Resource.
+   * @return Maximum number of units this Task can claim of given Resource, 0
+   *         if no claim has been initiated for it.
    */
   public int getMaximum(Resource r) {
-    return maximums.get(r.getType());
+    return table.getMaximum(index, r.getType());
   }
 
   /**
@@ -288,14 +413,14 @@ public class Task {
    *          Maximum units this Task can claim of r.
    */
   public void setMaximum(Resource r, int max) {
-    maximums.put(r.getType(), max);
+    table.setMaximum(index, r.getType(), max);
   }
 
   /**
    * @return String representation of this Task and its Activities.
    */
   public String toString() {
-    return "Task " + id + ": " + activities.toString();
+    return "Task " + id + ": " + getActivities().toString();
   }
 
   /**
@@ -0,0 +1,26 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.List;
+
+/**
+ * Chooses which deadlocked Task to abort to break a deadlock.
+ */
+public interface VictimPolicy {
+  /**
+   * @param deadlocked
+   *          Indexes of the deadlocked Tasks, in increasing order.
+   * @param tasks
+   *          All Tasks.
+   * @param table
+   *          Claims and maximums of all Tasks.
+   * @return Index of the Task to abort, one of deadlocked.
+   */
+  int choose(int[] deadlocked, List<Task> tasks, ResourceTable table);
+
+  /**
+   * @return Name of this policy, as used to choose it.
+   */
+  String getName();
+}
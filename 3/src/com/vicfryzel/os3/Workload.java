@@ -0,0 +1,322 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Immutable, parsed allocator input: the number of Tasks, the units of each
+ * Resource type, and the Activities of each Task, encoded as by
+ * Activity.encode. It is parsed once and can then be shared by any number of
+ * Allocators, on any number of threads.
+ *
+ * The input is a header of the number of Tasks, the number of Resource types
+ * and the units of each type, followed by Activities of the form
+ * "initiate task type claim", "request task type units",
+ * "release task type units", "compute task cycles" and "terminate task".
+ * Numbers not required by an Activity are ignored.
+ */
+public class Workload {
+  public static class WorkloadException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public WorkloadException(String m) {
+      super(m);
+    }
+  }
+
+  protected int tasks;
+  protected int[] units;
+  protected int[][] scripts;
+  protected int[] activityCounts;
+
+  /**
+   * Create a new Workload from already parsed parts, which are not copied.
+   *
+   * @param units
+   *          Units of each Resource type, by type - 1.
+   * @param scripts
+   *          Encoded Activities of each Task, by index.
+   * @param activityCounts
+   *          Number of Activities in each script.
+   */
+  public Workload(int[] units, int[][] scripts, int[] activityCounts) {
+    this.tasks = scripts.length;
+    this.units = units;
+    this.scripts = scripts;
+    this.activityCounts = activityCounts;
+  }
+
+  /**
+   * @return Number of Tasks.
+   */
+  public int getTasks() {
+    return tasks;
+  }
+
+  /**
+   * @return Number of Resource types.
+   */
+  public int getResources() {
+    return units.length;
+  }
+
+  /**
+   * @param type
+   *          Resource type, from 1.
+   * @return Total units of the given Resource type.
+   */
+  public int getUnits(int type) {
+    return units[type - 1];
+  }
+
+  /**
+   * @param index
+   *          Index of Task.
+   * @return Encoded Activities of the given Task. Shared; must not be
+   *         modified.
+   */
+  public int[] getScript(int index) {
+    return scripts[index];
+  }
+
+  /**
+   * @param index
+   *          Index of Task.
+   * @return Number of Activities of the given Task.
+   */
+  public int getActivityCount(int index) {
+    return activityCounts[index];
+  }
+
+  /**
+   * Parse the given file, mapping it into memory rather than reading it.
+   *
+   * @param path
+   *          Path of input file.
+   * @return Parsed Workload.
+   * @throws IOException
+   *           Thrown if the file cannot be read.
+   * @throws WorkloadException
+   *           Thrown if the file is not valid input.
+   */
+  public static Workload read(String path) throws IOException,
+      WorkloadException {
+    RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+    try {
+      FileChannel channel = file.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new WorkloadException(path + " is too large to parse");
+      }
+      return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size()));
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * @param input
+   *          Input text.
+   * @return Parsed Workload.
+   * @throws WorkloadException
+   *           Thrown if the text is not valid input.
+   */
+  public static Workload parse(String input) throws WorkloadException {
+    return parse(ByteBuffer.wrap(input.getBytes(Charset.forName("US-ASCII"))));
+  }
+
+  /**
+   * Parse the bytes of the given buffer, from its position to its limit.
+   *
+   * @param input
+   *          Input bytes; its position is not changed.
+   * @return Parsed Workload.
+   * @throws WorkloadException
+   *           Thrown if the bytes are not valid input.
+   */
+  public static Workload parse(ByteBuffer input) throws WorkloadException {
+    return new Parser(input).parse();
+  }
+
+  /**
+   * Parser working directly on bytes. Tokens are runs of letters, which are
+   * Activity names, or of digits, which are numbers; anything else separates
+   * tokens.
+   */
+  protected static class Parser {
+    protected static final int EOF = 0;
+    protected static final int NUMBER = 1;
+    protected static final int WORD = 2;
+
+    protected ByteBuffer input;
+    protected int position;
+    protected int limit;
+
+    // Current token
+    protected int number;
+    protected int wordStart;
+    protected int wordLength;
+
+    protected int[] units;
+    protected int[][] scripts;
+    protected int[] activityCounts;
+
+    public Parser(ByteBuffer input) {
+      this.input = input;
+      position = input.position();
+      limit = input.limit();
+    }
+
+    protected static boolean isLetter(int c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    protected static boolean isDigit(int c) {
+      return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Read the next token.
+     *
+     * @return Type of token read.
+     */
+    protected int next() throws WorkloadException {
+      while (position < limit) {
+        int c = input.get(position);
+        if (isDigit(c) || (c == '-' && position + 1 < limit
+            && isDigit(input.get(position + 1)))) {
+          boolean negative = c == '-';
+          if (negative) {
+            position++;
+          }
+          long n = 0;
+          while (position < limit && isDigit(c = input.get(position))) {
+            n = n * 10 + (c - '0');
+            if (n > Integer.MAX_VALUE) {
+              throw new WorkloadException("Number too large at byte "
+                  + position);
+            }
+            position++;
+          }
+          // Ignore any fraction, as the input only has whole numbers
+          if (position < limit && input.get(position) == '.') {
+            position++;
+            while (position < limit && isDigit(input.get(position))) {
+              position++;
+            }
+          }
+          number = (int) (negative ? -n : n);
+          return NUMBER;
+        } else if (isLetter(c)) {
+          wordStart = position;
+          while (position < limit && isLetter(input.get(position))) {
+            position++;
+          }
+          wordLength = position - wordStart;
+          return WORD;
+        }
+        position++;
+      }
+      return EOF;
+    }
+
+    protected int nextNumber() throws WorkloadException {
+      if (next() != NUMBER) {
+        throw new WorkloadException("Expected a number before byte "
+            + position);
+      }
+      return number;
+    }
+
+    protected boolean wordIs(String word) {
+      if (wordLength != word.length()) {
+        return false;
+      }
+      for (int k = 0; k < wordLength; k++) {
+        if (input.get(wordStart + k) != word.charAt(k)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    protected String word() {
+      StringBuilder b = new StringBuilder();
+      for (int k = 0; k < wordLength; k++) {
+        b.append((char) input.get(wordStart + k));
+      }
+      return b.toString();
+    }
+
+    public Workload parse() throws WorkloadException {
+      int numTasks = nextNumber();
+      int numResources = nextNumber();
+      if (numTasks < 0 || numResources < 0) {
+        throw new WorkloadException("Invalid header");
+      }
+      units = new int[numResources];
+      for (int j = 0; j < numResources; j++) {
+        units[j] = nextNumber();
+      }
+      scripts = new int[numTasks][];
+      activityCounts = new int[numTasks];
+      for (int i = 0; i < numTasks; i++) {
+        scripts[i] = new int[8 * Activity.ENCODED_SIZE];
+      }
+
+      int token;
+      while ((token = next()) != EOF) {
+        if (token != WORD) {
+          continue;
+        }
+        Activity.Type type;
+        int resourceType = 0, numCycles = 0, resources = 0;
+        if (wordIs("initiate")) {
+          type = Activity.Type.INITIATE;
+        } else if (wordIs("request")) {
+          type = Activity.Type.REQUEST;
+        } else if (wordIs("release")) {
+          type = Activity.Type.RELEASE;
+        } else if (wordIs("compute")) {
+          type = Activity.Type.COMPUTE;
+        } else if (wordIs("terminate")) {
+          type = Activity.Type.TERMINATE;
+        } else {
+          throw new WorkloadException(word()
+              + " is not a valid activity type.");
+        }
+        int taskNum = nextNumber();
+        if (taskNum < 1 || taskNum > numTasks) {
+          throw new WorkloadException("Task " + taskNum + " does not exist.");
+        }
+        if (type == Activity.Type.COMPUTE) {
+          numCycles = nextNumber();
+        } else if (type != Activity.Type.TERMINATE) {
+          resourceType = nextNumber();
+          resources = nextNumber();
+        }
+        add(taskNum - 1, type, resourceType, numCycles, resources);
+      }
+      return new Workload(units, scripts, activityCounts);
+    }
+
+    protected void add(int i, Activity.Type type, int resourceType,
+        int numCycles, int resources) {
+      int offset = activityCounts[i] * Activity.ENCODED_SIZE;
+      if (offset == scripts[i].length) {
+        int[] grown = new int[offset * 2];
+        System.arraycopy(scripts[i], 0, grown, 0, offset);
+        scripts[i] = grown;
+      }
+      Activity.encode(scripts[i], offset, type, resourceType, numCycles,
+          resources);
+      activityCounts[i]++;
+    }
+  }
+}
@@ -0,0 +1,216 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates synthetic allocator workloads of any size. Every Task initiates a
+ * claim on every Resource type, then makes a number of requests, each
+ * followed by a computation and sometimes by a partial release, then releases
+ * everything it holds and terminates. No Task ever requests more than its
+ * claim, so Banker's never aborts a Task, while FIFO deadlocks more often the
+ * tighter the claims are.
+ */
+public class WorkloadGenerator {
+  protected int tasks;
+  protected int resources;
+  protected int units;
+  protected double tightness;
+  protected int requests;
+  protected int maxCompute;
+  protected Random random;
+
+  /**
+   * Create a new WorkloadGenerator with four requests per Task.
+   *
+   * @param tasks
+   *          Number of Tasks to generate.
+   * @param resources
+   *          Number of Resource types.
+   * @param units
+   *          Units of each Resource type.
+   * @param tightness
+   *          Largest claim of a Task on a Resource, as a fraction of its
+   *          units.
+   * @param maxCompute
+   *          Longest computation to generate, or 0 for none.
+   * @param seed
+   *          Seed for the generator, so workloads are repeatable.
+   */
+  public WorkloadGenerator(int tasks, int resources, int units,
+      double tightness, int maxCompute, long seed) {
+    this(tasks, resources, units, tightness, 4, maxCompute, seed);
+  }
+
+  /**
+   * Create a new WorkloadGenerator.
+   *
+   * @param tasks
+   *          Number of Tasks to generate.
+   * @param resources
+   *          Number of Resource types.
+   * @param units
+   *          Units of each Resource type.
+   * @param tightness
+   *          Largest claim of a Task on a Resource, as a fraction of its
+   *          units.
+   * @param requests
+   *          Number of requests each Task makes.
+   * @param maxCompute
+   *          Longest computation to generate, or 0 for none.
+   * @param seed
+   *          Seed for the generator, so workloads are repeatable.
+   */
+  public WorkloadGenerator(int tasks, int resources, int units,
+      double tightness, int requests, int maxCompute, long seed) {
+    if (tasks < 0 || resources < 1 || units < 1 || tightness <= 0
+        || tightness > 1 || requests < 0 || maxCompute < 0) {
+      throw new IllegalArgumentException("Invalid workload parameters");
+    }
+    this.tasks = tasks;
+    this.resources = resources;
+    this.units = units;
+    this.tightness = tightness;
+    this.requests = requests;
+    this.maxCompute = maxCompute;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * @return Largest claim any Task may make on a Resource.
+   */
+  protected int getMaxClaim() {
+    return Math.max(1, Math.min(units, (int) Math.round(tightness * units)));
+  }
+
+  /**
+   * Generate the next workload. Each call continues the random sequence, so
+   * generates a different workload.
+   *
+   * @return Generated Workload.
+   */
+  public Workload generate() {
+    int[] totals = new int[resources];
+    for (int j = 0; j < resources; j++) {
+      totals[j] = units;
+    }
+    int[][] scripts = new int[tasks][];
+    int[] counts = new int[tasks];
+    int[] claim = new int[resources];
+    int[] held = new int[resources];
+    for (int i = 0; i < tasks; i++) {
+      int[] script = new int[(2 * resources + 3 * requests + 1)
+          * Activity.ENCODED_SIZE];
+      int n = 0;
+      for (int j = 0; j < resources; j++) {
+        claim[j] = 1 + random.nextInt(getMaxClaim());
+        held[j] = 0;
+        Activity.encode(script, n++ * Activity.ENCODED_SIZE,
+            Activity.Type.INITIATE, j + 1, 0, claim[j]);
+      }
+      for (int r = 0; r < requests; r++) {
+        int j = random.nextInt(resources);
+        if (held[j] < claim[j]) {
+          int amount = 1 + random.nextInt(claim[j] - held[j]);
+          held[j] += amount;
+          Activity.encode(script, n++ * Activity.ENCODED_SIZE,
+              Activity.Type.REQUEST, j + 1, 0, amount);
+        }
+        if (maxCompute > 0) {
+          Activity.encode(script, n++ * Activity.ENCODED_SIZE,
+              Activity.Type.COMPUTE, 0, 1 + random.nextInt(maxCompute), 0);
+        }
+        j = random.nextInt(resources);
+        if (held[j] > 0 && random.nextInt(3) == 0) {
+          int amount = 1 + random.nextInt(held[j]);
+          held[j] -= amount;
+          Activity.encode(script, n++ * Activity.ENCODED_SIZE,
+              Activity.Type.RELEASE, j + 1, 0, amount);
+        }
+      }
+      for (int j = 0; j < resources; j++) {
+        if (held[j] > 0) {
+          Activity.encode(script, n++ * Activity.ENCODED_SIZE,
+              Activity.Type.RELEASE, j + 1, 0, held[j]);
+        }
+      }
+      Activity.encode(script, n++ * Activity.ENCODED_SIZE,
+          Activity.Type.TERMINATE, 0, 0, 0);
+      scripts[i] = script;
+      counts[i] = n;
+    }
+    return new Workload(totals, scripts, counts);
+  }
+
+  /**
+   * Write the given workload in the standard input format, one Task after
+   * another.
+   *
+   * @param workload
+   *          Workload to write.
+   * @param out
+   *          Writer to write to.
+   */
+  public static void write(Workload workload, Writer out) throws IOException {
+    StringBuilder b = new StringBuilder();
+    b.append(workload.getTasks()).append(' ').append(workload.getResources());
+    for (int type = 1; type <= workload.getResources(); type++) {
+      b.append(' ').append(workload.getUnits(type));
+    }
+    out.write(b.append('\n').toString());
+    for (int i = 0; i < workload.getTasks(); i++) {
+      int[] script = workload.getScript(i);
+      for (int k = 0; k < workload.getActivityCount(i); k++) {
+        int offset = k * Activity.ENCODED_SIZE;
+        Activity.Type type = Activity.typeOf(script[offset]);
+        b.setLength(0);
+        b.append(type.name().toLowerCase()).append(' ').append(i + 1);
+        if (type == Activity.Type.COMPUTE) {
+          b.append(' ').append(script[offset + 2]);
+        } else if (type != Activity.Type.TERMINATE) {
+          b.append(' ').append(script[offset + 1]).append(' ')
+              .append(script[offset + 3]);
+        }
+        out.write(b.append('\n').toString());
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Generate a workload and write it to stdout.
+   *
+   * @param args
+   *          Command-line arguments.
+   */
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 7) {
+      System.err.println("Usage: java WorkloadGenerator tasks [resources] "
+          + "[units] [tightness] [requests] [max-compute] [seed]");
+      System.exit(1);
+    }
+    int tasks = Integer.parseInt(args[0]);
+    int resources = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int units = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    double tightness = args.length > 3 ? Double.parseDouble(args[3]) : 0.5;
+    int requests = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+    int maxCompute = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+    long seed = args.length > 6 ? Long.parseLong(args[6]) : 0;
+    try {
+      write(new WorkloadGenerator(tasks, resources, units, tightness,
+          requests, maxCompute, seed).generate(), new BufferedWriter(
+          new OutputStreamWriter(System.out)));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    } catch (IOException e) {
+      System.err.println("Could not write workload: " + e);
+      System.exit(1);
+    }
+  }
+}
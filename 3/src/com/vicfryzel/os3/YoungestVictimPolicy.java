@@ -0,0 +1,20 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3;
+
+import java.util.List;
+
+/**
+ * Aborts the youngest deadlocked Task. Every Task starts at cycle 0 and Tasks
+ * are numbered in the order they arrive, so this is the highest numbered
+ * deadlocked Task.
+ */
+public class YoungestVictimPolicy implements VictimPolicy {
+  public int choose(int[] deadlocked, List<Task> tasks, ResourceTable table) {
+    return deadlocked[deadlocked.length - 1];
+  }
+
+  public String getName() {
+    return "youngest";
+  }
+}
@@ -0,0 +1,226 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3.bench;
+
+import com.vicfryzel.os3.AllocationService;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress test of AllocationService. Each client is a thread running a Task
+ * that repeatedly declares a random claim on every Resource type, acquires
+ * it in two halves with a timeout, holds it briefly, and finishes. This
+ * reports, for each number of clients, the grants per second and the latency
+ * of each acquire, including the time spent waiting for it to become safe.
+ *
+ * The run fails if any acquire times out, as a safe state always lets some
+ * waiter proceed, or if after an acquire a Task holds more than it declared
+ * or any Resource has fewer than zero units available. Once all clients are
+ * done, every unit must be available again.
+ *
+ * Clients are platform threads, as virtual threads need JDK 21 and the build
+ * targets JDK 17.
+ */
+public class AllocationServiceBenchmark {
+  protected int clients;
+  protected int resources;
+  protected int units;
+  protected int rounds;
+
+  protected AllocationService service;
+  protected long[][] latencies;
+  protected int[] counts;
+  protected volatile Throwable failure;
+
+  /**
+   * @param clients
+   *          Number of client threads, one Task each.
+   * @param resources
+   *          Number of Resource types.
+   * @param units
+   *          Units of each Resource type.
+   * @param rounds
+   *          Number of claims each client acquires and finishes.
+   */
+  public AllocationServiceBenchmark(int clients, int resources, int units,
+      int rounds) {
+    this.clients = clients;
+    this.resources = resources;
+    this.units = units;
+    this.rounds = rounds;
+  }
+
+  protected void client(int taskId, Random random) throws InterruptedException {
+    int[] claim = new int[resources];
+    long[] samples = latencies[taskId - 1];
+    for (int round = 0; round < rounds; round++) {
+      for (int type = 1; type <= resources; type++) {
+        // Claims of up to a quarter of each Resource keep many clients
+        // contending without any one of them dominating
+        claim[type - 1] = 1 + random.nextInt(Math.max(1, units / 4));
+        service.declare(taskId, type, claim[type - 1]);
+      }
+      boolean acquired = true;
+      for (int type = 1; type <= resources && acquired; type++) {
+        int first = (claim[type - 1] + 1) / 2;
+        int[] parts = { first, claim[type - 1] - first };
+        for (int part : parts) {
+          if (part == 0) {
+            continue;
+          }
+          long start = System.nanoTime();
+          acquired = service.acquire(taskId, type, part, 10, TimeUnit.SECONDS);
+          samples[counts[taskId - 1]++] = System.nanoTime() - start;
+          if (!acquired) {
+            throw new IllegalStateException("Task " + taskId
+                + " timed out acquiring " + part + " units of resource "
+                + type);
+          }
+          check(taskId, claim);
+        }
+      }
+      for (int k = 0; k < 100; k++) {
+        Thread.yield();
+      }
+      service.finish(taskId);
+    }
+  }
+
+  /**
+   * Check that the given Task holds no more than it declared, and that no
+   * Resource has fewer than zero units available.
+   *
+   * @param taskId
+   *          ID of Task.
+   * @param claim
+   *          Units of each Resource type the Task declared, by type - 1.
+   */
+  protected void check(int taskId, int[] claim) {
+    for (int type = 1; type <= resources; type++) {
+      int held = service.getClaim(taskId, type);
+      if (held > claim[type - 1]) {
+        throw new IllegalStateException("Task " + taskId + " holds " + held
+            + " units of resource " + type + " but declared "
+            + claim[type - 1]);
+      }
+      int available = service.getAvailable(type);
+      if (available < 0) {
+        throw new IllegalStateException("Resource " + type + " has "
+            + available + " units available");
+      }
+    }
+  }
+
+  /**
+   * Run every client to completion.
+   *
+   * @return Elapsed time in nanoseconds.
+   */
+  public long run() throws InterruptedException {
+    int[] totals = new int[resources];
+    Arrays.fill(totals, units);
+    service = new AllocationService(clients, totals);
+    latencies = new long[clients][rounds * resources * 2];
+    counts = new int[clients];
+
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[clients];
+    for (int c = 0; c < clients; c++) {
+      final int taskId = c + 1;
+      threads[c] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            start.await();
+            client(taskId, new Random(taskId));
+          } catch (Throwable e) {
+            failure = e;
+            // Return what the failed client holds, so that the others can
+            // still finish
+            service.finish(taskId);
+          }
+        }
+      });
+      threads[c].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+
+    if (failure != null) {
+      throw new IllegalStateException("Client failed", failure);
+    }
+    for (int type = 1; type <= resources; type++) {
+      if (service.getAvailable(type) != units) {
+        throw new IllegalStateException("Units of resource " + type
+            + " were lost");
+      }
+    }
+    return elapsed;
+  }
+
+  /**
+   * @return Latency of every acquire, in nanoseconds, sorted.
+   */
+  protected long[] getLatencies() {
+    int n = 0;
+    for (int count : counts) {
+      n += count;
+    }
+    long[] all = new long[n];
+    int k = 0;
+    for (int c = 0; c < clients; c++) {
+      System.arraycopy(latencies[c], 0, all, k, counts[c]);
+      k += counts[c];
+    }
+    Arrays.sort(all);
+    return all;
+  }
+
+  protected static double percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int k = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(k, sorted.length - 1))] / 1e3;
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          Optional comma-separated numbers of clients, number of Resource
+   *          types, units of each Resource type, and rounds per client.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    String sizes = args.length > 0 ? args[0] : "100,200,400,800";
+    int resources = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int units = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+    int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+    // Warm up
+    new AllocationServiceBenchmark(50, resources, units, rounds).run();
+
+    System.out.println(String.format(Locale.US,
+        "%8s %10s %12s %10s %10s %10s %10s %9s", "clients", "grants",
+        "grants/s", "p50 us", "p99 us", "max us", "waits", "timeouts"));
+    for (String size : sizes.split(",")) {
+      AllocationServiceBenchmark b = new AllocationServiceBenchmark(Integer
+          .parseInt(size.trim()), resources, units, rounds);
+      long elapsed = b.run();
+      long[] sorted = b.getLatencies();
+      AllocationService s = b.service;
+      System.out.println(String.format(Locale.US,
+          "%8d %10d %12.0f %10.1f %10.1f %10.1f %10d %9d", b.clients,
+          s.getGrants(), s.getGrants() / (elapsed / 1e9), percentile(sorted,
+              0.5), percentile(sorted, 0.99), percentile(sorted, 1.0), s
+              .getWaits(), s.getTimeouts()));
+    }
+  }
+}
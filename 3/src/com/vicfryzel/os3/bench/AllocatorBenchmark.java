@@ -0,0 +1,88 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3.bench;
+
+import com.vicfryzel.os3.Allocator;
+import com.vicfryzel.os3.Workload;
+import com.vicfryzel.os3.WorkloadGenerator;
+
+import java.util.Locale;
+
+/**
+ * Measures FIFOAllocator and BankerAllocator over generated workloads of
+ * increasing size. For each number of Tasks and each allocator, this reports
+ * the cycles the allocation takes, the best time to run it to completion, and
+ * the cycles allocated per second. Each measurement is the best of a number
+ * of runs, after warming up.
+ */
+public class AllocatorBenchmark {
+  protected static final String[] TYPES = { "fifo", "banker" };
+
+  protected Workload workload;
+
+  /**
+   * @param workload
+   *          Workload to allocate.
+   */
+  public AllocatorBenchmark(Workload workload) {
+    this.workload = workload;
+  }
+
+  /**
+   * @param type
+   *          Type of Allocator to run.
+   * @param warmup
+   *          Number of unmeasured runs.
+   * @param iterations
+   *          Number of measured runs.
+   * @return Cycles the allocation takes, and the best time to run it in
+   *         nanoseconds.
+   */
+  public long[] measure(String type, int warmup, int iterations) {
+    long best = -1;
+    int cycles = 0;
+    for (int k = 0; k < warmup + iterations; k++) {
+      Allocator a = Allocator.create(type, workload);
+      long start = System.nanoTime();
+      a.allocateUntilComplete();
+      long elapsed = System.nanoTime() - start;
+      cycles = a.getCycle();
+      if (k >= warmup && (best < 0 || elapsed < best)) {
+        best = elapsed;
+      }
+    }
+    return new long[] { cycles, best };
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          Optional comma-separated task counts, number of Resource types,
+   *          units of each, claim tightness, longest computation, and number
+   *          of measured runs.
+   */
+  public static void main(String[] args) {
+    String sizes = args.length > 0 ? args[0] : "100,200,400,800";
+    int resources = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    int units = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+    double tightness = args.length > 3 ? Double.parseDouble(args[3]) : 0.5;
+    int maxCompute = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+    int iterations = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+    int warmup = 2;
+
+    System.out.println(String.format(Locale.US, "%8s %-8s %10s %10s %14s",
+        "tasks", "policy", "cycles", "ms", "cycles/s"));
+    for (String size : sizes.split(",")) {
+      int tasks = Integer.parseInt(size.trim());
+      AllocatorBenchmark b = new AllocatorBenchmark(new WorkloadGenerator(
+          tasks, resources, units, tightness, maxCompute, tasks).generate());
+      for (String type : TYPES) {
+        long[] result = b.measure(type, warmup, iterations);
+        System.out.println(String.format(Locale.US,
+            "%8d %-8s %10d %10.3f %14.0f", tasks, type, result[0],
+            result[1] / 1e6, result[0] / (result[1] / 1e9)));
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3.bench;
+
+import com.vicfryzel.os3.FIFOAllocator;
+import com.vicfryzel.os3.Resource;
+import com.vicfryzel.os3.ResourceManager;
+import com.vicfryzel.os3.Task;
+import com.vicfryzel.os3.Workload;
+import com.vicfryzel.os3.WorkloadGenerator;
+
+import java.util.Locale;
+
+/**
+ * Measures claims that fail because their Resource is exhausted, the common
+ * case for blocked requests under contention. For each number of Tasks this
+ * reports:
+ *
+ *   * throw: every Task attempts a claim with Resource.claim, which builds a
+ *     message and throws ResourceException, caught as ResourceManager.claim
+ *     used to.
+ *   * status: every Task attempts a claim with ResourceManager.tryClaim,
+ *     which returns a status code.
+ *   * fifo: a FIFOAllocator run of a generated workload in which every Task
+ *     may claim all of a single Resource, so most requests block.
+ *
+ * The throw and status columns are the average time of a failed claim. Each
+ * measurement is the best of a number of runs, after warming up.
+ */
+public class ClaimBenchmark {
+  protected int tasks;
+  protected int attempts;
+
+  protected ResourceManager manager;
+  protected Resource resource;
+  protected Task[] list;
+  protected Workload workload;
+  // Keeps the results of the claims live, so they are not optimized away
+  protected int sink;
+
+  /**
+   * @param tasks
+   *          Number of contending Tasks.
+   * @param attempts
+   *          Number of claims each Task attempts per run.
+   */
+  public ClaimBenchmark(int tasks, int attempts) {
+    this.tasks = tasks;
+    this.attempts = attempts;
+  }
+
+  /**
+   * Build a single Resource that the first Task holds all of, and a workload
+   * of Tasks contending for one.
+   */
+  protected void build() {
+    manager = new ResourceManager(tasks, 1);
+    resource = new Resource(1, tasks);
+    manager.add(resource);
+    list = new Task[tasks];
+    for (int i = 0; i < tasks; i++) {
+      list[i] = new Task(i + 1, manager.getTable());
+      manager.getTable().setMaximum(i, 1, tasks);
+    }
+    manager.claim(list[0], 1, tasks);
+    workload = new WorkloadGenerator(tasks, 1, tasks, 1.0, 4, 5, tasks)
+        .generate();
+  }
+
+  protected long throwing() {
+    int failed = 0;
+    long start = System.nanoTime();
+    for (int k = 0; k < attempts; k++) {
+      for (int i = 1; i < tasks; i++) {
+        try {
+          sink += resource.claim(1 + (i + k) % tasks);
+        } catch (Resource.ResourceException e) {
+          failed++;
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    check(failed == attempts * (tasks - 1));
+    return elapsed;
+  }
+
+  protected long status() {
+    int failed = 0;
+    long start = System.nanoTime();
+    for (int k = 0; k < attempts; k++) {
+      for (int i = 1; i < tasks; i++) {
+        int result = manager.tryClaim(list[i], 1, 1 + (i + k) % tasks);
+        sink += result;
+        if (result != Resource.OK) {
+          failed++;
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    check(failed == attempts * (tasks - 1));
+    return elapsed;
+  }
+
+  protected long fifo() {
+    long start = System.nanoTime();
+    new FIFOAllocator(workload).allocateUntilComplete();
+    return System.nanoTime() - start;
+  }
+
+  protected static void check(boolean condition) {
+    if (!condition) {
+      throw new IllegalStateException("Unexpected benchmark result");
+    }
+  }
+
+  protected static long best(long current, long sample) {
+    return current < 0 || sample < current ? sample : current;
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          Optional comma-separated task counts, claims attempted by each
+   *          Task per run, and number of measured runs.
+   */
+  public static void main(String[] args) {
+    String sizes = args.length > 0 ? args[0] : "100,1000,5000";
+    int attempts = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    int warmup = 3;
+
+    System.out.println(String.format(Locale.US, "%8s %10s %10s %10s",
+        "tasks", "throw ns", "status ns", "fifo ms"));
+    for (String size : sizes.split(",")) {
+      ClaimBenchmark b = new ClaimBenchmark(Integer.parseInt(size.trim()),
+          attempts);
+      b.build();
+      long throwing = -1, status = -1, fifo = -1;
+      for (int k = 0; k < warmup + iterations; k++) {
+        long t = b.throwing(), s = b.status(), f = b.fifo();
+        if (k >= warmup) {
+          throwing = best(throwing, t);
+          status = best(status, s);
+          fifo = best(fifo, f);
+        }
+      }
+      double claims = (double) attempts * (b.tasks - 1);
+      System.out.println(String.format(Locale.US, "%8d %10.2f %10.2f %10.3f",
+          b.tasks, throwing / claims, status / claims, fifo / 1e6));
+    }
+  }
+}
@@ -0,0 +1,244 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3.bench;
+
+import com.vicfryzel.os3.DeadlockDetector;
+import com.vicfryzel.os3.FIFOAllocator;
+import com.vicfryzel.os3.LowestIdVictimPolicy;
+import com.vicfryzel.os3.ResourceTable;
+import com.vicfryzel.os3.Task;
+import com.vicfryzel.os3.VictimPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures deadlock detection at thousands of Tasks. Each size is a ring of
+ * Tasks, each holding one unit of a Resource and waiting for one unit of the
+ * next, with every unit claimed, so that all of them are deadlocked. Each
+ * size is also a chain of Tasks that each hold one unit of a single
+ * Resource, where the last Task is not waiting and every other Task waits
+ * for one unit more than the Task after it, so the chain can only be reduced
+ * from the last Task back to the first. For each size this reports:
+ *
+ *   * ring: one reduction of the ring by DeadlockDetector.
+ *   * chain: one reduction of the chain by DeadlockDetector.
+ *   * naive: the chain reduced by repeated passes over all Tasks, as the
+ *     textbook algorithm is usually written.
+ *   * resolve: detection plus aborting victims until the ring can proceed.
+ *   * fifo: a FIFOAllocator run of the ring from input text.
+ *
+ * Each measurement is the best of a number of runs, after warming up.
+ */
+public class DeadlockBenchmark {
+  protected int tasks;
+  protected int resources;
+
+  protected ResourceTable table;
+  protected List<Task> taskList;
+  protected DeadlockDetector detector;
+
+  protected ResourceTable chainTable;
+  protected List<Task> chainList;
+  protected DeadlockDetector chainDetector;
+  protected int[] chainRequest;
+
+  /**
+   * @param tasks
+   *          Number of Tasks in the ring.
+   * @param resources
+   *          Number of Resource types the units are spread over.
+   */
+  public DeadlockBenchmark(int tasks, int resources) {
+    this.tasks = tasks;
+    this.resources = resources;
+  }
+
+  protected int home(int i) {
+    return i % resources + 1;
+  }
+
+  protected int next(int i) {
+    return (i + 1) % resources + 1;
+  }
+
+  /**
+   * Build a fully deadlocked ring of Tasks, and a chain of Tasks that can
+   * only be reduced in reverse.
+   */
+  protected void build() {
+    table = new ResourceTable(tasks, resources);
+    for (int type = 1; type <= resources; type++) {
+      table.setUnits(type, 0);
+    }
+    taskList = new ArrayList<Task>();
+    for (int i = 0; i < tasks; i++) {
+      taskList.add(new Task(i + 1, table));
+      table.setUnits(home(i), table.getUnits(home(i)) + 1);
+    }
+    detector = new DeadlockDetector(table);
+    for (int i = 0; i < tasks; i++) {
+      table.setMaximum(i, home(i), 1);
+      table.setMaximum(i, next(i), 1);
+      table.addClaim(i, home(i), 1);
+      table.addAvailable(home(i), -1);
+      detector.request(i, next(i), 1);
+    }
+
+    chainTable = new ResourceTable(tasks, 1);
+    chainTable.setUnits(1, tasks);
+    chainList = new ArrayList<Task>();
+    chainDetector = new DeadlockDetector(chainTable);
+    chainRequest = new int[tasks];
+    for (int i = 0; i < tasks; i++) {
+      chainList.add(new Task(i + 1, chainTable));
+      chainTable.setMaximum(i, 1, tasks);
+      chainTable.addClaim(i, 1, 1);
+      chainTable.addAvailable(1, -1);
+      chainRequest[i] = tasks - 1 - i;
+      if (chainRequest[i] > 0) {
+        chainDetector.request(i, 1, chainRequest[i]);
+      }
+    }
+  }
+
+  protected long ring() {
+    long start = System.nanoTime();
+    int[] deadlocked = detector.detect(taskList);
+    long elapsed = System.nanoTime() - start;
+    check(deadlocked.length == tasks);
+    return elapsed;
+  }
+
+  protected long chain() {
+    long start = System.nanoTime();
+    int[] deadlocked = chainDetector.detect(chainList);
+    long elapsed = System.nanoTime() - start;
+    check(deadlocked.length == 0);
+    return elapsed;
+  }
+
+  protected long naive() {
+    long start = System.nanoTime();
+    int[] work = chainTable.getAvailableVector();
+    boolean[] finished = new boolean[tasks];
+    int remaining = tasks;
+    boolean progress = true;
+    while (progress) {
+      progress = false;
+      for (int i = 0; i < tasks; i++) {
+        if (!finished[i] && chainRequest[i] <= work[0]) {
+          work[0] += chainTable.getClaim(i, 1);
+          finished[i] = true;
+          remaining--;
+          progress = true;
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    check(remaining == 0);
+    return elapsed;
+  }
+
+  protected long resolve() {
+    VictimPolicy policy = new LowestIdVictimPolicy();
+    long start = System.nanoTime();
+    int[] deadlocked = detector.detect(taskList);
+    int aborted = 0;
+    while (deadlocked.length > 0) {
+      int victim = policy.choose(deadlocked, taskList, table);
+      deadlocked = detector.removeVictim(victim);
+      aborted++;
+    }
+    long elapsed = System.nanoTime() - start;
+    check(aborted == 1);
+    for (int i = 0; i < tasks; i++) {
+      detector.request(i, next(i), 1);
+    }
+    return elapsed;
+  }
+
+  /**
+   * @return Input text in which every Task claims one unit of its Resource
+   *         and then waits for one unit of the next.
+   */
+  protected String input() {
+    int[] units = new int[resources];
+    for (int i = 0; i < tasks; i++) {
+      units[home(i) - 1]++;
+    }
+    StringBuilder b = new StringBuilder();
+    b.append(tasks).append(" ").append(resources);
+    for (int n : units) {
+      b.append(" ").append(n);
+    }
+    b.append("\n");
+    for (int i = 1; i <= tasks; i++) {
+      int h = home(i - 1), x = next(i - 1);
+      b.append("initiate ").append(i).append(" ").append(h).append(" 1\n");
+      b.append("initiate ").append(i).append(" ").append(x).append(" 1\n");
+      b.append("request ").append(i).append(" ").append(h).append(" 1\n");
+      b.append("request ").append(i).append(" ").append(x).append(" 1\n");
+      b.append("release ").append(i).append(" ").append(h).append(" 1\n");
+      b.append("release ").append(i).append(" ").append(x).append(" 1\n");
+      b.append("terminate ").append(i).append(" 0 0\n");
+    }
+    return b.toString();
+  }
+
+  protected long fifo(String input) {
+    long start = System.nanoTime();
+    new FIFOAllocator(input).allocateUntilComplete();
+    return System.nanoTime() - start;
+  }
+
+  protected static void check(boolean condition) {
+    if (!condition) {
+      throw new IllegalStateException("Unexpected benchmark result");
+    }
+  }
+
+  protected static long best(long current, long sample) {
+    return current < 0 || sample < current ? sample : current;
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          Optional comma-separated sizes, number of Resource types, and
+   *          number of measured runs.
+   */
+  public static void main(String[] args) {
+    String sizes = args.length > 0 ? args[0] : "1000,2000,5000,10000";
+    int resources = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    int warmup = 3;
+
+    System.out.println(String.format(Locale.US,
+        "%8s %10s %10s %10s %10s %10s", "tasks", "ring ms", "chain ms",
+        "naive ms", "resolve ms", "fifo ms"));
+    for (String size : sizes.split(",")) {
+      DeadlockBenchmark b = new DeadlockBenchmark(Integer.parseInt(size
+          .trim()), resources);
+      b.build();
+      String input = b.input();
+      long ring = -1, chain = -1, naive = -1, resolve = -1, fifo = -1;
+      for (int k = 0; k < warmup + iterations; k++) {
+        long d = b.ring(), c = b.chain(), n = b.naive();
+        long r = b.resolve(), f = b.fifo(input);
+        if (k >= warmup) {
+          ring = best(ring, d);
+          chain = best(chain, c);
+          naive = best(naive, n);
+          resolve = best(resolve, r);
+          fifo = best(fifo, f);
+        }
+      }
+      System.out.println(String.format(Locale.US,
+          "%8d %10.3f %10.3f %10.3f %10.3f %10.3f", b.tasks, ring / 1e6,
+          chain / 1e6, naive / 1e6, resolve / 1e6, fifo / 1e6));
+    }
+  }
+}
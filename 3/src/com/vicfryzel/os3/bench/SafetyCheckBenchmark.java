@@ -0,0 +1,144 @@
+// Copyright 2010 Vic Fryzel.  All rights reserved.
+
+package com.vicfryzel.os3.bench;
+
+import com.vicfryzel.os3.Resource;
+import com.vicfryzel.os3.ResourceManager;
+import com.vicfryzel.os3.ResourceTable;
+import com.vicfryzel.os3.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures ResourceManager.claimingResourceIsSafe at increasing numbers of
+ * Tasks. In each state every Task holds one unit of every Resource, and one
+ * unit of each is left available. One Task requests that unit and can then
+ * finish, and every other Task can only finish once the Task before it in a
+ * fixed order has:
+ *
+ *   * ascending: Tasks are checked in the order they can finish, so the check
+ *     finishes all of them in one pass.
+ *   * reverse: Tasks are checked in the opposite order, so the check finishes
+ *     one Task per pass, which is its worst case.
+ *
+ * The reverse check must grow no faster than O(n^2 * m). This reports the
+ * growth exponent of its time between consecutive sizes, and exits with
+ * status 1 if any exceeds the given limit, so a return to super-polynomial
+ * behaviour is caught.
+ */
+public class SafetyCheckBenchmark {
+  protected int tasks;
+  protected int resources;
+
+  /**
+   * @param tasks
+   *          Number of Tasks.
+   * @param resources
+   *          Number of Resource types.
+   */
+  public SafetyCheckBenchmark(int tasks, int resources) {
+    this.tasks = tasks;
+    this.resources = resources;
+  }
+
+  /**
+   * Time the check on one state.
+   *
+   * @param reverse
+   *          True to build the state in which Tasks finish one per pass.
+   * @param iterations
+   *          Number of measured checks.
+   * @return Best time of one check, in nanoseconds.
+   */
+  protected long measure(boolean reverse, int iterations) {
+    ResourceManager manager = new ResourceManager(tasks, resources);
+    ResourceTable table = manager.getTable();
+    for (int type = 1; type <= resources; type++) {
+      manager.add(new Resource(type, tasks + 1));
+    }
+    List<Task> list = new ArrayList<Task>();
+    for (int i = 0; i < tasks; i++) {
+      list.add(new Task(i + 1, table));
+    }
+    Task requester = null;
+    for (int i = 0; i < tasks; i++) {
+      // Position of the Task in the order Tasks can finish
+      int position = reverse ? tasks - 1 - i : i;
+      Task t = list.get(i);
+      for (int type = 1; type <= resources; type++) {
+        // Every Task after the first needs one unit more than all the units
+        // freed before it, so it only becomes able to finish after the Task
+        // just before it
+        table.setMaximum(i, type, position == 0 ? 2 : position + 2);
+        manager.claim(t, type, 1);
+      }
+      if (position == 0) {
+        requester = t;
+      }
+    }
+
+    long best = -1;
+    for (int k = 0; k < iterations; k++) {
+      long start = System.nanoTime();
+      boolean safe = manager.claimingResourceIsSafe(list, requester, 1, 1);
+      long elapsed = System.nanoTime() - start;
+      if (!safe) {
+        throw new IllegalStateException("Unexpected benchmark result");
+      }
+      if (best < 0 || elapsed < best) {
+        best = elapsed;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          Optional comma-separated task counts, number of Resource types,
+   *          number of measured checks, and largest growth exponent allowed.
+   */
+  public static void main(String[] args) {
+    String sizes = args.length > 0 ? args[0] : "250,500,1000,2000";
+    int resources = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    double limit = args.length > 3 ? Double.parseDouble(args[3]) : 3.0;
+
+    // Warm up
+    SafetyCheckBenchmark warmup = new SafetyCheckBenchmark(500, resources);
+    warmup.measure(false, 20);
+    warmup.measure(true, 20);
+
+    System.out.println(String.format(Locale.US, "%8s %14s %14s %10s",
+        "tasks", "ascending us", "reverse us", "exponent"));
+    boolean exceeded = false;
+    int previousTasks = -1;
+    long previous = -1;
+    for (String size : sizes.split(",")) {
+      SafetyCheckBenchmark b = new SafetyCheckBenchmark(Integer.parseInt(size
+          .trim()), resources);
+      long ascending = b.measure(false, iterations);
+      long reverse = b.measure(true, iterations);
+      String exponent = "";
+      if (previous > 0) {
+        double e = Math.log((double) reverse / previous)
+            / Math.log((double) b.tasks / previousTasks);
+        exponent = String.format(Locale.US, "%.2f", e);
+        if (e > limit) {
+          exceeded = true;
+        }
+      }
+      System.out.println(String.format(Locale.US, "%8d %14.1f %14.1f %10s",
+          b.tasks, ascending / 1e3, reverse / 1e3, exponent));
+      previousTasks = b.tasks;
+      previous = reverse;
+    }
+    if (exceeded) {
+      System.out.println("Safety check grew faster than n^" + limit);
+      System.exit(1);
+    }
+  }
+}